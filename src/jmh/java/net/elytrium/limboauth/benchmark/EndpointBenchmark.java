@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.backend.Endpoint;
+import net.elytrium.limboauth.backend.type.LongEndpoint;
+import net.elytrium.limboauth.backend.type.StringEndpoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Backend API request parsing and response serialization, without the database lookups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class EndpointBenchmark {
+
+  private static final String USERNAME = "Benchmark";
+
+  private byte[] request;
+
+  @Setup
+  public void setup() {
+    BenchmarkSettings.loadDefaults();
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    output.writeInt(0);
+    output.writeUTF(USERNAME);
+    this.request = output.toByteArray();
+  }
+
+  @Benchmark
+  public Endpoint readRequest() {
+    LongEndpoint endpoint = new LongEndpoint(null, "reg_date", username -> 0L);
+    endpoint.read(ByteStreams.newDataInput(this.request));
+    return endpoint;
+  }
+
+  @Benchmark
+  public byte[] writeLong() {
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    new LongEndpoint(null, "reg_date", USERNAME, System.currentTimeMillis()).write(output);
+    return output.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] writeString() {
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    new StringEndpoint(null, "uuid", USERNAME, "f6a9d1b0-2d9b-3b4e-9f8a-1c2d3e4f5a6b").write(output);
+    return output.toByteArray();
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import com.google.common.hash.Hashing;
+import de.mkammerer.argon2.Argon2Factory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.migration.MigrationHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Migration hash verifiers. ARGON2 is not listed by default as it needs the native libargon2, run it with "-p type=ARGON2".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@SuppressWarnings({"UnstableApiUsage", "deprecation"})
+public class MigrationHashBenchmark {
+
+  private static final String PASSWORD = "correct horse battery staple";
+  private static final String SALT = "5a1t4b3nchm4rk";
+
+  @Param({
+      "AUTHME", "AUTHME_NP", "SHA512_DBA", "SHA512_NP", "SHA512_P", "SHA256_NP", "SHA256_P", "MD5", "MOON_SHA256",
+      "SHA256_NO_SALT", "SHA512_NO_SALT", "SHA512_P_REVERSED_HASH", "SHA512_NLOGIN", "CRC32C", "PLAINTEXT"
+  })
+  private MigrationHash type;
+
+  private String hash;
+
+  @Setup
+  public void setup() {
+    this.hash = createHash(this.type);
+    if (!this.type.checkPassword(this.hash, PASSWORD)) {
+      throw new IllegalStateException("Generated " + this.type + " hash is not accepted by the verifier");
+    }
+  }
+
+  @Benchmark
+  public boolean correctPassword() {
+    return this.type.checkPassword(this.hash, PASSWORD);
+  }
+
+  @Benchmark
+  public boolean wrongPassword() {
+    return this.type.checkPassword(this.hash, "wrong password");
+  }
+
+  private static String createHash(MigrationHash type) {
+    switch (type) {
+      case AUTHME:
+        return "$SHA$" + SALT + "$" + sha256(sha256(PASSWORD) + SALT);
+      case AUTHME_NP:
+        return "SHA$" + SALT + "$" + sha256(sha256(PASSWORD) + SALT);
+      case ARGON2:
+        return Argon2Factory.create().hash(2, 65536, 1, PASSWORD.toCharArray());
+      case SHA512_DBA:
+        return "SHA$" + SALT + "$" + sha512(sha512(PASSWORD) + SALT);
+      case SHA512_NP:
+        return "SHA$" + SALT + "$" + sha512(PASSWORD + SALT);
+      case SHA512_P:
+        return "$SHA$" + SALT + "$" + sha512(PASSWORD + SALT);
+      case SHA256_NP:
+        return "SHA$" + SALT + "$" + sha256(PASSWORD + SALT);
+      case SHA256_P:
+        return "$SHA$" + SALT + "$" + sha256(PASSWORD + SALT);
+      case MD5:
+        return Hashing.md5().hashString(PASSWORD, StandardCharsets.UTF_8).toString();
+      case MOON_SHA256:
+        return "$SHA$" + sha256(sha256(PASSWORD));
+      case SHA256_NO_SALT:
+        return "$SHA$" + sha256(PASSWORD);
+      case SHA512_NO_SALT:
+        return "$SHA$" + sha512(PASSWORD);
+      case SHA512_P_REVERSED_HASH:
+        return "$SHA$" + sha512(PASSWORD + SALT) + "$" + SALT;
+      case SHA512_NLOGIN:
+        return "$SHA$" + sha512(sha512(PASSWORD) + SALT) + "$" + SALT;
+      case CRC32C:
+        return Hashing.crc32c().hashString(PASSWORD, StandardCharsets.UTF_8).toString();
+      case PLAINTEXT:
+        return PASSWORD;
+      default:
+        throw new IllegalArgumentException("Unknown migration hash: " + type);
+    }
+  }
+
+  private static String sha256(String string) {
+    return Hashing.sha256().hashString(string, StandardCharsets.UTF_8).toString();
+  }
+
+  private static String sha512(String string) {
+    return Hashing.sha512().hashString(string, StandardCharsets.UTF_8).toString();
+  }
+}
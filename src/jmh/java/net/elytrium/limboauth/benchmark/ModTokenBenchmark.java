@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.LimboAuth;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SipHash token check done for every client mod plugin message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class ModTokenBenchmark {
+
+  private static final String NICKNAME = "benchmark";
+
+  private byte[] verifyKey;
+  private long issueTime;
+  private long hash;
+
+  @Setup
+  public void setup() {
+    BenchmarkSettings.loadDefaults();
+    this.verifyKey = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    this.issueTime = System.currentTimeMillis();
+    this.hash = LimboAuth.getModTokenHash(this.verifyKey, NICKNAME, this.issueTime);
+  }
+
+  @Benchmark
+  public boolean verifyToken() {
+    return LimboAuth.getModTokenHash(this.verifyKey, NICKNAME, this.issueTime) == this.hash;
+  }
+}
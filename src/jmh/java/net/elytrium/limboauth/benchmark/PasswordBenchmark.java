@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.handler.AuthSessionHandler;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.storage.PlayerRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Login password verification, the cost is dominated by the BCrypt work factor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PasswordBenchmark {
+
+  private static final String PASSWORD = "correct horse battery staple";
+
+  @Param({"10", "11", "12"})
+  private int cost;
+
+  private RegisteredPlayer player;
+
+  @Setup
+  public void setup() {
+    this.player = new RegisteredPlayer("Benchmark", "", "127.0.0.1");
+    this.player.setHash(BCrypt.withDefaults().hashToString(this.cost, PASSWORD.toCharArray()));
+  }
+
+  @Benchmark
+  public boolean correctPassword() {
+    return AuthSessionHandler.checkPassword(PASSWORD, this.player, (PlayerRepository) null);
+  }
+
+  @Benchmark
+  public boolean wrongPassword() {
+    return AuthSessionHandler.checkPassword("wrong password", this.player, (PlayerRepository) null);
+  }
+}
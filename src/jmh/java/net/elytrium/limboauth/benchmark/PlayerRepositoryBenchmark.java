@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.storage.JdbcPlayerRepository;
+import net.elytrium.limboauth.storage.OrmLitePlayerRepository;
+import net.elytrium.limboauth.storage.PlayerRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Login path queries of the ORMLite and the JDBC repositories against the in-memory H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class PlayerRepositoryBenchmark {
+
+  private static final int PLAYERS = 1000;
+
+  @Param
+  private Implementation implementation;
+
+  private JdbcPooledConnectionSource connectionSource;
+  private PlayerRepository repository;
+  private UUID premiumUuid;
+  private int index;
+
+  @Setup
+  public void setup() throws SQLException {
+    BenchmarkSettings.loadDefaults();
+    this.connectionSource = new JdbcPooledConnectionSource("jdbc:h2:mem:" + this.implementation + ";DB_CLOSE_DELAY=-1");
+    TableUtils.createTable(this.connectionSource, RegisteredPlayer.class);
+    Dao<RegisteredPlayer, String> playerDao = DaoManager.createDao(this.connectionSource, RegisteredPlayer.class);
+    for (int i = 0; i < PLAYERS; ++i) {
+      RegisteredPlayer player = new RegisteredPlayer("Player" + i, UUID.randomUUID().toString(), "127.0.0.1");
+      if (i % 2 == 0) {
+        player.setHash("$2a$10$benchmark");
+      } else {
+        player.setPremiumUuid(UUID.randomUUID());
+      }
+
+      playerDao.create(player);
+    }
+
+    this.premiumUuid = UUID.fromString(playerDao.queryForId("player1").getPremiumUuid());
+    this.repository = this.implementation.create(playerDao);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    this.repository.shutdown();
+    this.connectionSource.close();
+  }
+
+  private String nextNickname() {
+    this.index = (this.index + 1) % PLAYERS;
+    return "player" + this.index;
+  }
+
+  @Benchmark
+  public RegisteredPlayer findByNickname() {
+    return this.repository.findByNickname(this.nextNickname()).join();
+  }
+
+  @Benchmark
+  public List<RegisteredPlayer> findByNicknameOrPremiumUuid() {
+    return this.repository.findByNicknameOrPremiumUuid(this.nextNickname(), this.premiumUuid).join();
+  }
+
+  @Benchmark
+  public PremiumState getPremiumState() {
+    return this.repository.getPremiumState(this.nextNickname()).join();
+  }
+
+  @Benchmark
+  public Void updateTotpToken() {
+    return this.repository.updateTotpToken(this.nextNickname(), "").join();
+  }
+
+  public enum Implementation {
+
+    ORMLITE {
+      @Override
+      PlayerRepository create(Dao<RegisteredPlayer, String> playerDao) {
+        return new OrmLitePlayerRepository(playerDao, 1);
+      }
+    },
+    JDBC {
+      @Override
+      PlayerRepository create(Dao<RegisteredPlayer, String> playerDao) {
+        return new JdbcPlayerRepository(playerDao, 1, 0, 0);
+      }
+    };
+
+    abstract PlayerRepository create(Dao<RegisteredPlayer, String> playerDao);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import net.elytrium.limboauth.LimboAuth.PremiumResponse;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.cache.ExpiringCache;
+import net.elytrium.limboauth.premium.PremiumChecker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Premium state resolution against stub internal (database) and external (API) responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class PremiumCheckBenchmark {
+
+  private static final String NICKNAME = "Benchmark";
+  private static final String LOWERCASE_NICKNAME = "benchmark";
+
+  @Param
+  private Scenario scenario;
+
+  private PremiumChecker checker;
+  private Function<String, CompletableFuture<PremiumResponse>> internal;
+  private Function<String, CompletableFuture<PremiumResponse>> external;
+
+  @Setup
+  public void setup() {
+    BenchmarkSettings.loadDefaults();
+    this.checker = new PremiumChecker(new ExpiringCache<>(TimeUnit.HOURS.toMillis(1), 1024), uuid -> CompletableFuture.completedFuture(false));
+    CompletableFuture<PremiumResponse> internalResponse = CompletableFuture.completedFuture(this.scenario.internal);
+    CompletableFuture<PremiumResponse> externalResponse = CompletableFuture.completedFuture(this.scenario.external);
+    this.internal = nickname -> internalResponse;
+    this.external = nickname -> externalResponse;
+    if (this.scenario == Scenario.CACHED) {
+      this.checker.setPremiumLowercased(LOWERCASE_NICKNAME, true);
+    }
+  }
+
+  @Benchmark
+  public boolean isPremium() {
+    if (this.scenario != Scenario.CACHED) {
+      this.checker.removeLowercased(LOWERCASE_NICKNAME);
+    }
+
+    return this.checker.isPremium(Settings.IMP.MAIN, NICKNAME, this.internal, this.external).join();
+  }
+
+  public enum Scenario {
+    CACHED(PremiumState.ERROR, PremiumState.ERROR),
+    REGISTERED_CRACKED(PremiumState.CRACKED, PremiumState.ERROR),
+    REGISTERED_PREMIUM(PremiumState.PREMIUM, PremiumState.ERROR),
+    NEW_CRACKED(PremiumState.UNKNOWN, PremiumState.CRACKED),
+    NEW_PREMIUM(PremiumState.UNKNOWN, PremiumState.PREMIUM_USERNAME),
+    RATE_LIMITED(PremiumState.UNKNOWN, PremiumState.RATE_LIMIT);
+
+    private final PremiumResponse internal;
+    private final PremiumResponse external;
+
+    Scenario(PremiumState internal, PremiumState external) {
+      this.internal = new PremiumResponse(internal);
+      this.external = external == PremiumState.PREMIUM_USERNAME
+          ? new PremiumResponse(external, UUID.nameUUIDFromBytes(NICKNAME.getBytes(StandardCharsets.UTF_8)))
+          : new PremiumResponse(external);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.password.UnsafePasswordIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Unsafe password lookup on registration, built from the bundled list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class UnsafePasswordBenchmark {
+
+  private UnsafePasswordIndex index;
+
+  @Setup
+  public void setup() throws IOException {
+    Path directory = Files.createTempDirectory("limboauth-jmh");
+    Path source = directory.resolve("unsafe_passwords.txt");
+    try (InputStream stream = Objects.requireNonNull(this.getClass().getResourceAsStream("/unsafe_passwords.txt"))) {
+      Files.copy(stream, source);
+    }
+
+    this.index = UnsafePasswordIndex.load(source, directory.resolve("unsafe_passwords.txt.idx"));
+  }
+
+  @Benchmark
+  public boolean unsafePassword() {
+    return this.index.contains("qwerty123");
+  }
+
+  @Benchmark
+  public boolean safePassword() {
+    return this.index.contains("correct horse battery staple");
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.elytrium.limboauth;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import net.elytrium.commons.kyori.serialization.Serializer;
+import net.elytrium.limboauth.handler.AuthMessages;
+import net.elytrium.limboauth.text.LocaleBundles;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.title.Title;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * State derived from one loaded config, neither the snapshot nor the settings it wraps are modified after the reload has published it.
+ *
+ * <p>The snapshot is built completely before it's published, so the logins see either the previous config or the new one, never a mix.
+ * It also remembers the settings of the sections backing the database pool, caches and executors,
+ * so the reload rebuilds only the components whose settings were changed.
+ */
+public final class AuthConfigSnapshot {
+
+  private final Settings settings;
+  private final Serializer serializer;
+  private final Pattern nicknameValidationPattern;
+  @Nullable
+  private final Component loginPremium;
+  @Nullable
+  private final Title loginPremiumTitle;
+  @Nullable
+  private final Component loginFloodgate;
+  @Nullable
+  private final Title loginFloodgateTitle;
+  private final Component registrationsDisabledKick;
+  private final Component databaseErrorKick;
+  private final Component bruteforceAttemptKick;
+  private final Component nicknameInvalidKick;
+  private final Component reconnectKick;
+  private final Component eventCancelled;
+  private final LocaleBundles<AuthMessages> messages;
+  private final Map<Section, List<Object>> sectionValues = new EnumMap<>(Section.class);
+
+  /**
+   * @param langDirectory Directory of the per-locale message files
+   * @param loader        Executor that loads the per-locale messages
+   */
+  public AuthConfigSnapshot(Settings settings, Serializer serializer, Path langDirectory, Executor loader) {
+    this.settings = settings;
+    this.serializer = serializer;
+
+    Settings.MAIN main = settings.MAIN;
+    Settings.MAIN.STRINGS strings = main.STRINGS;
+    this.nicknameValidationPattern = Pattern.compile(main.ALLOWED_NICKNAME_REGEX);
+    Set<String> locales = main.LOCALES.stream().map(locale -> locale.toLowerCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet());
+    this.messages = new LocaleBundles<>(langDirectory, locales, localeStrings -> new AuthMessages(serializer, main, localeStrings), strings, loader);
+
+    this.loginPremium = strings.LOGIN_PREMIUM.isEmpty() ? null : serializer.deserialize(strings.LOGIN_PREMIUM);
+    if (strings.LOGIN_PREMIUM_TITLE.isEmpty() && strings.LOGIN_PREMIUM_SUBTITLE.isEmpty()) {
+      this.loginPremiumTitle = null;
+    } else {
+      this.loginPremiumTitle = Title.title(
+          serializer.deserialize(strings.LOGIN_PREMIUM_TITLE),
+          serializer.deserialize(strings.LOGIN_PREMIUM_SUBTITLE),
+          main.PREMIUM_TITLE_SETTINGS.toTimes()
+      );
+    }
+
+    this.loginFloodgate = strings.LOGIN_FLOODGATE.isEmpty() ? null : serializer.deserialize(strings.LOGIN_FLOODGATE);
+    if (strings.LOGIN_FLOODGATE_TITLE.isEmpty() && strings.LOGIN_FLOODGATE_SUBTITLE.isEmpty()) {
+      this.loginFloodgateTitle = null;
+    } else {
+      this.loginFloodgateTitle = Title.title(
+          serializer.deserialize(strings.LOGIN_FLOODGATE_TITLE),
+          serializer.deserialize(strings.LOGIN_FLOODGATE_SUBTITLE),
+          main.PREMIUM_TITLE_SETTINGS.toTimes()
+      );
+    }
+
+    this.bruteforceAttemptKick = serializer.deserialize(strings.LOGIN_WRONG_PASSWORD_KICK);
+    this.nicknameInvalidKick = serializer.deserialize(strings.NICKNAME_INVALID_KICK);
+    this.reconnectKick = serializer.deserialize(strings.RECONNECT_KICK);
+    this.registrationsDisabledKick = serializer.deserialize(strings.REGISTRATIONS_DISABLED_KICK);
+    this.databaseErrorKick = serializer.deserialize(strings.DATABASE_ERROR_KICK);
+    this.eventCancelled = serializer.deserialize(strings.EVENT_CANCELLED);
+
+    this.sectionValues.put(Section.DATABASE, values(settings.DATABASE));
+    this.sectionValues.put(Section.SHARED_CACHE, values(main.SHARED_CACHE));
+    this.sectionValues.put(Section.AUTH_CACHE, List.of(main.PURGE_CACHE_MILLIS, main.CACHE_MAX_SIZE));
+    this.sectionValues.put(Section.PREMIUM_CACHE, List.of(main.PURGE_PREMIUM_CACHE_MILLIS, main.PREMIUM_CACHE_MAX_SIZE, main.SAVE_PREMIUM_CACHE));
+    this.sectionValues.put(Section.BRUTEFORCE,
+        List.of(main.PURGE_BRUTEFORCE_CACHE_MILLIS, main.BRUTEFORCE_CACHE_MAX_SIZE, main.BRUTEFORCE_IPV6_PREFIX_LENGTH));
+    this.sectionValues.put(Section.HASHING, values(main.HASHING));
+    this.sectionValues.put(Section.PREMIUM_API, List.of(main.ISPREMIUM_AUTH_URL, main.ISPREMIUM_AUTH_TIMEOUT,
+        main.ISPREMIUM_BULK_AUTH_URL, main.ISPREMIUM_BULK_DELAY, main.ISPREMIUM_BULK_MAX_SIZE, main.ISPREMIUM_BULK_STATUS_CODE_OK,
+        main.ISPREMIUM_BULK_JSON_VALIDATOR_FIELDS, main.ISPREMIUM_BULK_JSON_NAME_FIELD, main.ISPREMIUM_BULK_JSON_UUID_FIELD,
+        main.ISPREMIUM_HEDGE_MIN_DELAY, main.ISPREMIUM_HEDGE_MAX_DELAY, main.ISPREMIUM_HEDGE_PERCENTILE,
+        main.ISPREMIUM_MIRRORS.stream().map(AuthConfigSnapshot::values).toList(),
+        main.STATUS_CODE_USER_EXISTS, main.STATUS_CODE_USER_NOT_EXISTS, main.STATUS_CODE_RATE_LIMIT,
+        main.USER_EXISTS_JSON_VALIDATOR_FIELDS, main.JSON_UUID_FIELD, main.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS,
+        values(main.ISPREMIUM_CIRCUIT_BREAKER)));
+  }
+
+  /**
+   * Collects the values of the config section fields, including the nested sections.
+   */
+  private static List<Object> values(Object section) {
+    List<Object> values = new ArrayList<>();
+    for (Field field : section.getClass().getFields()) {
+      if (Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+
+      Object value;
+      try {
+        value = field.get(section);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+
+      if (value != null && value.getClass().getName().startsWith(Settings.class.getName() + "$")) {
+        values.add(values(value));
+      } else if (value instanceof byte[]) {
+        values.add(Arrays.toString((byte[]) value));
+      } else {
+        values.add(value);
+      }
+    }
+
+    return values;
+  }
+
+  /**
+   * Returns true if the section settings differ from the previous snapshot, or if there's no previous snapshot.
+   */
+  public boolean isChanged(@Nullable AuthConfigSnapshot previous, Section section) {
+    return previous == null || !previous.sectionValues.get(section).equals(this.sectionValues.get(section));
+  }
+
+  public Settings getSettings() {
+    return this.settings;
+  }
+
+  public Serializer getSerializer() {
+    return this.serializer;
+  }
+
+  public Pattern getNicknameValidationPattern() {
+    return this.nicknameValidationPattern;
+  }
+
+  @Nullable
+  public Component getLoginPremium() {
+    return this.loginPremium;
+  }
+
+  @Nullable
+  public Title getLoginPremiumTitle() {
+    return this.loginPremiumTitle;
+  }
+
+  @Nullable
+  public Component getLoginFloodgate() {
+    return this.loginFloodgate;
+  }
+
+  @Nullable
+  public Title getLoginFloodgateTitle() {
+    return this.loginFloodgateTitle;
+  }
+
+  public Component getRegistrationsDisabledKick() {
+    return this.registrationsDisabledKick;
+  }
+
+  public Component getDatabaseErrorKick() {
+    return this.databaseErrorKick;
+  }
+
+  public Component getBruteforceAttemptKick() {
+    return this.bruteforceAttemptKick;
+  }
+
+  public Component getNicknameInvalidKick() {
+    return this.nicknameInvalidKick;
+  }
+
+  public Component getReconnectKick() {
+    return this.reconnectKick;
+  }
+
+  public Component getEventCancelled() {
+    return this.eventCancelled;
+  }
+
+  public LocaleBundles<AuthMessages> getMessages() {
+    return this.messages;
+  }
+
+  /**
+   * Config parts backing the components that are kept between the reloads if their settings are the same.
+   */
+  public enum Section {
+
+    DATABASE,
+    SHARED_CACHE,
+    AUTH_CACHE,
+    PREMIUM_CACHE,
+    BRUTEFORCE,
+    HASHING,
+    PREMIUM_API
+  }
+}
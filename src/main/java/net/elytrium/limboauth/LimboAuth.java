@@ -19,17 +19,12 @@ package net.elytrium.limboauth;
 
 import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Longs;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.dao.GenericRawResults;
 import com.j256.ormlite.db.DatabaseType;
 import com.j256.ormlite.field.FieldType;
-import com.j256.ormlite.stmt.QueryBuilder;
-import com.j256.ormlite.stmt.UpdateBuilder;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.TableInfo;
 import com.j256.ormlite.table.TableUtils;
@@ -37,6 +32,7 @@ import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.event.EventManager;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.network.ProtocolVersion;
 import com.velocitypowered.api.plugin.Dependency;
 import com.velocitypowered.api.plugin.Plugin;
@@ -55,32 +51,34 @@ import io.whitfin.siphash.SipHasher;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.commons.kyori.serialization.Serializers;
 import net.elytrium.commons.utils.reflection.ReflectionException;
@@ -90,6 +88,12 @@ import net.elytrium.limboapi.api.LimboFactory;
 import net.elytrium.limboapi.api.chunk.VirtualWorld;
 import net.elytrium.limboapi.api.command.LimboCommandMeta;
 import net.elytrium.limboapi.api.file.WorldFile;
+import net.elytrium.limboauth.cache.BruteforceCounter;
+import net.elytrium.limboauth.cache.CacheStatistics;
+import net.elytrium.limboauth.cache.ClusterCounters;
+import net.elytrium.limboauth.cache.ClusterRatelimiter;
+import net.elytrium.limboauth.cache.ExpiringCache;
+import net.elytrium.limboauth.cache.SharedCache;
 import net.elytrium.limboauth.command.ChangePasswordCommand;
 import net.elytrium.limboauth.command.DestroySessionCommand;
 import net.elytrium.limboauth.command.ForceChangePasswordCommand;
@@ -100,6 +104,9 @@ import net.elytrium.limboauth.command.LimboAuthCommand;
 import net.elytrium.limboauth.command.PremiumCommand;
 import net.elytrium.limboauth.command.TotpCommand;
 import net.elytrium.limboauth.command.UnregisterCommand;
+import net.elytrium.limboauth.concurrent.CircuitBreaker;
+import net.elytrium.limboauth.concurrent.HashingExecutor;
+import net.elytrium.limboauth.concurrent.LatencyWindow;
 import net.elytrium.limboauth.dependencies.DatabaseLibrary;
 import net.elytrium.limboauth.event.AuthPluginReloadEvent;
 import net.elytrium.limboauth.event.PreAuthorizationEvent;
@@ -107,14 +114,26 @@ import net.elytrium.limboauth.event.PreEvent;
 import net.elytrium.limboauth.event.PreRegisterEvent;
 import net.elytrium.limboauth.event.TaskEvent;
 import net.elytrium.limboauth.floodgate.FloodgateApiHolder;
+import net.elytrium.limboauth.handler.AuthCountdown;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
 import net.elytrium.limboauth.listener.AuthListener;
 import net.elytrium.limboauth.listener.BackendEndpointsListener;
+import net.elytrium.limboauth.login.LoginContext;
 import net.elytrium.limboauth.model.RegisteredPlayer;
 import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.password.UnsafePasswordIndex;
+import net.elytrium.limboauth.premium.PremiumApiClient;
+import net.elytrium.limboauth.premium.PremiumBackend;
+import net.elytrium.limboauth.premium.PremiumChecker;
+import net.elytrium.limboauth.storage.CachedPlayerRepository;
+import net.elytrium.limboauth.storage.HotSwapPlayerRepository;
+import net.elytrium.limboauth.storage.JdbcPlayerRepository;
+import net.elytrium.limboauth.storage.MonitoredConnectionSource;
+import net.elytrium.limboauth.storage.OrmLitePlayerRepository;
+import net.elytrium.limboauth.storage.PlayerRepository;
+import net.elytrium.limboauth.storage.ReplicaRoutingPlayerRepository;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.ComponentSerializer;
-import net.kyori.adventure.title.Title;
 import org.bstats.charts.SimplePie;
 import org.bstats.charts.SingleLineChart;
 import org.bstats.velocity.Metrics;
@@ -137,26 +156,27 @@ import org.slf4j.Logger;
 )
 public class LimboAuth {
 
-  public static final Ratelimiter RATELIMITER = Ratelimiters.createWithMilliseconds(5000);
+  private static final long RATELIMIT_MILLIS = 5000;
+  private static final ClusterRatelimiter CLUSTER_RATELIMITER = new ClusterRatelimiter(Ratelimiters.createWithMilliseconds(RATELIMIT_MILLIS));
+  public static final Ratelimiter RATELIMITER = CLUSTER_RATELIMITER;
 
   // Architectury API appends /541f59e4256a337ea252bc482a009d46 to the channel name, that is a UUID.nameUUIDFromBytes from the TokenMessage class name
   private static final ChannelIdentifier MOD_CHANNEL = MinecraftChannelIdentifier.create("limboauth", "mod/541f59e4256a337ea252bc482a009d46");
   private static final ChannelIdentifier LEGACY_MOD_CHANNEL = new LegacyChannelIdentifier("LIMBOAUTH|MOD");
 
+  private static final String PREMIUM_CACHE_FILE = "premium_cache.bin";
+  private static final int LOGIN_STAGE_TIMES_WINDOW = 256;
+
   @MonotonicNonNull
   private static Logger LOGGER;
   @MonotonicNonNull
   private static Serializer SERIALIZER;
 
-  private final Map<String, CachedSessionUser> cachedAuthChecks = new ConcurrentHashMap<>();
-  private final Map<String, CachedPremiumUser> premiumCache = new ConcurrentHashMap<>();
-  private final Map<InetAddress, CachedBruteforceUser> bruteforceCache = new ConcurrentHashMap<>();
   private final Map<UUID, Runnable> postLoginTasks = new ConcurrentHashMap<>();
-  private final Set<String> unsafePasswords = new HashSet<>();
-  private final Set<String> forcedPreviously = Collections.synchronizedSet(new HashSet<>());
+  private final Object premiumCacheSaveLock = new Object();
   private final Set<String> pendingLogins = ConcurrentHashMap.newKeySet();
-
-  private final HttpClient client = HttpClient.newHttpClient();
+  private final Set<String> forcedPreviously = Collections.synchronizedSet(new HashSet<>());
+  private final Map<LoginContext.Stage, LatencyWindow> loginStageTimes = new EnumMap<>(LoginContext.Stage.class);
 
   private final ProxyServer server;
   private final Metrics.Factory metricsFactory;
@@ -166,27 +186,13 @@ public class LimboAuth {
   private final LimboFactory factory;
   private final FloodgateApiHolder floodgateApi;
   private final Map<String, AuthSessionHandler> authenticatingPlayers;
+  private final AuthCountdown authCountdown = new AuthCountdown();
 
+  private volatile State state;
+  private HotSwapPlayerRepository playerRepository;
   @Nullable
-  private Component loginPremium;
-  @Nullable
-  private Title loginPremiumTitle;
-  @Nullable
-  private Component loginFloodgate;
-  @Nullable
-  private Title loginFloodgateTitle;
-  private Component registrationsDisabledKick;
-  private Component bruteforceAttemptKick;
-  private Component nicknameInvalidKick;
-  private Component reconnectKick;
-  private ScheduledTask purgeCacheTask;
-  private ScheduledTask purgePremiumCacheTask;
-  private ScheduledTask purgeBruteforceCacheTask;
-
-  private ConnectionSource connectionSource;
-  private Dao<RegisteredPlayer, String> playerDao;
-  private Pattern nicknameValidationPattern;
-  private Limbo authServer;
+  private ScheduledTask ipCleanupTask;
+  private ScheduledTask premiumCacheSaveTask;
 
   @Inject
   public LimboAuth(Logger logger, ProxyServer server, Metrics.Factory metricsFactory, @DataDirectory Path dataDirectory) {
@@ -200,6 +206,10 @@ public class LimboAuth {
     this.configFile = new File(this.dataDirectoryFile, "config.yml");
 
     this.authenticatingPlayers = new ConcurrentHashMap<>();
+    for (LoginContext.Stage stage : LoginContext.Stage.values()) {
+      this.loginStageTimes.put(stage, new LatencyWindow(LOGIN_STAGE_TIMES_WINDOW));
+    }
+
     this.factory = (LimboFactory) this.server.getPluginManager().getPlugin("limboapi").flatMap(PluginContainer::getInstance).orElseThrow();
 
     if (this.server.getPluginManager().getPlugin("floodgate").isPresent()) {
@@ -228,7 +238,7 @@ public class LimboAuth {
     metrics.addCustomChart(new SimplePie("totp_enabled", () -> String.valueOf(Settings.IMP.MAIN.ENABLE_TOTP)));
     metrics.addCustomChart(new SimplePie("dimension", () -> String.valueOf(Settings.IMP.MAIN.DIMENSION)));
     metrics.addCustomChart(new SimplePie("save_uuid", () -> String.valueOf(Settings.IMP.MAIN.SAVE_UUID)));
-    metrics.addCustomChart(new SingleLineChart("registered_players", () -> Math.toIntExact(this.playerDao.countOf())));
+    metrics.addCustomChart(new SingleLineChart("registered_players", () -> Math.toIntExact(this.playerRepository.count().join())));
 
     this.server.getScheduler().buildTask(this, () -> {
       if (!UpdatesChecker.checkVersionByURL("https://raw.githubusercontent.com/Elytrium/LimboAuth/master/VERSION", Settings.IMP.VERSION)) {
@@ -240,88 +250,46 @@ public class LimboAuth {
     }).schedule();
   }
 
-  @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH", justification = "LEGACY_AMPERSAND can't be null in velocity.")
-  public void reload() {
-    Settings.IMP.reload(this.configFile, Settings.IMP.PREFIX);
-
-    if (!Settings.IMP.MAIN.ONLINE_MODE_NEED_AUTH_STRICT && !Settings.IMP.MAIN.SAVE_PREMIUM_ACCOUNTS) {
-      Settings.IMP.MAIN.SAVE_PREMIUM_ACCOUNTS = true;
-      LOGGER.error("As you have online-mode-need-auth-strict disabled, save-premium-accounts "
-          + "was forcibly enabled to prevent online-mode accounts hijacking.");
-    }
-
-    if (this.floodgateApi == null && !Settings.IMP.MAIN.FLOODGATE_NEED_AUTH) {
-      throw new IllegalStateException("If you want floodgate players to automatically pass auth (floodgate-need-auth: false),"
-          + " please install floodgate plugin.");
-    }
-
-    ComponentSerializer<Component, Component, String> serializer = Settings.IMP.SERIALIZER.getSerializer();
-    if (serializer == null) {
-      LOGGER.warn("The specified serializer could not be founded, using default. (LEGACY_AMPERSAND)");
-      setSerializer(new Serializer(Objects.requireNonNull(Serializers.LEGACY_AMPERSAND.getSerializer())));
-    } else {
-      setSerializer(new Serializer(serializer));
+  @Subscribe
+  public void onProxyShutdown(ProxyShutdownEvent event) {
+    State state = this.state;
+    if (state == null) {
+      this.authCountdown.shutdown();
+      return;
     }
 
-    TaskEvent.reload();
-    AuthSessionHandler.reload();
-
-    this.loginPremium = Settings.IMP.MAIN.STRINGS.LOGIN_PREMIUM.isEmpty() ? null : SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_PREMIUM);
-    if (Settings.IMP.MAIN.STRINGS.LOGIN_PREMIUM_TITLE.isEmpty() && Settings.IMP.MAIN.STRINGS.LOGIN_PREMIUM_SUBTITLE.isEmpty()) {
-      this.loginPremiumTitle = null;
-    } else {
-      this.loginPremiumTitle = Title.title(
-          SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_PREMIUM_TITLE),
-          SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_PREMIUM_SUBTITLE),
-          Settings.IMP.MAIN.PREMIUM_TITLE_SETTINGS.toTimes()
-      );
+    this.savePremiumCache(state);
+    if (this.playerRepository != null) {
+      this.flushPlayerRepository();
+      this.playerRepository.shutdown();
+      this.closeConnectionSources(state.connectionSource, state.replicaRepository);
     }
 
-    this.loginFloodgate = Settings.IMP.MAIN.STRINGS.LOGIN_FLOODGATE.isEmpty() ? null : SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_FLOODGATE);
-    if (Settings.IMP.MAIN.STRINGS.LOGIN_FLOODGATE_TITLE.isEmpty() && Settings.IMP.MAIN.STRINGS.LOGIN_FLOODGATE_SUBTITLE.isEmpty()) {
-      this.loginFloodgateTitle = null;
-    } else {
-      this.loginFloodgateTitle = Title.title(
-          SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_FLOODGATE_TITLE),
-          SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_FLOODGATE_SUBTITLE),
-          Settings.IMP.MAIN.PREMIUM_TITLE_SETTINGS.toTimes()
-      );
+    if (state.clusterCounters != null) {
+      state.clusterCounters.close();
     }
 
-    this.bruteforceAttemptKick = SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_WRONG_PASSWORD_KICK);
-    this.nicknameInvalidKick = SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.NICKNAME_INVALID_KICK);
-    this.reconnectKick = SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.RECONNECT_KICK);
-    this.registrationsDisabledKick = SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.REGISTRATIONS_DISABLED_KICK);
-
-    if (Settings.IMP.MAIN.CHECK_PASSWORD_STRENGTH) {
-      try {
-        this.unsafePasswords.clear();
-        Path unsafePasswordsPath = Paths.get(this.dataDirectoryFile.getAbsolutePath(), Settings.IMP.MAIN.UNSAFE_PASSWORDS_FILE);
-        if (!unsafePasswordsPath.toFile().exists()) {
-          Files.copy(Objects.requireNonNull(this.getClass().getResourceAsStream("/unsafe_passwords.txt")), unsafePasswordsPath);
-        }
-
-        try (Stream<String> unsafePasswordsStream = Files.lines(unsafePasswordsPath)) {
-          this.unsafePasswords.addAll(unsafePasswordsStream.collect(Collectors.toList()));
-        }
-      } catch (IOException e) {
-        throw new IllegalArgumentException(e);
-      }
+    if (state.sharedCache != null) {
+      state.sharedCache.close();
     }
 
-    this.cachedAuthChecks.clear();
-    this.premiumCache.clear();
-    this.bruteforceCache.clear();
+    this.authCountdown.shutdown();
+  }
 
-    Settings.DATABASE dbConfig = Settings.IMP.DATABASE;
+  /**
+   * Connects to the database and sets the repository stack of the state, the current repositories are not affected.
+   */
+  private void connectDatabase(State state, Settings.DATABASE dbConfig, Deque<Runnable> rollback) {
     DatabaseLibrary databaseLibrary = dbConfig.STORAGE_TYPE;
+    MonitoredConnectionSource connectionSource;
     try {
-      this.connectionSource = databaseLibrary.connectToORM(
+      connectionSource = databaseLibrary.connectToORM(
           this.dataDirectoryFile.toPath().toAbsolutePath(),
           dbConfig.HOSTNAME,
           dbConfig.DATABASE + dbConfig.CONNECTION_PARAMETERS,
           dbConfig.USER,
-          dbConfig.PASSWORD
+          dbConfig.PASSWORD,
+          dbConfig.POOL
       );
     } catch (ReflectiveOperationException e) {
       throw new ReflectionException(e);
@@ -331,21 +299,233 @@ public class LimboAuth {
       throw new IllegalArgumentException(e);
     }
 
-    this.nicknameValidationPattern = Pattern.compile(Settings.IMP.MAIN.ALLOWED_NICKNAME_REGEX);
-
+    Dao<RegisteredPlayer, String> playerDao;
+    List<ReplicaRoutingPlayerRepository.Replica> replicas;
     try {
       try {
-        TableUtils.createTableIfNotExists(this.connectionSource, RegisteredPlayer.class);
+        // The index statements are executed for the existing tables too, so they get the composite IP index
+        TableUtils.createTableIfNotExists(connectionSource, RegisteredPlayer.class);
       } catch (SQLException e) {
         if (!e.getMessage().contains("CREATE INDEX")) {
           throw e;
         }
       }
 
-      this.playerDao = DaoManager.createDao(this.connectionSource, RegisteredPlayer.class);
-      this.migrateDb(this.playerDao);
+      playerDao = DaoManager.createDao(connectionSource, RegisteredPlayer.class);
+      this.migrateDb(playerDao, dbConfig);
+      replicas = dbConfig.REPLICAS.HOSTNAMES.isEmpty() ? List.of() : this.connectReplicas(dbConfig, databaseLibrary);
+    } catch (SQLException e) {
+      this.closeConnectionSource(connectionSource);
+      throw new SQLRuntimeException(e);
+    } catch (RuntimeException e) {
+      this.closeConnectionSource(connectionSource);
+      throw e;
+    }
+
+    Settings.DATABASE.LOGIN_DATA_BATCH batchConfig = dbConfig.LOGIN_DATA_BATCH;
+    long loginDataFlushInterval = batchConfig.ENABLED ? batchConfig.FLUSH_INTERVAL : 0;
+    PlayerRepository repository = this.createPlayerRepository(dbConfig, playerDao, loginDataFlushInterval, batchConfig.MAX_SIZE);
+    ReplicaRoutingPlayerRepository replicaRepository = null;
+    if (!replicas.isEmpty()) {
+      List<String> lagQueries = dbConfig.REPLICAS.LAG_QUERY.isBlank() ? databaseLibrary.getReplicaLagQueries() : List.of(dbConfig.REPLICAS.LAG_QUERY);
+      replicaRepository = new ReplicaRoutingPlayerRepository(repository, replicas,
+          dbConfig.REPLICAS.MAX_LAG, dbConfig.REPLICAS.CHECK_INTERVAL, lagQueries);
+      repository = replicaRepository;
+    }
+
+    if (dbConfig.PLAYER_CACHE.ENABLED) {
+      if (!state.config.getSettings().MAIN.SHARED_CACHE.ENABLED) {
+        LOGGER.warn("The player cache is enabled without the shared cache, "
+            + "changes of the players made on the other proxies will be ignored until the cached player expires.");
+      }
+
+      repository = new CachedPlayerRepository(repository, dbConfig.PLAYER_CACHE.TTL, dbConfig.PLAYER_CACHE.MAX_SIZE);
+    }
+
+    PlayerRepository builtRepository = repository;
+    ReplicaRoutingPlayerRepository builtReplicaRepository = replicaRepository;
+    rollback.push(() -> {
+      builtRepository.shutdown();
+      this.closeConnectionSources(connectionSource, builtReplicaRepository);
+    });
+
+    state.connectionSource = connectionSource;
+    state.playerDao = playerDao;
+    state.playerRepository = repository;
+    state.replicaRepository = replicaRepository;
+  }
+
+  private void closeConnectionSources(@Nullable ConnectionSource connectionSource, @Nullable ReplicaRoutingPlayerRepository replicaRepository) {
+    if (connectionSource != null) {
+      this.closeConnectionSource(connectionSource);
+    }
+
+    if (replicaRepository != null) {
+      replicaRepository.getReplicas().forEach(replica -> this.closeConnectionSource(replica.getConnectionSource()));
+    }
+  }
+
+  private void closeConnectionSource(ConnectionSource connectionSource) {
+    try {
+      connectionSource.close();
+    } catch (Exception e) {
+      LOGGER.error("Unable to close the database connection pool.", e);
+    }
+  }
+
+  private PlayerRepository createPlayerRepository(Settings.DATABASE dbConfig, Dao<RegisteredPlayer, String> playerDao,
+      long loginDataFlushInterval, int loginDataBatchSize) {
+    return dbConfig.JDBC_FAST_PATH
+        ? new JdbcPlayerRepository(playerDao, dbConfig.WORKER_THREADS, loginDataFlushInterval, loginDataBatchSize)
+        : new OrmLitePlayerRepository(playerDao, dbConfig.WORKER_THREADS, loginDataFlushInterval, loginDataBatchSize);
+  }
+
+  private List<ReplicaRoutingPlayerRepository.Replica> connectReplicas(Settings.DATABASE dbConfig, DatabaseLibrary databaseLibrary) {
+    if (databaseLibrary.getReplicaLagQueries().isEmpty()) {
+      throw new IllegalArgumentException("Database replicas are not supported by " + databaseLibrary);
+    }
+
+    List<ReplicaRoutingPlayerRepository.Replica> replicas = new ArrayList<>(dbConfig.REPLICAS.HOSTNAMES.size());
+    try {
+      for (String hostname : dbConfig.REPLICAS.HOSTNAMES) {
+        replicas.add(this.connectReplica(dbConfig, databaseLibrary, hostname));
+      }
+    } catch (RuntimeException e) {
+      replicas.forEach(replica -> {
+        replica.getRepository().shutdown();
+        this.closeConnectionSource(replica.getConnectionSource());
+      });
+      throw e;
+    }
+
+    return replicas;
+  }
+
+  private ReplicaRoutingPlayerRepository.Replica connectReplica(Settings.DATABASE dbConfig, DatabaseLibrary databaseLibrary, String hostname) {
+    try {
+      ConnectionSource replicaSource = databaseLibrary.connectToORM(this.dataDirectoryFile.toPath().toAbsolutePath(), hostname,
+          dbConfig.DATABASE + dbConfig.CONNECTION_PARAMETERS, dbConfig.USER, dbConfig.PASSWORD, dbConfig.POOL);
+      try {
+        // Replicas are never written to, so the login data is not batched there
+        PlayerRepository replicaRepository = this.createPlayerRepository(dbConfig, DaoManager.createDao(replicaSource, RegisteredPlayer.class), 0, 0);
+        return new ReplicaRoutingPlayerRepository.Replica(hostname, replicaSource, replicaRepository);
+      } catch (SQLException | RuntimeException e) {
+        this.closeConnectionSource(replicaSource);
+        throw e;
+      }
+    } catch (ReflectiveOperationException e) {
+      throw new ReflectionException(e);
     } catch (SQLException e) {
       throw new SQLRuntimeException(e);
+    } catch (IOException | URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private void savePremiumCache(State state) {
+    if (state.config.getSettings().MAIN.SAVE_PREMIUM_CACHE) {
+      // The periodic save may run at the same time as the reload or the shutdown one, they share the temporary file
+      synchronized (this.premiumCacheSaveLock) {
+        try {
+          state.premiumChecker.save(this.dataDirectory.resolve(PREMIUM_CACHE_FILE));
+        } catch (IOException e) {
+          LOGGER.error("Unable to save the premium states.", e);
+        }
+      }
+    }
+  }
+
+  private void flushPlayerRepository() {
+    try {
+      this.playerRepository.flush().join();
+    } catch (CompletionException e) {
+      LOGGER.error("Unable to write the batched database updates.", e.getCause());
+    }
+  }
+
+  @Nullable
+  private CircuitBreaker createPremiumCircuitBreaker(Settings.MAIN main) {
+    Settings.MAIN.ISPREMIUM_CIRCUIT_BREAKER settings = main.ISPREMIUM_CIRCUIT_BREAKER;
+    if (!settings.ENABLED) {
+      return null;
+    }
+
+    return new CircuitBreaker(settings.WINDOW_SIZE, settings.MIN_CALLS, settings.FAILURE_RATE_THRESHOLD, settings.SLOW_CALL_DURATION,
+        settings.SLOW_CALL_RATE_THRESHOLD, settings.OPEN_DURATION, settings.HALF_OPEN_PROBES);
+  }
+
+  @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH", justification = "LEGACY_AMPERSAND can't be null in velocity.")
+  public void reload() {
+    // The new config and the components are built aside and published with one write at the end,
+    // so a broken config or a failed reload leaves the current state untouched
+    Settings settings = new Settings();
+    settings.reload(this.configFile, Settings.IMP.PREFIX);
+
+    if (!settings.MAIN.ONLINE_MODE_NEED_AUTH_STRICT && !settings.MAIN.SAVE_PREMIUM_ACCOUNTS) {
+      settings.MAIN.SAVE_PREMIUM_ACCOUNTS = true;
+      LOGGER.error("As you have online-mode-need-auth-strict disabled, save-premium-accounts "
+          + "was forcibly enabled to prevent online-mode accounts hijacking.");
+    }
+
+    if (this.floodgateApi == null && !settings.MAIN.FLOODGATE_NEED_AUTH) {
+      throw new IllegalStateException("If you want floodgate players to automatically pass auth (floodgate-need-auth: false),"
+          + " please install floodgate plugin.");
+    }
+
+    ComponentSerializer<Component, Component, String> componentSerializer = settings.SERIALIZER.getSerializer();
+    Serializer serializer;
+    if (componentSerializer == null) {
+      LOGGER.warn("The specified serializer could not be founded, using default. (LEGACY_AMPERSAND)");
+      serializer = new Serializer(Objects.requireNonNull(Serializers.LEGACY_AMPERSAND.getSerializer()));
+    } else {
+      serializer = new Serializer(componentSerializer);
+    }
+
+    AuthConfigSnapshot config = new AuthConfigSnapshot(settings, serializer, this.dataDirectory.resolve("lang"),
+        task -> this.server.getScheduler().buildTask(this, task).schedule());
+    State previous = this.state;
+    State state = new State(config);
+    // Releases the components created by this reload if it fails, in the reverse order
+    Deque<Runnable> rollback = new ArrayDeque<>();
+    try {
+      this.buildState(state, previous, rollback);
+    } catch (RuntimeException e) {
+      rollback.forEach(Runnable::run);
+      throw e;
+    }
+
+    // The statics are kept for the commands and the API, the login path reads the state or the settings captured from it
+    Settings.IMP = settings;
+    setSerializer(serializer);
+    TaskEvent.reload(config.getEventCancelled());
+    this.state = state;
+    this.retireState(previous, state);
+
+    if (this.ipCleanupTask != null) {
+      this.ipCleanupTask.cancel();
+    }
+
+    long ipCleanupInterval = settings.MAIN.IP_LIMIT_CLEANUP_INTERVAL;
+    if (settings.MAIN.IP_LIMIT_VALID_TIME > 0 && ipCleanupInterval > 0) {
+      this.ipCleanupTask = this.server.getScheduler().buildTask(this, this::clearExpiredRegistrationIps)
+          .repeat(ipCleanupInterval, TimeUnit.MILLISECONDS)
+          .schedule();
+    } else {
+      this.ipCleanupTask = null;
+    }
+
+    if (this.premiumCacheSaveTask != null) {
+      this.premiumCacheSaveTask.cancel();
+    }
+
+    long premiumCacheSaveInterval = settings.MAIN.SAVE_PREMIUM_CACHE_INTERVAL;
+    if (settings.MAIN.SAVE_PREMIUM_CACHE && premiumCacheSaveInterval > 0) {
+      this.premiumCacheSaveTask = this.server.getScheduler().buildTask(this, () -> this.savePremiumCache(this.state))
+          .delay(premiumCacheSaveInterval, TimeUnit.MILLISECONDS)
+          .repeat(premiumCacheSaveInterval, TimeUnit.MILLISECONDS)
+          .schedule();
+    } else {
+      this.premiumCacheSaveTask = null;
     }
 
     CommandManager manager = this.server.getCommandManager();
@@ -360,117 +540,270 @@ public class LimboAuth {
     manager.unregister("2fa");
     manager.unregister("limboauth");
 
-    manager.register("unregister", new UnregisterCommand(this, this.playerDao), "unreg");
-    manager.register("forceregister", new ForceRegisterCommand(this, this.playerDao), "forcereg");
+    manager.register("unregister", new UnregisterCommand(this, this.playerRepository), "unreg");
+    manager.register("forceregister", new ForceRegisterCommand(this, this.playerRepository), "forcereg");
     manager.register("forcelogin", new ForceLoginCommand(this));
-    manager.register("premium", new PremiumCommand(this, this.playerDao), "license");
-    manager.register("forceunregister", new ForceUnregisterCommand(this, this.server, this.playerDao), "forceunreg");
-    manager.register("changepassword", new ChangePasswordCommand(this, this.playerDao), "changepass", "cp");
-    manager.register("forcechangepassword", new ForceChangePasswordCommand(this, this.server, this.playerDao), "forcechangepass", "fcp");
+    manager.register("premium", new PremiumCommand(this, this.playerRepository), "license");
+    manager.register("forceunregister", new ForceUnregisterCommand(this, this.server, this.playerRepository), "forceunreg");
+    manager.register("changepassword", new ChangePasswordCommand(this, this.playerRepository), "changepass", "cp");
+    manager.register("forcechangepassword", new ForceChangePasswordCommand(this, this.server, this.playerRepository), "forcechangepass", "fcp");
     manager.register("destroysession", new DestroySessionCommand(this), "logout");
-    if (Settings.IMP.MAIN.ENABLE_TOTP) {
-      manager.register("2fa", new TotpCommand(this.playerDao), "totp");
+    if (settings.MAIN.ENABLE_TOTP) {
+      manager.register("2fa", new TotpCommand(this, this.playerRepository), "totp");
     }
     manager.register("limboauth", new LimboAuthCommand(this), "la", "auth", "lauth");
 
-    Settings.MAIN.AUTH_COORDS authCoords = Settings.IMP.MAIN.AUTH_COORDS;
-    VirtualWorld authWorld = this.factory.createVirtualWorld(
-        Settings.IMP.MAIN.DIMENSION,
-        authCoords.X, authCoords.Y, authCoords.Z,
-        (float) authCoords.YAW, (float) authCoords.PITCH
-    );
+    EventManager eventManager = this.server.getEventManager();
+    eventManager.unregisterListeners(this);
+    eventManager.register(this, new AuthListener(this, this.playerRepository, this.floodgateApi));
+    if (settings.MAIN.BACKEND_API.ENABLED) {
+      eventManager.register(this, new BackendEndpointsListener(this));
+    } else {
+      this.server.getChannelRegistrar().unregister(BackendEndpointsListener.API_CHANNEL);
+    }
 
-    if (Settings.IMP.MAIN.LOAD_WORLD) {
-      try {
-        Path path = this.dataDirectory.resolve(Settings.IMP.MAIN.WORLD_FILE_PATH);
-        WorldFile file = this.factory.openWorldFile(Settings.IMP.MAIN.WORLD_FILE_TYPE, path);
+    eventManager.fireAndForget(new AuthPluginReloadEvent());
+  }
 
-        Settings.MAIN.WORLD_COORDS coords = Settings.IMP.MAIN.WORLD_COORDS;
-        file.toWorld(this.factory, authWorld, coords.X, coords.Y, coords.Z, Settings.IMP.MAIN.WORLD_LIGHT_LEVEL);
-      } catch (IOException e) {
-        throw new IllegalArgumentException(e);
+  /**
+   * Builds the components of the new state, the components whose settings weren't changed are taken from the previous state.
+   */
+  private void buildState(State state, @Nullable State previous, Deque<Runnable> rollback) {
+    AuthConfigSnapshot config = state.config;
+    AuthConfigSnapshot previousConfig = previous == null ? null : previous.config;
+    Settings.MAIN main = config.getSettings().MAIN;
+
+    if (main.CHECK_PASSWORD_STRENGTH) {
+      state.unsafePasswords = this.loadUnsafePasswords(main, previous == null ? null : previous.unsafePasswords);
+    }
+
+    Settings.MAIN.SHARED_CACHE sharedCacheConfig = main.SHARED_CACHE;
+    boolean sharedCacheChanged = config.isChanged(previousConfig, AuthConfigSnapshot.Section.SHARED_CACHE);
+    if (!sharedCacheChanged) {
+      state.sharedCache = previous.sharedCache;
+    } else if (sharedCacheConfig.ENABLED) {
+      SharedCache sharedCache = sharedCacheConfig.TYPE.create(sharedCacheConfig);
+      rollback.push(sharedCache::close);
+      sharedCache.subscribe(getSharedInvalidationChannel(state), this::onSharedInvalidation);
+      sharedCache.addResubscribeListener(this::onSharedResubscribe);
+      state.sharedCache = sharedCache;
+    }
+
+    if (config.isChanged(previousConfig, AuthConfigSnapshot.Section.AUTH_CACHE)) {
+      state.cachedAuthChecks = new ExpiringCache<>(main.PURGE_CACHE_MILLIS, main.CACHE_MAX_SIZE);
+    } else {
+      state.cachedAuthChecks = previous.cachedAuthChecks;
+    }
+
+    if (sharedCacheChanged || config.isChanged(previousConfig, AuthConfigSnapshot.Section.PREMIUM_CACHE)) {
+      if (previous != null) {
+        // Saved before the new checker loads them
+        this.savePremiumCache(previous);
+      }
+
+      state.premiumChecker = new PremiumChecker(
+          new ExpiringCache<>(main.PURGE_PREMIUM_CACHE_MILLIS, main.PREMIUM_CACHE_MAX_SIZE),
+          this::isPremiumUuidAsync,
+          state.sharedCache,
+          main.SHARED_CACHE.KEY_PREFIX,
+          main.SHARED_CACHE.TIMEOUT
+      );
+      if (main.SAVE_PREMIUM_CACHE) {
+        try {
+          state.premiumChecker.load(this.dataDirectory.resolve(PREMIUM_CACHE_FILE));
+        } catch (IOException e) {
+          LOGGER.error("Unable to load the saved premium states.", e);
+        }
       }
+    } else {
+      state.premiumChecker = previous.premiumChecker;
     }
 
-    if (this.authServer != null) {
-      this.authServer.dispose();
+    // Kept otherwise, so the circuit breakers and the latency window aren't reset by every reload
+    if (config.isChanged(previousConfig, AuthConfigSnapshot.Section.PREMIUM_API)) {
+      List<PremiumBackend> premiumBackends = new ArrayList<>();
+      premiumBackends.add(PremiumBackend.fromSettings(main, this.createPremiumCircuitBreaker(main)));
+      main.ISPREMIUM_MIRRORS.forEach(mirror -> premiumBackends.add(PremiumBackend.fromMirror(main, mirror, this.createPremiumCircuitBreaker(main))));
+      state.premiumApiClient = new PremiumApiClient(main, premiumBackends);
+    } else {
+      state.premiumApiClient = previous.premiumApiClient;
     }
 
-    this.authServer = this.factory
-        .createLimbo(authWorld)
-        .setName("LimboAuth")
-        .setWorldTime(Settings.IMP.MAIN.WORLD_TICKS)
-        .setGameMode(Settings.IMP.MAIN.GAME_MODE)
-        .registerCommand(new LimboCommandMeta(this.filterCommands(Settings.IMP.MAIN.REGISTER_COMMAND)))
-        .registerCommand(new LimboCommandMeta(this.filterCommands(Settings.IMP.MAIN.LOGIN_COMMAND)));
+    boolean bruteforceChanged = config.isChanged(previousConfig, AuthConfigSnapshot.Section.BRUTEFORCE);
+    if (bruteforceChanged) {
+      state.bruteforceCounter = new BruteforceCounter(
+          main.PURGE_BRUTEFORCE_CACHE_MILLIS,
+          main.BRUTEFORCE_CACHE_MAX_SIZE,
+          main.BRUTEFORCE_IPV6_PREFIX_LENGTH
+      );
+    } else {
+      state.bruteforceCounter = previous.bruteforceCounter;
+    }
 
-    if (Settings.IMP.MAIN.ENABLE_TOTP) {
-      this.authServer.registerCommand(new LimboCommandMeta(this.filterCommands(Settings.IMP.MAIN.TOTP_COMMAND)));
+    if (!sharedCacheChanged && !bruteforceChanged) {
+      state.clusterCounters = previous.clusterCounters;
+    } else if (state.sharedCache != null && sharedCacheConfig.SYNC_COUNTERS) {
+      BruteforceCounter bruteforceCounter = state.bruteforceCounter;
+      Map<ClusterCounters.Kind, Long> windows = new EnumMap<>(ClusterCounters.Kind.class);
+      windows.put(ClusterCounters.Kind.BRUTEFORCE, main.PURGE_BRUTEFORCE_CACHE_MILLIS);
+      windows.put(ClusterCounters.Kind.RATELIMIT, RATELIMIT_MILLIS);
+      ClusterCounters clusterCounters = new ClusterCounters(state.sharedCache, sharedCacheConfig.KEY_PREFIX + "counters",
+          sharedCacheConfig.GOSSIP_INTERVAL, windows, main.BRUTEFORCE_CACHE_MAX_SIZE, (kind, key) -> {
+            if (kind == ClusterCounters.Kind.BRUTEFORCE) {
+              bruteforceCounter.clear(key);
+            }
+          });
+      rollback.push(clusterCounters::close);
+      state.clusterCounters = clusterCounters;
     }
 
-    EventManager eventManager = this.server.getEventManager();
-    eventManager.unregisterListeners(this);
-    eventManager.register(this, new AuthListener(this, this.playerDao, this.floodgateApi));
-    if (Settings.IMP.MAIN.BACKEND_API.ENABLED) {
-      eventManager.register(this, new BackendEndpointsListener(this));
+    if (config.isChanged(previousConfig, AuthConfigSnapshot.Section.HASHING)) {
+      HashingExecutor hashingExecutor = new HashingExecutor(main.HASHING.THREADS, main.HASHING.MAX_QUEUE_SIZE);
+      rollback.push(hashingExecutor::shutdown);
+      state.hashingExecutor = hashingExecutor;
     } else {
-      this.server.getChannelRegistrar().unregister(BackendEndpointsListener.API_CHANNEL);
+      state.hashingExecutor = previous.hashingExecutor;
     }
 
-    if (this.purgeCacheTask != null) {
-      this.purgeCacheTask.cancel();
+    if (config.isChanged(previousConfig, AuthConfigSnapshot.Section.DATABASE)) {
+      this.connectDatabase(state, config.getSettings().DATABASE, rollback);
+    } else {
+      state.connectionSource = previous.connectionSource;
+      state.playerDao = previous.playerDao;
+      state.playerRepository = previous.playerRepository;
+      state.replicaRepository = previous.replicaRepository;
     }
 
-    this.purgeCacheTask = this.server.getScheduler()
-        .buildTask(this, () -> this.checkCache(this.cachedAuthChecks, Settings.IMP.MAIN.PURGE_CACHE_MILLIS))
-        .delay(Settings.IMP.MAIN.PURGE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
-        .repeat(Settings.IMP.MAIN.PURGE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
-        .schedule();
+    Limbo authServer = this.createAuthServer(main);
+    rollback.push(authServer::dispose);
+    state.authServer = authServer;
+  }
 
-    if (this.purgePremiumCacheTask != null) {
-      this.purgePremiumCacheTask.cancel();
+  /**
+   * Routes the database queries to the new repositories and releases the previous components that were replaced by the reload.
+   */
+  private void retireState(@Nullable State previous, State state) {
+    if (previous == null) {
+      this.playerRepository = new HotSwapPlayerRepository(state.playerRepository);
+      CLUSTER_RATELIMITER.setCounters(state.clusterCounters);
+      return;
     }
 
-    this.purgePremiumCacheTask = this.server.getScheduler()
-        .buildTask(this, () -> this.checkCache(this.premiumCache, Settings.IMP.MAIN.PURGE_PREMIUM_CACHE_MILLIS))
-        .delay(Settings.IMP.MAIN.PURGE_PREMIUM_CACHE_MILLIS, TimeUnit.MILLISECONDS)
-        .repeat(Settings.IMP.MAIN.PURGE_PREMIUM_CACHE_MILLIS, TimeUnit.MILLISECONDS)
-        .schedule();
+    if (previous.playerRepository != state.playerRepository) {
+      Settings.DATABASE dbConfig = state.config.getSettings().DATABASE;
+      this.playerRepository.swap(state.playerRepository, dbConfig.RELOAD_DRAIN_TIMEOUT).whenComplete((completed, throwable) -> {
+        if (throwable != null) {
+          LOGGER.error("Unable to shut down the previous database connection.", throwable);
+        }
+
+        this.closeConnectionSources(previous.connectionSource, previous.replicaRepository);
+      });
+    }
 
-    if (this.purgeBruteforceCacheTask != null) {
-      this.purgeBruteforceCacheTask.cancel();
+    if (previous.clusterCounters != state.clusterCounters) {
+      CLUSTER_RATELIMITER.setCounters(state.clusterCounters);
+      if (previous.clusterCounters != null) {
+        previous.clusterCounters.close();
+      }
     }
 
-    this.purgeBruteforceCacheTask = this.server.getScheduler()
-        .buildTask(this, () -> this.checkCache(this.bruteforceCache, Settings.IMP.MAIN.PURGE_BRUTEFORCE_CACHE_MILLIS))
-        .delay(Settings.IMP.MAIN.PURGE_BRUTEFORCE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
-        .repeat(Settings.IMP.MAIN.PURGE_BRUTEFORCE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
-        .schedule();
+    if (previous.sharedCache != null && previous.sharedCache != state.sharedCache) {
+      previous.sharedCache.close();
+    }
 
-    eventManager.fireAndForget(new AuthPluginReloadEvent());
+    if (previous.hashingExecutor != state.hashingExecutor) {
+      previous.hashingExecutor.shutdown();
+    }
+
+    previous.authServer.dispose();
+  }
+
+  private UnsafePasswordIndex loadUnsafePasswords(Settings.MAIN main, @Nullable UnsafePasswordIndex previous) {
+    try {
+      Path unsafePasswordsPath = Paths.get(this.dataDirectoryFile.getAbsolutePath(), main.UNSAFE_PASSWORDS_FILE);
+      if (!unsafePasswordsPath.toFile().exists()) {
+        Files.copy(Objects.requireNonNull(this.getClass().getResourceAsStream("/unsafe_passwords.txt")), unsafePasswordsPath);
+      }
+
+      // The index is rebuilt only if the text list was modified
+      if (previous != null && previous.isUpToDate(unsafePasswordsPath)) {
+        return previous;
+      }
+
+      Path indexPath = unsafePasswordsPath.resolveSibling(unsafePasswordsPath.getFileName() + ".idx");
+      return UnsafePasswordIndex.load(unsafePasswordsPath, indexPath);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private Limbo createAuthServer(Settings.MAIN main) {
+    Settings.MAIN.AUTH_COORDS authCoords = main.AUTH_COORDS;
+    VirtualWorld authWorld = this.factory.createVirtualWorld(
+        main.DIMENSION,
+        authCoords.X, authCoords.Y, authCoords.Z,
+        (float) authCoords.YAW, (float) authCoords.PITCH
+    );
+
+    if (main.LOAD_WORLD) {
+      try {
+        Path path = this.dataDirectory.resolve(main.WORLD_FILE_PATH);
+        WorldFile file = this.factory.openWorldFile(main.WORLD_FILE_TYPE, path);
+
+        Settings.MAIN.WORLD_COORDS coords = main.WORLD_COORDS;
+        file.toWorld(this.factory, authWorld, coords.X, coords.Y, coords.Z, main.WORLD_LIGHT_LEVEL);
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    Limbo authServer = this.factory
+        .createLimbo(authWorld)
+        .setName("LimboAuth")
+        .setWorldTime(main.WORLD_TICKS)
+        .setGameMode(main.GAME_MODE)
+        .registerCommand(new LimboCommandMeta(this.filterCommands(main.REGISTER_COMMAND)))
+        .registerCommand(new LimboCommandMeta(this.filterCommands(main.LOGIN_COMMAND)));
+
+    if (main.ENABLE_TOTP) {
+      authServer.registerCommand(new LimboCommandMeta(this.filterCommands(main.TOTP_COMMAND)));
+    }
+
+    return authServer;
   }
 
   private List<String> filterCommands(List<String> commands) {
     return commands.stream().filter(command -> command.startsWith("/")).map(command -> command.substring(1)).collect(Collectors.toList());
   }
 
-  private void checkCache(Map<?, ? extends CachedUser> userMap, long time) {
-    userMap.entrySet().stream()
-        .filter(userEntry -> userEntry.getValue().getCheckTime() + time <= System.currentTimeMillis())
-        .map(Map.Entry::getKey)
-        .forEach(userMap::remove);
+  /**
+   * Clears the IPs of the registrations that no longer count towards the IP limit.
+   */
+  public void clearExpiredRegistrationIps() {
+    long registeredBefore = System.currentTimeMillis() - Settings.IMP.MAIN.IP_LIMIT_VALID_TIME;
+    this.playerRepository.clearRegistrationIps(registeredBefore).whenComplete((cleared, throwable) -> {
+      if (throwable != null) {
+        LOGGER.error("Unable to clear the expired registration IPs.", throwable);
+      } else if (cleared > 0) {
+        LOGGER.debug("Cleared the IPs of {} expired registrations.", cleared);
+      }
+    });
   }
 
   public void migrateDb(Dao<?, ?> dao) {
+    this.migrateDb(dao, Settings.IMP.DATABASE);
+  }
+
+  public void migrateDb(Dao<?, ?> dao, Settings.DATABASE dbConfig) {
     TableInfo<?, ?> tableInfo = dao.getTableInfo();
 
     Set<FieldType> tables = new HashSet<>();
     Collections.addAll(tables, tableInfo.getFieldTypes());
 
     String findSql;
-    String database = Settings.IMP.DATABASE.DATABASE;
+    String database = dbConfig.DATABASE;
     String tableName = tableInfo.getTableName();
-    DatabaseLibrary databaseLibrary = Settings.IMP.DATABASE.STORAGE_TYPE;
+    DatabaseLibrary databaseLibrary = dbConfig.STORAGE_TYPE;
     switch (databaseLibrary) {
       case SQLITE: {
         findSql = "SELECT name FROM PRAGMA_TABLE_INFO('" + tableName + "')";
@@ -531,9 +864,14 @@ public class LimboAuth {
   }
 
   public void cacheAuthUser(Player player) {
+    State state = this.state;
     String username = player.getUsername();
     String lowercaseUsername = username.toLowerCase(Locale.ROOT);
-    this.cachedAuthChecks.put(lowercaseUsername, new CachedSessionUser(System.currentTimeMillis(), player.getRemoteAddress().getAddress(), username));
+    CachedSessionUser sessionUser = new CachedSessionUser(System.currentTimeMillis(), player.getRemoteAddress().getAddress(), username);
+    state.cachedAuthChecks.put(lowercaseUsername, sessionUser);
+    if (state.sharedCache != null) {
+      state.sharedCache.set(getSharedSessionKey(state, lowercaseUsername), sessionUser.serialize(), state.cachedAuthChecks.getTtl());
+    }
   }
 
   public void removePlayerFromCache(String username) {
@@ -541,99 +879,204 @@ public class LimboAuth {
   }
 
   public void removePlayerFromCacheLowercased(String username) {
-    this.cachedAuthChecks.remove(username);
-    this.premiumCache.remove(username);
+    State state = this.state;
+    state.cachedAuthChecks.remove(username);
+    state.premiumChecker.removeLowercased(username);
+    this.playerRepository.invalidate(username);
+    if (state.sharedCache != null) {
+      state.sharedCache.delete(getSharedSessionKey(state, username));
+      state.sharedCache.publish(getSharedInvalidationChannel(state), username);
+    }
+  }
+
+  /**
+   * Drops the local caches of the player removed from the cache on another proxy.
+   */
+  private void onSharedInvalidation(String username) {
+    State state = this.state;
+    state.cachedAuthChecks.remove(username);
+    state.premiumChecker.invalidateLocalLowercased(username);
+    this.playerRepository.invalidate(username);
   }
 
+  /**
+   * The invalidations published while the subscription was lost are missed, so the sessions may be stale.
+   */
+  private void onSharedResubscribe() {
+    this.state.cachedAuthChecks.clear();
+  }
+
+  private static String getSharedSessionKey(State state, String lowercaseUsername) {
+    return state.config.getSettings().MAIN.SHARED_CACHE.KEY_PREFIX + "session:" + lowercaseUsername;
+  }
+
+  private static String getSharedInvalidationChannel(State state) {
+    return state.config.getSettings().MAIN.SHARED_CACHE.KEY_PREFIX + "invalidate";
+  }
+
+  /**
+   * Completes with false if the player has a valid session, the shared cache is asked without blocking the caller.
+   */
+  public CompletableFuture<Boolean> needAuthAsync(Player player) {
+    State state = this.state;
+    String lowercaseUsername = player.getUsername().toLowerCase(Locale.ROOT);
+    CachedSessionUser sessionUser = state.cachedAuthChecks.get(lowercaseUsername);
+    if (sessionUser != null || state.sharedCache == null) {
+      return CompletableFuture.completedFuture(needAuth(player, sessionUser));
+    }
+
+    // The player may have logged in on another proxy
+    return state.sharedCache.get(getSharedSessionKey(state, lowercaseUsername))
+        .exceptionally(throwable -> null)
+        .completeOnTimeout(null, state.config.getSettings().MAIN.SHARED_CACHE.TIMEOUT, TimeUnit.MILLISECONDS)
+        .thenApply(value -> needAuth(player, value == null ? null : CachedSessionUser.deserialize(value)));
+  }
+
+  /**
+   * Use {@link LimboAuth#needAuthAsync(Player)}, this method blocks until the shared cache answers.
+   */
+  @Deprecated
   public boolean needAuth(Player player) {
-    String username = player.getUsername();
-    String lowercaseUsername = username.toLowerCase(Locale.ROOT);
-    if (!this.cachedAuthChecks.containsKey(lowercaseUsername)) {
+    return this.needAuthAsync(player).join();
+  }
+
+  private static boolean needAuth(Player player, CachedSessionUser sessionUser) {
+    if (sessionUser == null) {
       return true;
     } else {
-      CachedSessionUser sessionUser = this.cachedAuthChecks.get(lowercaseUsername);
-      return !sessionUser.getInetAddress().equals(player.getRemoteAddress().getAddress()) || !sessionUser.getUsername().equals(username);
+      return !sessionUser.getInetAddress().equals(player.getRemoteAddress().getAddress()) || !sessionUser.getUsername().equals(player.getUsername());
     }
   }
 
   public void authPlayer(Player player) {
-    boolean isFloodgate = !Settings.IMP.MAIN.FLOODGATE_NEED_AUTH && this.floodgateApi.isFloodgatePlayer(player.getUniqueId());
-    if (!isFloodgate && this.isForcedPreviously(player.getUsername()) && this.isPremium(player.getUsername())) {
-      player.disconnect(this.reconnectKick);
+    AuthConfigSnapshot config = this.state.config;
+    boolean isFloodgate = !config.getSettings().MAIN.FLOODGATE_NEED_AUTH && this.floodgateApi.isFloodgatePlayer(player.getUniqueId());
+    LoginContext context = LoginContext.get(player);
+    // The nickname differs from the pre-login one if the profile prefixes are set, the fetched data can't be reused then
+    LoginContext nicknameContext = context != null && context.getNickname().equals(player.getUsername()) ? context : null;
+    if (isFloodgate || !this.isForcedPreviously(player.getUsername())) {
+      this.authPlayer(player, config, isFloodgate, context, nicknameContext);
       return;
     }
 
-    if (this.getBruteforceAttempts(player.getRemoteAddress().getAddress()) >= Settings.IMP.MAIN.BRUTEFORCE_MAX_ATTEMPTS) {
-      player.disconnect(this.bruteforceAttemptKick);
+    this.isPremiumAsync(player.getUsername(), nicknameContext).whenComplete((premium, throwable) -> {
+      if (throwable != null) {
+        player.disconnect(config.getDatabaseErrorKick());
+        LOGGER.error("Unable to check if account is premium.", throwable);
+      } else if (premium) {
+        player.disconnect(config.getReconnectKick());
+      } else {
+        this.authPlayer(player, config, isFloodgate, context, nicknameContext);
+      }
+    });
+  }
+
+  private void authPlayer(Player player, AuthConfigSnapshot config, boolean isFloodgate, @Nullable LoginContext context,
+      @Nullable LoginContext nicknameContext) {
+    if (this.getBruteforceAttempts(player.getRemoteAddress().getAddress()) >= config.getSettings().MAIN.BRUTEFORCE_MAX_ATTEMPTS) {
+      player.disconnect(config.getBruteforceAttemptKick());
       return;
     }
 
     String nickname = player.getUsername();
-    if (!this.nicknameValidationPattern.matcher((isFloodgate) ? nickname.substring(this.floodgateApi.getPrefixLength()) : nickname).matches()) {
-      player.disconnect(this.nicknameInvalidKick);
+    if (!config.getNicknameValidationPattern().matcher((isFloodgate) ? nickname.substring(this.floodgateApi.getPrefixLength()) : nickname).matches()) {
+      player.disconnect(config.getNicknameInvalidKick());
       return;
     }
 
-    RegisteredPlayer registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, nickname);
+    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    CompletableFuture<RegisteredPlayer> registeredPlayerFuture = this.fetchAuthPlayer(config.getSettings().MAIN, player, isFloodgate, lowercaseNickname,
+        nicknameContext);
+    registeredPlayerFuture.whenComplete((registeredPlayer, throwable) -> {
+      if (context != null) {
+        this.recordLoginStage(context, LoginContext.Stage.AUTH);
+      }
 
-    boolean onlineMode = player.isOnlineMode();
-    TaskEvent.Result result = TaskEvent.Result.NORMAL;
+      if (throwable != null) {
+        player.disconnect(config.getDatabaseErrorKick());
+        LOGGER.error("Unable to fetch the player info of " + nickname, throwable);
+      } else {
+        this.continueAuth(player, isFloodgate, registeredPlayer);
+      }
+    });
+  }
 
-    if (onlineMode || isFloodgate) {
-      if (registeredPlayer == null || registeredPlayer.getHash().isEmpty()) {
-        RegisteredPlayer nicknameRegisteredPlayer = registeredPlayer;
-        registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, player.getUniqueId());
-
-        if (nicknameRegisteredPlayer != null && registeredPlayer == null && nicknameRegisteredPlayer.getHash().isEmpty()) {
-          registeredPlayer = nicknameRegisteredPlayer;
-          registeredPlayer.setPremiumUuid(player.getUniqueId().toString());
-          try {
-            this.playerDao.update(registeredPlayer);
-          } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
-          }
-        }
+  private CompletableFuture<RegisteredPlayer> fetchAuthPlayer(Settings.MAIN settings, Player player, boolean isFloodgate, String lowercaseNickname,
+      @Nullable LoginContext context) {
+    if (!player.isOnlineMode() && !isFloodgate) {
+      return context == null ? this.playerRepository.findByNickname(lowercaseNickname) : context.getRegisteredPlayer(this.playerRepository);
+    }
 
-        if (nicknameRegisteredPlayer == null && registeredPlayer == null && Settings.IMP.MAIN.SAVE_PREMIUM_ACCOUNTS) {
-          registeredPlayer = new RegisteredPlayer(player).setPremiumUuid(player.getUniqueId());
+    // Both the nickname and the premium uuid are needed there, fetch them at once.
+    UUID uuid = player.getUniqueId();
+    CompletableFuture<List<RegisteredPlayer>> candidates = context == null
+        ? this.playerRepository.findByNicknameOrPremiumUuid(lowercaseNickname, uuid)
+        : context.findWithPremiumUuid(this.playerRepository, uuid);
+    return candidates.thenCompose(players -> {
+      RegisteredPlayer nicknameRegisteredPlayer = null;
+      RegisteredPlayer registeredPlayer = null;
+      for (RegisteredPlayer candidate : players) {
+        if (candidate.getLowercaseNickname().equals(lowercaseNickname)) {
+          nicknameRegisteredPlayer = candidate;
+        }
 
-          try {
-            this.playerDao.create(registeredPlayer);
-          } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
-          }
+        if (candidate.getPremiumUuid().equals(uuid.toString()) && registeredPlayer == null) {
+          registeredPlayer = candidate;
         }
+      }
 
-        if (registeredPlayer == null || registeredPlayer.getHash().isEmpty()) {
-          // Due to the current connection state, which is set to LOGIN there, we cannot send the packets.
-          // We need to wait for the PLAY connection state to set.
-          this.postLoginTasks.put(player.getUniqueId(), () -> {
-            if (onlineMode) {
-              if (this.loginPremium != null) {
-                player.sendMessage(this.loginPremium);
-              }
-              if (this.loginPremiumTitle != null) {
-                player.showTitle(this.loginPremiumTitle);
-              }
-            } else {
-              if (this.loginFloodgate != null) {
-                player.sendMessage(this.loginFloodgate);
-              }
-              if (this.loginFloodgateTitle != null) {
-                player.showTitle(this.loginFloodgateTitle);
-              }
-            }
-          });
+      if (nicknameRegisteredPlayer != null && !nicknameRegisteredPlayer.getHash().isEmpty()) {
+        return CompletableFuture.completedFuture(nicknameRegisteredPlayer);
+      }
 
-          result = TaskEvent.Result.BYPASS;
-        }
+      if (nicknameRegisteredPlayer != null && registeredPlayer == null) {
+        RegisteredPlayer premiumPlayer = nicknameRegisteredPlayer;
+        premiumPlayer.setPremiumUuid(uuid.toString());
+        return this.playerRepository.update(premiumPlayer).thenApply(result -> premiumPlayer);
+      }
+
+      if (nicknameRegisteredPlayer == null && registeredPlayer == null && settings.SAVE_PREMIUM_ACCOUNTS) {
+        RegisteredPlayer premiumPlayer = new RegisteredPlayer(player).setPremiumUuid(uuid);
+        return this.playerRepository.create(premiumPlayer).thenApply(result -> premiumPlayer);
       }
+
+      return CompletableFuture.completedFuture(registeredPlayer);
+    });
+  }
+
+  private void continueAuth(Player player, boolean isFloodgate, RegisteredPlayer registeredPlayer) {
+    AuthConfigSnapshot config = this.state.config;
+    boolean onlineMode = player.isOnlineMode();
+    TaskEvent.Result result = TaskEvent.Result.NORMAL;
+
+    if ((onlineMode || isFloodgate) && (registeredPlayer == null || registeredPlayer.getHash().isEmpty())) {
+      // Due to the current connection state, which is set to LOGIN there, we cannot send the packets.
+      // We need to wait for the PLAY connection state to set.
+      this.postLoginTasks.put(player.getUniqueId(), () -> {
+        if (onlineMode) {
+          if (config.getLoginPremium() != null) {
+            player.sendMessage(config.getLoginPremium());
+          }
+          if (config.getLoginPremiumTitle() != null) {
+            player.showTitle(config.getLoginPremiumTitle());
+          }
+        } else {
+          if (config.getLoginFloodgate() != null) {
+            player.sendMessage(config.getLoginFloodgate());
+          }
+          if (config.getLoginFloodgateTitle() != null) {
+            player.showTitle(config.getLoginFloodgateTitle());
+          }
+        }
+      });
+
+      result = TaskEvent.Result.BYPASS;
     }
 
     EventManager eventManager = this.server.getEventManager();
     if (registeredPlayer == null) {
-      if (Settings.IMP.MAIN.DISABLE_REGISTRATIONS) {
-        player.disconnect(this.registrationsDisabledKick);
+      if (config.getSettings().MAIN.DISABLE_REGISTRATIONS) {
+        player.disconnect(config.getRegistrationsDisabledKick());
         return;
       }
 
@@ -652,11 +1095,7 @@ public class LimboAuth {
       case BYPASS: {
         try {
           this.cacheAuthUser(player);
-          try {
-            this.updateLoginData(player);
-          } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
-          }
+          this.updateLoginDataAsync(player);
         } finally {
           this.factory.passLoginLimbo(player);
         }
@@ -671,256 +1110,198 @@ public class LimboAuth {
       }
       case NORMAL:
       default: {
-        this.authServer.spawnPlayer(player, new AuthSessionHandler(this.playerDao, player, this, registeredPlayer));
+        this.state.authServer.spawnPlayer(player, new AuthSessionHandler(this.playerRepository, player, this, registeredPlayer));
         break;
       }
     }
   }
 
-  public void updateLoginData(Player player) throws SQLException {
+  public CompletableFuture<Void> updateLoginDataAsync(Player player) {
+    Settings.MAIN.MOD mod = this.state.config.getSettings().MAIN.MOD;
     String lowercaseNickname = player.getUsername().toLowerCase(Locale.ROOT);
-    UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
-    updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, lowercaseNickname);
-    updateBuilder.updateColumnValue(RegisteredPlayer.LOGIN_IP_FIELD, player.getRemoteAddress().getAddress().getHostAddress());
-    updateBuilder.updateColumnValue(RegisteredPlayer.LOGIN_DATE_FIELD, System.currentTimeMillis());
-    updateBuilder.update();
-
-    if (Settings.IMP.MAIN.MOD.ENABLED) {
-      byte[] lowercaseNicknameSerialized = lowercaseNickname.getBytes(StandardCharsets.UTF_8);
+    CompletableFuture<Void> future = this.playerRepository
+        .updateLoginData(lowercaseNickname, player.getRemoteAddress().getAddress().getHostAddress(), System.currentTimeMillis())
+        .whenComplete((result, throwable) -> {
+          if (throwable != null) {
+            LOGGER.error("Unable to update the login data of " + lowercaseNickname, throwable);
+          }
+        });
+
+    if (mod.ENABLED) {
       long issueTime = System.currentTimeMillis();
-      long hash = SipHasher.init(Settings.IMP.MAIN.MOD.VERIFY_KEY)
-          .update(lowercaseNicknameSerialized)
-          .update(Longs.toByteArray(issueTime))
-          .digest();
+      long hash = getModTokenHash(mod.VERIFY_KEY, lowercaseNickname, issueTime);
 
       player.sendPluginMessage(this.getChannelIdentifier(player), Bytes.concat(Longs.toByteArray(issueTime), Longs.toByteArray(hash)));
     }
-  }
 
-  public ChannelIdentifier getChannelIdentifier(Player player) {
-    return player.getProtocolVersion().compareTo(ProtocolVersion.MINECRAFT_1_13) >= 0 ? MOD_CHANNEL : LEGACY_MOD_CHANNEL;
+    return future;
   }
 
-  private boolean validateScheme(JsonElement jsonElement, List<String> scheme) {
-    if (!scheme.isEmpty()) {
-      if (!(jsonElement instanceof JsonObject)) {
-        return false;
-      }
-
-      JsonObject object = (JsonObject) jsonElement;
-      for (String field : scheme) {
-        if (!object.has(field)) {
-          return false;
-        }
-      }
+  /**
+   * Use {@link LimboAuth#updateLoginDataAsync(Player)}, this method blocks until the login data is written.
+   */
+  @Deprecated
+  public void updateLoginData(Player player) throws SQLException {
+    try {
+      this.updateLoginDataAsync(player).join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof SQLException sqlException ? sqlException : new SQLException(e.getCause());
     }
-
-    return true;
   }
 
-  public PremiumResponse isPremiumExternal(String nickname) {
-    try {
-      HttpResponse<String> response = this.client.send(
-          HttpRequest.newBuilder()
-              .uri(URI.create(String.format(Settings.IMP.MAIN.ISPREMIUM_AUTH_URL, URLEncoder.encode(nickname, StandardCharsets.UTF_8))))
-              .build(),
-          HttpResponse.BodyHandlers.ofString()
-      );
-
-      int statusCode = response.statusCode();
-
-      if (Settings.IMP.MAIN.STATUS_CODE_RATE_LIMIT.contains(statusCode)) {
-        return new PremiumResponse(PremiumState.RATE_LIMIT);
-      }
-
-      JsonElement jsonElement = JsonParser.parseString(response.body());
+  /**
+   * Computes the token that the client mod sends back to skip the authorization.
+   */
+  public static long getModTokenHash(byte[] verifyKey, String lowercaseNickname, long issueTime) {
+    return SipHasher.init(verifyKey)
+        .update(lowercaseNickname.getBytes(StandardCharsets.UTF_8))
+        .update(Longs.toByteArray(issueTime))
+        .digest();
+  }
 
-      if (Settings.IMP.MAIN.STATUS_CODE_USER_EXISTS.contains(statusCode)
-          && this.validateScheme(jsonElement, Settings.IMP.MAIN.USER_EXISTS_JSON_VALIDATOR_FIELDS)) {
-        return new PremiumResponse(PremiumState.PREMIUM_USERNAME, ((JsonObject) jsonElement).get(Settings.IMP.MAIN.JSON_UUID_FIELD).getAsString());
-      }
+  public ChannelIdentifier getChannelIdentifier(Player player) {
+    return player.getProtocolVersion().compareTo(ProtocolVersion.MINECRAFT_1_13) >= 0 ? MOD_CHANNEL : LEGACY_MOD_CHANNEL;
+  }
 
-      if (Settings.IMP.MAIN.STATUS_CODE_USER_NOT_EXISTS.contains(statusCode)
-          && this.validateScheme(jsonElement, Settings.IMP.MAIN.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS)) {
-        return new PremiumResponse(PremiumState.CRACKED);
-      }
+  public PremiumResponse isPremiumExternal(String nickname) {
+    return this.isPremiumExternalAsync(nickname).join();
+  }
 
-      return new PremiumResponse(PremiumState.ERROR);
-    } catch (Throwable t) {
-      LOGGER.error("Unable to authenticate with Mojang.", t);
-      return new PremiumResponse(PremiumState.ERROR);
-    }
+  /**
+   * Never completes exceptionally, the failures are reported as {@link PremiumState#ERROR}.
+   */
+  public CompletableFuture<PremiumResponse> isPremiumExternalAsync(String nickname) {
+    return this.state.premiumApiClient.lookup(nickname);
   }
 
   public PremiumResponse isPremiumInternal(String nickname) {
-    try {
-      QueryBuilder<RegisteredPlayer, String> crackedCountQuery = this.playerDao.queryBuilder();
-      crackedCountQuery.where()
-          .eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nickname)
-          .and()
-          .ne(RegisteredPlayer.HASH_FIELD, "");
-      crackedCountQuery.setCountOf(true);
-
-      QueryBuilder<RegisteredPlayer, String> premiumCountQuery = this.playerDao.queryBuilder();
-      premiumCountQuery.where()
-          .eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nickname)
-          .and()
-          .eq(RegisteredPlayer.HASH_FIELD, "");
-      premiumCountQuery.setCountOf(true);
-
-      if (this.playerDao.countOf(crackedCountQuery.prepare()) != 0) {
-        return new PremiumResponse(PremiumState.CRACKED);
-      }
+    return this.isPremiumInternalAsync(nickname).join();
+  }
 
-      if (this.playerDao.countOf(premiumCountQuery.prepare()) != 0) {
-        return new PremiumResponse(PremiumState.PREMIUM);
-      }
+  /**
+   * Never completes exceptionally, the failures are reported as {@link PremiumState#ERROR}.
+   */
+  public CompletableFuture<PremiumResponse> isPremiumInternalAsync(String nickname) {
+    return this.toPremiumResponse(this.playerRepository.getPremiumState(nickname));
+  }
 
-      return new PremiumResponse(PremiumState.UNKNOWN);
-    } catch (SQLException e) {
-      LOGGER.error("Unable to check if account is premium.", e);
+  /**
+   * Same as {@link #isPremiumInternalAsync(String)}, but the player fetched by the previous login stages is reused.
+   */
+  public CompletableFuture<PremiumResponse> isPremiumInternalAsync(LoginContext context) {
+    return this.toPremiumResponse(context.getPremiumState(this.playerRepository));
+  }
+
+  private CompletableFuture<PremiumResponse> toPremiumResponse(CompletableFuture<PremiumState> premiumState) {
+    return premiumState.thenApply(PremiumResponse::new).exceptionally(throwable -> {
+      LOGGER.error("Unable to check if account is premium.", throwable);
       return new PremiumResponse(PremiumState.ERROR);
-    }
+    });
   }
 
   public boolean isPremiumUuid(UUID uuid) {
-    try {
-      QueryBuilder<RegisteredPlayer, String> premiumCountQuery = this.playerDao.queryBuilder();
-      premiumCountQuery.where()
-          .eq(RegisteredPlayer.PREMIUM_UUID_FIELD, uuid.toString())
-          .and()
-          .eq(RegisteredPlayer.HASH_FIELD, "");
-      premiumCountQuery.setCountOf(true);
-
-      return this.playerDao.countOf(premiumCountQuery.prepare()) != 0;
-    } catch (SQLException e) {
-      LOGGER.error("Unable to check if account is premium.", e);
-      return false;
-    }
+    return this.isPremiumUuidAsync(uuid).join();
   }
 
-  @SafeVarargs
-  private boolean checkIsPremiumAndCache(String nickname, Function<String, PremiumResponse>... functions) {
-    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
-    if (this.premiumCache.containsKey(lowercaseNickname)) {
-      return this.premiumCache.get(lowercaseNickname).isPremium();
-    }
-
-    boolean premium = false;
-    boolean unknown = false;
-    boolean wasRateLimited = false;
-    boolean wasError = false;
-    UUID uuid = null;
-
-    for (Function<String, PremiumResponse> function : functions) {
-      PremiumResponse check;
-      try {
-        check = function.apply(lowercaseNickname);
-      } catch (Throwable t) {
-        check = new PremiumResponse(PremiumState.ERROR);
-        LOGGER.error("Unable to check player account state.", t);
-      }
+  public CompletableFuture<Boolean> isPremiumUuidAsync(UUID uuid) {
+    return this.playerRepository.isPremiumUuid(uuid).exceptionally(throwable -> {
+      LOGGER.error("Unable to check if account is premium.", throwable);
+      return false;
+    });
+  }
 
-      if (check.getUuid() != null) {
-        uuid = check.getUuid();
-      }
+  public boolean isPremium(String nickname) {
+    return this.isPremiumAsync(nickname, null).join();
+  }
 
-      switch (check.getState()) {
-        case CRACKED: {
-          return this.setPremiumCacheLowercased(lowercaseNickname, false).isPremium();
-        }
-        case PREMIUM: {
-          return this.setForcedPremiumCacheLowercased(lowercaseNickname, true).isPremium();
-        }
-        case PREMIUM_USERNAME: {
-          premium = true;
-          break;
-        }
-        case UNKNOWN: {
-          unknown = true;
-          break;
-        }
-        case RATE_LIMIT: {
-          wasRateLimited = true;
-          break;
-        }
-        default:
-        case ERROR: {
-          wasError = true;
-          break;
-        }
+  /**
+   * Same as {@link #isPremium(String)}, but nothing is blocked while the database and the APIs are queried.
+   * The result is saved to the login context if it's given and is reused by the next login stages.
+   */
+  public CompletableFuture<Boolean> isPremiumAsync(String nickname, @Nullable LoginContext context) {
+    State state = this.state;
+    Settings.MAIN settings = state.config.getSettings().MAIN;
+    PremiumChecker premiumChecker = state.premiumChecker;
+    if (settings.FORCE_OFFLINE_MODE) {
+      return CompletableFuture.completedFuture(false);
+    } else if (context == null) {
+      if (settings.CHECK_PREMIUM_PRIORITY_INTERNAL) {
+        return premiumChecker.isPremium(settings, nickname, this::isPremiumInternalAsync, this::isPremiumExternalAsync);
+      } else {
+        return premiumChecker.isPremium(settings, nickname, this::isPremiumExternalAsync, this::isPremiumInternalAsync);
       }
-    }
-
-    if (unknown) {
-      if (uuid != null && this.isPremiumUuid(uuid)) {
-        return this.setForcedPremiumCacheLowercased(lowercaseNickname, true).isPremium();
+    } else {
+      Boolean premium = context.getPremium();
+      if (premium != null) {
+        return CompletableFuture.completedFuture(premium);
       }
 
-      if (Settings.IMP.MAIN.ONLINE_MODE_NEED_AUTH) {
-        return false;
+      Function<String, CompletableFuture<PremiumResponse>> internal = lowercaseNickname -> this.isPremiumInternalAsync(context);
+      CompletableFuture<Boolean> future;
+      if (settings.CHECK_PREMIUM_PRIORITY_INTERNAL) {
+        future = premiumChecker.isPremium(settings, nickname, internal, this::isPremiumExternalAsync);
+      } else {
+        future = premiumChecker.isPremium(settings, nickname, this::isPremiumExternalAsync, internal);
       }
-    }
 
-    if (wasRateLimited && unknown || wasRateLimited && wasError) {
-      return Settings.IMP.MAIN.ON_RATE_LIMIT_PREMIUM;
-    }
-
-    if (wasError && unknown || !premium) {
-      return Settings.IMP.MAIN.ON_SERVER_ERROR_PREMIUM;
+      return future.thenCompose(result -> premiumChecker.getCachedLowercased(context.getLowercaseNickname()).thenApply(premiumUser -> {
+        context.setPremium(result, premiumUser);
+        return result;
+      }));
     }
+  }
 
-    return this.setPremiumCacheLowercased(lowercaseNickname, true).isPremium();
+  public CachedPremiumUser getPremiumCache(String nickname) {
+    return this.getPremiumCacheAsync(nickname).join();
   }
 
-  public boolean isPremium(String nickname) {
-    if (Settings.IMP.MAIN.FORCE_OFFLINE_MODE) {
-      return false;
-    } else {
-      if (Settings.IMP.MAIN.CHECK_PREMIUM_PRIORITY_INTERNAL) {
-        return checkIsPremiumAndCache(nickname, this::isPremiumInternal, this::isPremiumExternal);
-      } else {
-        return checkIsPremiumAndCache(nickname, this::isPremiumExternal, this::isPremiumInternal);
-      }
-    }
+  /**
+   * Completes with null if the state isn't cached, the shared cache is asked without blocking the caller.
+   */
+  public CompletableFuture<CachedPremiumUser> getPremiumCacheAsync(String nickname) {
+    return this.state.premiumChecker.getCachedLowercased(nickname.toLowerCase(Locale.ROOT));
   }
 
-  public CachedPremiumUser getPremiumCache(String nickname) {
-    return this.premiumCache.get(nickname.toLowerCase(Locale.ROOT));
+  public void forcePremiumCache(String nickname, CachedPremiumUser premiumUser) {
+    this.state.premiumChecker.forcePremiumLowercased(nickname.toLowerCase(Locale.ROOT), premiumUser);
   }
 
   public CachedPremiumUser setForcedPremiumCacheLowercased(String lowercasedNickname, boolean value) {
-    CachedPremiumUser premiumUser = this.setPremiumCacheLowercased(lowercasedNickname, value);
-    premiumUser.setForcePremium(value);
-    return premiumUser;
+    return this.state.premiumChecker.setForcedPremiumLowercased(lowercasedNickname, value);
   }
 
   public CachedPremiumUser setPremiumCacheLowercased(String lowercasedNickname, boolean value) {
-    CachedPremiumUser premiumUser = new CachedPremiumUser(System.currentTimeMillis(), value);
-    this.premiumCache.put(lowercasedNickname, premiumUser);
-    return premiumUser;
+    return this.state.premiumChecker.setPremiumLowercased(lowercasedNickname, value);
   }
 
+
   public void incrementBruteforceAttempts(InetAddress address) {
-    this.getBruteforceUser(address).incrementAttempts();
+    State state = this.state;
+    state.bruteforceCounter.increment(address);
+    if (state.clusterCounters != null) {
+      state.clusterCounters.increment(ClusterCounters.Kind.BRUTEFORCE, state.bruteforceCounter.getKey(address));
+    }
   }
 
+  /**
+   * @return the failed attempts of the address on this proxy and, if the counters are synced, on the other proxies
+   */
   public int getBruteforceAttempts(InetAddress address) {
-    return this.getBruteforceUser(address).getAttempts();
-  }
-
-  private CachedBruteforceUser getBruteforceUser(InetAddress address) {
-    CachedBruteforceUser user = this.bruteforceCache.get(address);
-    if (user == null) {
-      user = new CachedBruteforceUser(System.currentTimeMillis());
-      this.bruteforceCache.put(address, user);
+    State state = this.state;
+    int attempts = state.bruteforceCounter.get(address);
+    if (state.clusterCounters != null) {
+      attempts += state.clusterCounters.getRemote(ClusterCounters.Kind.BRUTEFORCE, state.bruteforceCounter.getKey(address));
     }
 
-    return user;
+    return attempts;
   }
 
   public void clearBruteforceAttempts(InetAddress address) {
-    this.bruteforceCache.remove(address);
+    State state = this.state;
+    state.bruteforceCounter.clear(address);
+    if (state.clusterCounters != null) {
+      state.clusterCounters.clear(ClusterCounters.Kind.BRUTEFORCE, state.bruteforceCounter.getKey(address));
+    }
   }
 
   public void saveForceOfflineMode(String nickname) {
@@ -935,34 +1316,105 @@ public class LimboAuth {
     return this.forcedPreviously.contains(nickname);
   }
 
+  /**
+   * Records the time since the pre-login of the joining player.
+   */
+  public void recordLoginStage(LoginContext context, LoginContext.Stage stage) {
+    this.loginStageTimes.get(stage).record(context.markStage(stage));
+  }
+
+  public Map<LoginContext.Stage, LatencyWindow> getLoginStageTimes() {
+    return this.loginStageTimes;
+  }
+
+  /**
+   * The pending premium verifications are tracked by {@link LoginContext#isPendingPremiumVerification()},
+   * the set mirrors them for the API users, modifying it doesn't affect the verification.
+   */
+  @Deprecated
   public Set<String> getPendingLogins() {
     return this.pendingLogins;
   }
 
+  public void setPendingPremiumVerification(LoginContext context, boolean pendingPremiumVerification) {
+    context.setPendingPremiumVerification(pendingPremiumVerification);
+    if (pendingPremiumVerification) {
+      this.pendingLogins.add(context.getNickname());
+    } else {
+      this.pendingLogins.remove(context.getNickname());
+    }
+  }
+
   public Map<UUID, Runnable> getPostLoginTasks() {
     return this.postLoginTasks;
   }
 
+  /**
+   * Use {@link LimboAuth#getUnsafePasswordIndex()}
+   */
+  @Deprecated
   public Set<String> getUnsafePasswords() {
-    return this.unsafePasswords;
+    return this.state.unsafePasswords.asSet();
+  }
+
+  public UnsafePasswordIndex getUnsafePasswordIndex() {
+    return this.state.unsafePasswords;
   }
 
   public ProxyServer getServer() {
     return this.server;
   }
 
+  public AuthCountdown getAuthCountdown() {
+    return this.authCountdown;
+  }
+
+  public HashingExecutor getHashingExecutor() {
+    return this.state.hashingExecutor;
+  }
+
   public ConnectionSource getConnectionSource() {
-    return this.connectionSource;
+    return this.state.connectionSource;
+  }
+
+  public MonitoredConnectionSource getConnectionPool() {
+    return this.state.connectionSource;
   }
 
   public Dao<RegisteredPlayer, String> getPlayerDao() {
-    return this.playerDao;
+    return this.state.playerDao;
+  }
+
+  @Nullable
+  public ReplicaRoutingPlayerRepository getReplicaRepository() {
+    return this.state.replicaRepository;
+  }
+
+  public PlayerRepository getPlayerRepository() {
+    return this.playerRepository;
+  }
+
+  public Map<String, CacheStatistics> getCaches() {
+    State state = this.state;
+    Map<String, CacheStatistics> caches = new LinkedHashMap<>();
+    caches.put("sessions", state.cachedAuthChecks);
+    caches.put("premium", state.premiumChecker.getCache());
+    caches.put("bruteforce", state.bruteforceCounter);
+    return caches;
+  }
+
+  public PremiumApiClient getPremiumApiClient() {
+    return this.state.premiumApiClient;
   }
 
   private static void setLogger(Logger logger) {
     LOGGER = logger;
   }
 
+  public static Logger getLogger() {
+    return LOGGER;
+  }
+
   private static void setSerializer(Serializer serializer) {
     SERIALIZER = serializer;
   }
@@ -972,11 +1424,15 @@ public class LimboAuth {
   }
 
   public Limbo getAuthServer() {
-    return this.authServer;
+    return this.state.authServer;
   }
 
   public Pattern getNicknameValidationPattern() {
-    return this.nicknameValidationPattern;
+    return this.state.config.getNicknameValidationPattern();
+  }
+
+  public AuthConfigSnapshot getConfig() {
+    return this.state.config;
   }
 
   public void addAuthenticatingPlayer(String nickname, AuthSessionHandler handler) {
@@ -995,6 +1451,39 @@ public class LimboAuth {
     return this.authenticatingPlayers;
   }
 
+  /**
+   * Config and the components built from it, published by the reload with one write.
+   * The components whose settings weren't changed are shared with the previous state.
+   */
+  private static final class State {
+
+    private final AuthConfigSnapshot config;
+    private ExpiringCache<String, CachedSessionUser> cachedAuthChecks;
+    @Nullable
+    private SharedCache sharedCache;
+    private PremiumChecker premiumChecker;
+    private PremiumApiClient premiumApiClient;
+    private BruteforceCounter bruteforceCounter;
+    @Nullable
+    private ClusterCounters clusterCounters;
+    private HashingExecutor hashingExecutor;
+    @Nullable
+    private UnsafePasswordIndex unsafePasswords;
+    private MonitoredConnectionSource connectionSource;
+    private Dao<RegisteredPlayer, String> playerDao;
+    /**
+     * Repository stack of this database connection, the queries are routed to it by {@link HotSwapPlayerRepository}.
+     */
+    private PlayerRepository playerRepository;
+    @Nullable
+    private ReplicaRoutingPlayerRepository replicaRepository;
+    private Limbo authServer;
+
+    private State(AuthConfigSnapshot config) {
+      this.config = config;
+    }
+  }
+
   public static class CachedUser {
 
     private final long checkTime;
@@ -1020,6 +1509,23 @@ public class LimboAuth {
       this.username = username;
     }
 
+    /**
+     * @return the session serialized for the shared cache
+     */
+    public String serialize() {
+      return this.getCheckTime() + "|" + this.inetAddress.getHostAddress() + "|" + this.username;
+    }
+
+    public static CachedSessionUser deserialize(String value) {
+      String[] parts = value.split("\\|", 3);
+      try {
+        // The address is an IP literal, so it is parsed without a DNS lookup
+        return new CachedSessionUser(Long.parseLong(parts[0]), InetAddress.getByName(parts[1]), parts[2]);
+      } catch (UnknownHostException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
     public InetAddress getInetAddress() {
       return this.inetAddress;
     }
@@ -1040,6 +1546,20 @@ public class LimboAuth {
       this.premium = premium;
     }
 
+    /**
+     * @return the premium state serialized for the shared cache
+     */
+    public String serialize() {
+      return this.getCheckTime() + "|" + this.premium + "|" + this.forcePremium;
+    }
+
+    public static CachedPremiumUser deserialize(String value) {
+      String[] parts = value.split("\\|", 3);
+      CachedPremiumUser premiumUser = new CachedPremiumUser(Long.parseLong(parts[0]), Boolean.parseBoolean(parts[1]));
+      premiumUser.setForcePremium(Boolean.parseBoolean(parts[2]));
+      return premiumUser;
+    }
+
     public void setForcePremium(boolean forcePremium) {
       this.forcePremium = forcePremium;
     }
@@ -1053,23 +1573,6 @@ public class LimboAuth {
     }
   }
 
-  private static class CachedBruteforceUser extends CachedUser {
-
-    private int attempts;
-
-    public CachedBruteforceUser(long checkTime) {
-      super(checkTime);
-    }
-
-    public void incrementAttempts() {
-      this.attempts++;
-    }
-
-    public int getAttempts() {
-      return  this.attempts;
-    }
-  }
-
   public static class PremiumResponse {
 
     private final PremiumState state;
@@ -21,26 +21,35 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 import net.elytrium.commons.config.ConfigSerializer;
 import net.elytrium.commons.config.YamlConfig;
 import net.elytrium.commons.kyori.serialization.Serializers;
 import net.elytrium.limboapi.api.chunk.Dimension;
 import net.elytrium.limboapi.api.file.BuiltInWorldFileType;
 import net.elytrium.limboapi.api.player.GameMode;
+import net.elytrium.limboauth.cache.SharedCacheType;
 import net.elytrium.limboauth.command.CommandPermissionState;
 import net.elytrium.limboauth.dependencies.DatabaseLibrary;
 import net.elytrium.limboauth.migration.MigrationHash;
 import net.kyori.adventure.bossbar.BossBar;
 import net.kyori.adventure.title.Title;
 import net.kyori.adventure.util.Ticks;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class Settings extends YamlConfig {
 
+  /**
+   * Settings of the latest loaded config, the reload loads the new instance and replaces this one.
+   */
   @Ignore
-  public static final Settings IMP = new Settings();
+  public static volatile Settings IMP = new Settings();
 
   @Final
   public String VERSION = BuildConstants.AUTH_VERSION;
@@ -140,9 +149,20 @@ public class Settings extends YamlConfig {
     public MigrationHash MIGRATION_HASH = MigrationHash.AUTHME;
     @Comment("Available dimensions: OVERWORLD, NETHER, THE_END")
     public Dimension DIMENSION = Dimension.THE_END;
+    @Comment("Time in milliseconds for the cached sessions, premium states and bruteforce attempts to expire")
     public long PURGE_CACHE_MILLIS = 3600000;
     public long PURGE_PREMIUM_CACHE_MILLIS = 28800000;
     public long PURGE_BRUTEFORCE_CACHE_MILLIS = 28800000;
+    @Comment("Maximum amount of the cached entries, the oldest entries are evicted if the cache is full")
+    public int CACHE_MAX_SIZE = 100000;
+    public int PREMIUM_CACHE_MAX_SIZE = 100000;
+    public int BRUTEFORCE_CACHE_MAX_SIZE = 100000;
+    @Comment("Should the cached premium states be saved to the disk, so the isPremium API is not queried again for every player after a restart?")
+    public boolean SAVE_PREMIUM_CACHE = true;
+    @Comment("Interval in milliseconds of saving the premium states, so they are not lost if the proxy crashes. Set to 0 to save on shutdown and reload only")
+    public long SAVE_PREMIUM_CACHE_INTERVAL = 300000;
+    @Comment("Length of the IPv6 prefix the bruteforce attempts are counted for, an attacker usually owns the whole /64 subnet")
+    public int BRUTEFORCE_IPV6_PREFIX_LENGTH = 64;
     @Comment("Used to ban IPs when a possible attacker incorrectly enters the password")
     public int BRUTEFORCE_MAX_ATTEMPTS = 10;
     @Comment("QR Generator URL, set {data} placeholder")
@@ -154,6 +174,8 @@ public class Settings extends YamlConfig {
     public int TOTP_RECOVERY_CODES_AMOUNT = 16;
     @Comment("Time in milliseconds, when ip limit works, set to 0 for disable.")
     public long IP_LIMIT_VALID_TIME = 21600000;
+    @Comment("How often (in milliseconds) the IPs of the registrations older than ip-limit-valid-time are cleared.")
+    public long IP_LIMIT_CLEANUP_INTERVAL = 3600000;
     @Comment({
         "Regex of allowed nicknames",
         "^ means the start of the line, $ means the end of the line",
@@ -190,6 +212,49 @@ public class Settings extends YamlConfig {
         "Or implement your own API, it should just respond with HTTP code 200 (see parameters below) only if the player is premium"
     })
     public String ISPREMIUM_AUTH_URL = "https://api.mojang.com/users/profiles/minecraft/%s";
+    @Comment("Time in milliseconds to wait for the isPremium API response, the player is checked as if the API has failed after this time")
+    public long ISPREMIUM_AUTH_TIMEOUT = 5000;
+    @Comment({
+        "Bulk isPremium URL, the nicknames are sent as a JSON array in the POST request body",
+        "The response should be a JSON array of the existing profiles (see the JSON parameters below), the missing nicknames are identified as cracked",
+        "Lookups of the joining players are collected for ispremium-bulk-delay milliseconds and are sent in one request",
+        "If set, it is queried instead of the isPremium URL, the mirrors are still queried if it fails",
+        "Mojang one's: https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname",
+        "Leave this parameter empty, to query the isPremium URL for every player separately"
+    })
+    public String ISPREMIUM_BULK_AUTH_URL = "";
+    public long ISPREMIUM_BULK_DELAY = 50;
+    @Comment("Mojang API accepts up to 10 nicknames per request")
+    public int ISPREMIUM_BULK_MAX_SIZE = 10;
+    @Comment({
+        "Status codes and JSON fields of the bulk isPremium URL response, set for Mojang API by default",
+        "Sample Mojang API response: [{\"id\":\"9c7024b2a48746b3b3934f397ae5d70f\",\"name\":\"hevav\"}]",
+        "The rate limit status codes are shared with isPremium URL"
+    })
+    public List<Integer> ISPREMIUM_BULK_STATUS_CODE_OK = List.of(200);
+    public List<String> ISPREMIUM_BULK_JSON_VALIDATOR_FIELDS = List.of("name", "id");
+    public String ISPREMIUM_BULK_JSON_UUID_FIELD = "id";
+    @Comment("Used to match the response entries with the nicknames")
+    public String ISPREMIUM_BULK_JSON_NAME_FIELD = "name";
+    @Comment({
+        "Mirrors of the isPremium API, queried in order if the previous one fails or doesn't answer within ispremium-hedge-percentile of its recent response times",
+        "The first valid answer is taken",
+        "Every mirror is a section with these parameters, every one except url can be omitted to use the corresponding parameter of isPremium URL:",
+        "  url, status-code-user-exists, status-code-user-not-exists, status-code-rate-limit,",
+        "  user-exists-json-validator-fields, json-uuid-field, user-not-exists-json-validator-fields",
+        "Example:",
+        "  ispremium-mirrors:",
+        "  - url: https://api.ashcon.app/mojang/v2/user/%s",
+        "    status-code-user-not-exists: [404]",
+        "    user-exists-json-validator-fields: [uuid, username]",
+        "    json-uuid-field: uuid"
+    })
+    @CustomSerializer(serializerClass = PremiumMirrorsSerializer.class)
+    public List<Settings.MAIN.ISPREMIUM_MIRROR> ISPREMIUM_MIRRORS = List.of();
+    public int ISPREMIUM_HEDGE_PERCENTILE = 95;
+    @Comment("Time in milliseconds to wait for the answer before querying the next mirror is kept within these bounds")
+    public long ISPREMIUM_HEDGE_MIN_DELAY = 100;
+    public long ISPREMIUM_HEDGE_MAX_DELAY = 1000;
 
     @Comment({
         "Status codes (see the comment above)",
@@ -237,6 +302,95 @@ public class Settings extends YamlConfig {
     @Comment("New players will be kicked with registrations-disabled-kick message")
     public boolean DISABLE_REGISTRATIONS = false;
 
+    @Create
+    public Settings.MAIN.HASHING HASHING;
+
+    @Comment("Passwords are hashed and verified in a separate thread pool, so slow BCrypt doesn't block the network threads")
+    public static class HASHING {
+
+      @Comment("Amount of the hashing threads, set to 0 to use the amount of available processors")
+      public int THREADS = 0;
+
+      @Comment("Maximum amount of the queued hashing tasks, players will receive the ratelimited message if the queue is full")
+      public int MAX_QUEUE_SIZE = 256;
+    }
+
+    @Create
+    public Settings.MAIN.ISPREMIUM_CIRCUIT_BREAKER ISPREMIUM_CIRCUIT_BREAKER;
+
+    @Comment({
+        "Stops querying the isPremium API while it fails or responds slowly, the players are checked by the database only meanwhile",
+        "Rate-limited, failed and timed out lookups are counted as failed"
+    })
+    public static class ISPREMIUM_CIRCUIT_BREAKER {
+
+      public boolean ENABLED = true;
+
+      @Comment("Amount of the latest lookups to calculate the failure and slow lookup rates from")
+      public int WINDOW_SIZE = 50;
+      @Comment("Minimum amount of the lookups in the window before the breaker can open")
+      public int MIN_CALLS = 10;
+      @Comment("Percentage of the failed lookups in the window to open the breaker")
+      public int FAILURE_RATE_THRESHOLD = 50;
+      @Comment("Lookups that took at least this amount of milliseconds are counted as slow")
+      public long SLOW_CALL_DURATION = 2000;
+      @Comment("Percentage of the slow lookups in the window to open the breaker")
+      public int SLOW_CALL_RATE_THRESHOLD = 80;
+      @Comment("Time in milliseconds for the breaker to stay open before the probe lookups are sent")
+      public long OPEN_DURATION = 30000;
+      @Comment("Amount of the probe lookups, the breaker closes if all of them succeed and opens again otherwise")
+      public int HALF_OPEN_PROBES = 3;
+    }
+
+    /**
+     * Entry of {@link #ISPREMIUM_MIRRORS}, the null parameters are taken from the isPremium URL ones.
+     */
+    public static class ISPREMIUM_MIRROR {
+
+      public String URL;
+      @Nullable
+      public List<Integer> STATUS_CODE_USER_EXISTS;
+      @Nullable
+      public List<Integer> STATUS_CODE_USER_NOT_EXISTS;
+      @Nullable
+      public List<Integer> STATUS_CODE_RATE_LIMIT;
+      @Nullable
+      public List<String> USER_EXISTS_JSON_VALIDATOR_FIELDS;
+      @Nullable
+      public String JSON_UUID_FIELD;
+      @Nullable
+      public List<String> USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS;
+    }
+
+    @Create
+    public Settings.MAIN.SHARED_CACHE SHARED_CACHE;
+
+    @Comment({
+        "Keeps the auth sessions and the premium states in the store shared between the proxies behind a load balancer,",
+        "so the player doesn't have to log in again after reconnecting to another proxy"
+    })
+    public static class SHARED_CACHE {
+
+      public boolean ENABLED = false;
+
+      @Comment("Shared cache type: redis (or any other Redis protocol compatible store) or memory (this proxy only, for testing)")
+      public SharedCacheType TYPE = SharedCacheType.REDIS;
+      public String HOSTNAME = "127.0.0.1:6379";
+      public String PASSWORD = "";
+      public int DATABASE = 0;
+      @Comment("Prefix of the keys and of the invalidation channel, so several networks can use the same store")
+      public String KEY_PREFIX = "limboauth:";
+      @Comment("Time in milliseconds to wait for the store, lookups that took longer are treated as cache misses")
+      public long TIMEOUT = 500;
+      @Comment({
+          "Sync the bruteforce attempts and the command ratelimits between the proxies, so the attempts can't be spread across them",
+          "The attempts are checked locally and published in batches, bruteforce-ipv6-prefix-length should be the same on every proxy"
+      })
+      public boolean SYNC_COUNTERS = true;
+      @Comment("Time in milliseconds between the publications of the attempt counters")
+      public long GOSSIP_INTERVAL = 500;
+    }
+
     @Create
     public Settings.MAIN.MOD MOD;
 
@@ -363,6 +517,8 @@ public class Settings extends YamlConfig {
       public CommandPermissionState FORCE_UNREGISTER = CommandPermissionState.PERMISSION;
       @Comment("Permission: limboauth.admin.reload")
       public CommandPermissionState RELOAD = CommandPermissionState.PERMISSION;
+      @Comment("Permission: limboauth.admin.stats")
+      public CommandPermissionState STATS = CommandPermissionState.PERMISSION;
       @Comment("Permission: limboauth.admin.help")
       public CommandPermissionState HELP = CommandPermissionState.TRUE;
     }
@@ -380,6 +536,13 @@ public class Settings extends YamlConfig {
     }
     */
 
+    @Comment({
+        "Client languages with their own messages, e.g. [ru_ru, uk_ua, de], a language without the country matches all its countries.",
+        "The messages are loaded from the lang/<language>.yml files on the first join of a player with this language,",
+        "the missing files are created with the default messages. Other languages use the messages below."
+    })
+    public List<String> LOCALES = List.of();
+
     @Create
     public MAIN.STRINGS STRINGS;
 
@@ -520,6 +683,90 @@ public class Settings extends YamlConfig {
     public String PASSWORD = "password";
     public String DATABASE = "limboauth";
     public String CONNECTION_PARAMETERS = "?autoReconnect=true&initialTimeout=1&useSSL=false";
+
+    @Comment("Amount of the threads that execute the database queries, new queries are queued if all of them are busy")
+    public int WORKER_THREADS = 4;
+    @Comment("Run the login queries with the cached JDBC prepared statements instead of ORMLite, disable if your database has issues with it")
+    public boolean JDBC_FAST_PATH = true;
+    @Comment("Time in milliseconds that the previous connection is kept for the started queries after the database settings are reloaded")
+    public long RELOAD_DRAIN_TIMEOUT = 30000;
+
+    @Create
+    public Settings.DATABASE.POOL POOL;
+
+    @Comment("Database connection pool settings")
+    public static class POOL {
+
+      @Comment("Maximum amount of the connections in use, the queries wait for a free connection if all of them are busy")
+      public int MAX_SIZE = 10;
+      @Comment("Amount of the idle connections that are kept open")
+      public int MIN_IDLE = 2;
+      @Comment("Maximum amount of the idle connections, the others are closed when released")
+      public int MAX_IDLE = 5;
+      @Comment("Time in milliseconds after which the connection is closed and replaced, 0 to disable")
+      public long MAX_LIFETIME = 1800000;
+      @Comment("The connection that was idle for this time in milliseconds is checked with a ping query before use, 0 to disable")
+      public long VALIDATION_INTERVAL = 5000;
+      @Comment("Time in milliseconds to wait for a free connection before the query fails")
+      public long ACQUIRE_TIMEOUT = 10000;
+      @Comment("A warning with the stacktrace is logged if the connection is held for longer than this time in milliseconds, 0 to disable")
+      public long LEAK_DETECTION_THRESHOLD = 30000;
+    }
+
+    @Create
+    public Settings.DATABASE.REPLICAS REPLICAS;
+
+    @Comment("Read-only replicas, the player lookups are sent to them instead of the primary database")
+    public static class REPLICAS {
+
+      @Comment({
+          "Hostnames of the replicas, the database name, user, password, connection parameters and pool settings are the same as for the primary",
+          "Only mariadb, mysql and postgresql storage types support the replicas"
+      })
+      public List<String> HOSTNAMES = List.of();
+      @Comment({
+          "Replicas that lag behind the primary for longer than this time in milliseconds are not used",
+          "Lookups of the players that were updated within max-lag + check-interval are sent to the primary"
+      })
+      public long MAX_LAG = 5000;
+      @Comment("Time in milliseconds between the replica availability and lag checks")
+      public long CHECK_INTERVAL = 5000;
+      @Comment({
+          "Query that returns the replica lag in seconds, leave empty to use the default query of the storage type",
+          "The default MySQL and MariaDB query needs the REPLICATION CLIENT privilege (REPLICA MONITOR on MariaDB 10.5.9+)"
+      })
+      public String LAG_QUERY = "";
+    }
+
+    @Create
+    public Settings.DATABASE.PLAYER_CACHE PLAYER_CACHE;
+
+    @Comment("Registered players are cached, so reconnects don't query the database")
+    public static class PLAYER_CACHE {
+
+      @Comment({
+          "Enable only if this is the only proxy using the database, or if main.shared-cache is enabled on all proxies,",
+          "otherwise the password, 2FA and registration changes made on the other proxies are not seen until the cached player expires"
+      })
+      public boolean ENABLED = false;
+      @Comment("Time in milliseconds for the cached player to expire")
+      public long TTL = 600000;
+      @Comment("Maximum amount of the cached players")
+      public int MAX_SIZE = 10000;
+    }
+
+    @Create
+    public Settings.DATABASE.LOGIN_DATA_BATCH LOGIN_DATA_BATCH;
+
+    @Comment("Login IP and date updates are written in batches instead of one query per login")
+    public static class LOGIN_DATA_BATCH {
+
+      public boolean ENABLED = true;
+      @Comment("Time in milliseconds for the updates to be collected before they are written")
+      public long FLUSH_INTERVAL = 1000;
+      @Comment("The batch is written immediately once it has this amount of updates")
+      public int MAX_SIZE = 100;
+    }
   }
 
   public static class MD5KeySerializer extends ConfigSerializer<byte[], String> {
@@ -558,4 +805,107 @@ public class Settings extends YamlConfig {
       return builder.toString();
     }
   }
+
+  /**
+   * Reads {@link MAIN#ISPREMIUM_MIRRORS} from the list of the sections, the unknown and mistyped parameters are rejected.
+   */
+  public static class PremiumMirrorsSerializer extends ConfigSerializer<List<MAIN.ISPREMIUM_MIRROR>, List<Map<String, Object>>> {
+
+    @SuppressWarnings("unchecked")
+    public PremiumMirrorsSerializer() {
+      super((Class<List<MAIN.ISPREMIUM_MIRROR>>) (Class<?>) List.class, (Class<List<Map<String, Object>>>) (Class<?>) List.class);
+    }
+
+    @Override
+    public List<Map<String, Object>> serialize(List<MAIN.ISPREMIUM_MIRROR> from) {
+      List<Map<String, Object>> mirrors = new ArrayList<>(from.size());
+      for (MAIN.ISPREMIUM_MIRROR mirror : from) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("url", mirror.URL);
+        putIfSet(parameters, "status-code-user-exists", mirror.STATUS_CODE_USER_EXISTS);
+        putIfSet(parameters, "status-code-user-not-exists", mirror.STATUS_CODE_USER_NOT_EXISTS);
+        putIfSet(parameters, "status-code-rate-limit", mirror.STATUS_CODE_RATE_LIMIT);
+        putIfSet(parameters, "user-exists-json-validator-fields", mirror.USER_EXISTS_JSON_VALIDATOR_FIELDS);
+        putIfSet(parameters, "json-uuid-field", mirror.JSON_UUID_FIELD);
+        putIfSet(parameters, "user-not-exists-json-validator-fields", mirror.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS);
+        mirrors.add(parameters);
+      }
+
+      return mirrors;
+    }
+
+    @Override
+    public List<MAIN.ISPREMIUM_MIRROR> deserialize(List<Map<String, Object>> from) {
+      List<MAIN.ISPREMIUM_MIRROR> mirrors = new ArrayList<>(from.size());
+      for (Object entry : from) {
+        if (!(entry instanceof Map<?, ?> parameters)) {
+          throw new IllegalArgumentException("ispremium-mirrors entry should be a section with the url and optional parameters, got: " + entry);
+        }
+
+        MAIN.ISPREMIUM_MIRROR mirror = new MAIN.ISPREMIUM_MIRROR();
+        for (Map.Entry<?, ?> parameter : parameters.entrySet()) {
+          String key = String.valueOf(parameter.getKey());
+          Object value = parameter.getValue();
+          switch (key) {
+            case "url" -> mirror.URL = toString(key, value);
+            case "status-code-user-exists" -> mirror.STATUS_CODE_USER_EXISTS = toList(key, value, Integer::valueOf);
+            case "status-code-user-not-exists" -> mirror.STATUS_CODE_USER_NOT_EXISTS = toList(key, value, Integer::valueOf);
+            case "status-code-rate-limit" -> mirror.STATUS_CODE_RATE_LIMIT = toList(key, value, Integer::valueOf);
+            case "user-exists-json-validator-fields" -> mirror.USER_EXISTS_JSON_VALIDATOR_FIELDS = toList(key, value, String::valueOf);
+            case "json-uuid-field" -> mirror.JSON_UUID_FIELD = toString(key, value);
+            case "user-not-exists-json-validator-fields" -> mirror.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS = toList(key, value, String::valueOf);
+            default -> throw new IllegalArgumentException("Unknown ispremium-mirrors parameter: " + key);
+          }
+        }
+
+        if (mirror.URL == null || mirror.URL.isBlank()) {
+          throw new IllegalArgumentException("ispremium-mirrors entry has no url: " + parameters);
+        }
+
+        mirrors.add(mirror);
+      }
+
+      return mirrors;
+    }
+
+    private static void putIfSet(Map<String, Object> parameters, String key, @Nullable Object value) {
+      if (value != null) {
+        parameters.put(key, value);
+      }
+    }
+
+    private static String toString(String key, Object value) {
+      if (value instanceof List || value instanceof Map) {
+        throw new IllegalArgumentException("ispremium-mirrors parameter " + key + " should be a single value, got: " + value);
+      }
+
+      return String.valueOf(value).strip();
+    }
+
+    private static <T> List<T> toList(String key, Object value, Function<String, T> parser) {
+      if (!(value instanceof List<?> values)) {
+        throw new IllegalArgumentException("ispremium-mirrors parameter " + key + " should be a list, got: " + value);
+      }
+
+      List<T> result = new ArrayList<>(values.size());
+      for (Object element : values) {
+        try {
+          result.add(parser.apply(String.valueOf(element).strip()));
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("ispremium-mirrors parameter " + key + " should be a list of status codes, got: " + value, e);
+        }
+      }
+
+      return List.copyOf(result);
+    }
+  }
+
+  /**
+   * Messages file of a single client language, see {@link MAIN#LOCALES}.
+   */
+  public static class LOCALE_MESSAGES extends YamlConfig {
+
+    @Create
+    public MAIN.STRINGS STRINGS;
+  }
 }
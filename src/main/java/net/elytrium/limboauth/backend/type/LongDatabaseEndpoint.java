@@ -17,9 +17,9 @@
 
 package net.elytrium.limboauth.backend.type;
 
+import java.util.Locale;
 import java.util.function.Function;
 import net.elytrium.limboauth.LimboAuth;
-import net.elytrium.limboauth.handler.AuthSessionHandler;
 import net.elytrium.limboauth.model.RegisteredPlayer;
 
 public class LongDatabaseEndpoint extends LongEndpoint {
@@ -30,7 +30,7 @@ public class LongDatabaseEndpoint extends LongEndpoint {
 
   public LongDatabaseEndpoint(LimboAuth plugin, String type, Function<RegisteredPlayer, Long> function) {
     super(plugin, type, username -> {
-      RegisteredPlayer player = AuthSessionHandler.fetchInfo(plugin.getPlayerDao(), username);
+      RegisteredPlayer player = plugin.getPlayerRepository().findByNickname(username.toLowerCase(Locale.ROOT)).join();
       if (player == null) {
         return Long.MIN_VALUE;
       } else {
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the failed login attempts per address without allocating objects per address.
+ *
+ * <p>Addresses are stored as 128-bit keys in the open-addressing tables with linear probing: IPv4 addresses are
+ * stored as IPv4-mapped IPv6 addresses, IPv6 addresses are truncated to the configured prefix, as an attacker usually owns the whole subnet.
+ * Every slot packs the window start and the attempts counter into one atomically updated long, the counter is reset when its window ends.
+ *
+ * <p>Slots are never removed, instead there are two generations of the tables: when the current table is full,
+ * it becomes the previous one, and the counters that are still alive are moved to the new table on their next increment.
+ * The trade-off is that the memory is bounded by the addresses, not by the time: an attacker that cycles through maxSize / 2 new addresses
+ * moves a live counter to the previous generation, and through about maxSize addresses drops it if it wasn't incremented meanwhile.
+ * Keep the max size well above the amount of the addresses seen during one window.
+ */
+public class BruteforceCounter implements CacheStatistics {
+
+  private static final int EMPTY = 0;
+  private static final int CLAIMING = 1;
+  private static final int READY = 2;
+
+  private static final long IPV4_MAPPED_PREFIX = 0xFFFF_0000_0000L;
+
+  private final long epoch = System.currentTimeMillis();
+  private final long windowSeconds;
+  private final int maxSize;
+  private final long ipv6HiMask;
+  private final long ipv6LoMask;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private volatile Table current;
+  private volatile Table previous;
+
+  public BruteforceCounter(long windowMillis, int maxSize, int ipv6PrefixLength) {
+    this.windowSeconds = Math.max(1, windowMillis / 1000);
+    this.maxSize = Math.max(2, maxSize);
+
+    int prefixLength = Math.max(0, Math.min(128, ipv6PrefixLength));
+    this.ipv6HiMask = prefixMask(Math.min(64, prefixLength));
+    this.ipv6LoMask = prefixMask(Math.max(0, prefixLength - 64));
+
+    this.current = new Table(this.maxSize / 2);
+    this.previous = new Table(0);
+  }
+
+  private static long prefixMask(int bits) {
+    return bits == 0 ? 0 : -1L << (64 - bits);
+  }
+
+  /**
+   * @return attempts amount including this attempt
+   */
+  public int increment(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    long hi = this.hi(bytes);
+    long lo = this.lo(bytes);
+    int now = this.now();
+
+    Table table = this.current;
+    int index = table.find(hi, lo, true);
+    if (index == -1) {
+      this.rotate(table);
+      table = this.current;
+      index = table.find(hi, lo, true);
+      if (index == -1) {
+        // The new table was filled by the other threads, don't wait for it
+        return 1;
+      }
+    }
+
+    if (table.values.get(index) == 0) {
+      long previousValue = this.liveValue(this.previous, hi, lo, now);
+      if (previousValue != 0) {
+        table.values.compareAndSet(index, 0, previousValue);
+      }
+    }
+
+    while (true) {
+      long value = table.values.get(index);
+      boolean alive = this.isAlive(value, now);
+      long next = alive ? value + 1 : ((long) now << 32) | 1;
+      if (table.values.compareAndSet(index, value, next)) {
+        if (alive) {
+          this.hits.increment();
+        } else {
+          this.misses.increment();
+          if (value != 0) {
+            this.expirations.increment();
+          }
+        }
+
+        return (int) next;
+      }
+    }
+  }
+
+  public int get(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    long hi = this.hi(bytes);
+    long lo = this.lo(bytes);
+    int now = this.now();
+
+    long value = this.liveValue(this.current, hi, lo, now);
+    if (value == 0) {
+      value = this.liveValue(this.previous, hi, lo, now);
+    }
+
+    if (value == 0) {
+      this.misses.increment();
+      return 0;
+    }
+
+    this.hits.increment();
+    return (int) value;
+  }
+
+  /**
+   * @return the key the address is counted by, the addresses of the same IPv6 prefix share it
+   */
+  public String getKey(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    return Long.toHexString(this.hi(bytes)) + ':' + Long.toHexString(this.lo(bytes));
+  }
+
+  public void clear(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    long hi = this.hi(bytes);
+    long lo = this.lo(bytes);
+    this.clear(this.current, hi, lo);
+    this.clear(this.previous, hi, lo);
+  }
+
+  /**
+   * Clears the counter by the key returned from {@link #getKey(InetAddress)}.
+   */
+  public void clear(String key) {
+    int separator = key.indexOf(':');
+    long hi = Long.parseUnsignedLong(key.substring(0, separator), 16);
+    long lo = Long.parseUnsignedLong(key.substring(separator + 1), 16);
+    this.clear(this.current, hi, lo);
+    this.clear(this.previous, hi, lo);
+  }
+
+  private void clear(Table table, long hi, long lo) {
+    int index = table.find(hi, lo, false);
+    if (index != -1) {
+      table.values.set(index, 0);
+    }
+  }
+
+  private long liveValue(Table table, long hi, long lo, int now) {
+    int index = table.find(hi, lo, false);
+    if (index == -1) {
+      return 0;
+    }
+
+    long value = table.values.get(index);
+    return this.isAlive(value, now) ? value : 0;
+  }
+
+  private boolean isAlive(long value, int now) {
+    return (int) value != 0 && now - (int) (value >>> 32) < this.windowSeconds;
+  }
+
+  private synchronized void rotate(Table full) {
+    if (this.current == full) {
+      this.evictions.add(this.previous.size.get());
+      this.previous = full;
+      this.current = new Table(this.maxSize / 2);
+    }
+  }
+
+  private int now() {
+    return (int) ((System.currentTimeMillis() - this.epoch) / 1000);
+  }
+
+  private long hi(byte[] bytes) {
+    if (bytes.length == 4 || this.isIpv4Mapped(bytes)) {
+      return 0;
+    }
+
+    return this.readLong(bytes, 0) & this.ipv6HiMask;
+  }
+
+  private long lo(byte[] bytes) {
+    if (bytes.length == 4) {
+      return IPV4_MAPPED_PREFIX | (this.readInt(bytes, 0) & 0xFFFFFFFFL);
+    }
+
+    // Already mapped addresses must not be truncated to the prefix, otherwise the whole IPv4 space would share one counter
+    if (this.isIpv4Mapped(bytes)) {
+      return IPV4_MAPPED_PREFIX | (this.readInt(bytes, 12) & 0xFFFFFFFFL);
+    }
+
+    return this.readLong(bytes, 8) & this.ipv6LoMask;
+  }
+
+  private boolean isIpv4Mapped(byte[] bytes) {
+    return this.readLong(bytes, 0) == 0 && this.readInt(bytes, 8) == 0xFFFF;
+  }
+
+  private long readLong(byte[] bytes, int offset) {
+    return ((long) this.readInt(bytes, offset) << 32) | (this.readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+  }
+
+  private int readInt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+  }
+
+  @Override
+  public int size() {
+    return this.current.size.get() + this.previous.size.get();
+  }
+
+  @Override
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
+  @Override
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  @Override
+  public long getExpirations() {
+    return this.expirations.sum();
+  }
+
+  @Override
+  public long getEvictions() {
+    return this.evictions.sum();
+  }
+
+  private static class Table {
+
+    private final long[] keysHi;
+    private final long[] keysLo;
+    private final AtomicIntegerArray states;
+    private final AtomicLongArray values;
+    private final AtomicInteger size = new AtomicInteger();
+    private final int limit;
+    private final int mask;
+
+    Table(int limit) {
+      // Keep the load factor under 0.5, so the probe sequences stay short
+      int capacity = Integer.highestOneBit(Math.max(1, limit) * 2 - 1) << 1;
+      this.keysHi = new long[capacity];
+      this.keysLo = new long[capacity];
+      this.states = new AtomicIntegerArray(capacity);
+      this.values = new AtomicLongArray(capacity);
+      this.limit = limit;
+      this.mask = capacity - 1;
+    }
+
+    /**
+     * @return index of the slot, or -1 if there is no such key and it can't be inserted
+     */
+    int find(long hi, long lo, boolean insert) {
+      int index = hash(hi, lo) & this.mask;
+      for (int probe = 0; probe <= this.mask; ++probe, index = (index + 1) & this.mask) {
+        int state = this.states.get(index);
+        if (state == EMPTY) {
+          if (!insert || this.size.get() >= this.limit) {
+            return -1;
+          }
+
+          if (this.states.compareAndSet(index, EMPTY, CLAIMING)) {
+            this.keysHi[index] = hi;
+            this.keysLo[index] = lo;
+            // Volatile write publishes the key to the other threads
+            this.states.set(index, READY);
+            this.size.incrementAndGet();
+            return index;
+          }
+
+          state = this.states.get(index);
+        }
+
+        while (state == CLAIMING) {
+          Thread.onSpinWait();
+          state = this.states.get(index);
+        }
+
+        if (this.keysHi[index] == hi && this.keysLo[index] == lo) {
+          return index;
+        }
+      }
+
+      return -1;
+    }
+
+    private static int hash(long hi, long lo) {
+      long hash = hi * 0x9E3779B97F4A7C15L ^ lo;
+      hash ^= hash >>> 33;
+      hash *= 0xFF51AFD7ED558CCDL;
+      hash ^= hash >>> 33;
+      return (int) hash;
+    }
+  }
+}
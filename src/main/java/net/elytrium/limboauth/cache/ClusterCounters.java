@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import net.elytrium.limboauth.LimboAuth;
+
+/**
+ * Windowed G-counters of the attempts made on the other proxies, gossiped over the shared cache pub/sub.
+ *
+ * <p>Every proxy counts its own attempts per key and periodically publishes the changed counters. Each counter carries the start of its
+ * window, the received counter replaces the stored one if its window is newer and is merged by max otherwise, so the duplicated and
+ * reordered messages are harmless. The checks only read the local state, the attempts are never waited to be published.
+ *
+ * <p>A counter can't be decremented, so the clears are published as tombstones: the counters whose window started before the clear
+ * are dropped until the window passes.
+ *
+ * <p>At most maxSize keys of each of the own counters, the remote counters and the clears are kept, the new keys are not synced until
+ * the expired ones are purged.
+ */
+public class ClusterCounters {
+
+  private static final int MAX_LINES_PER_MESSAGE = 1000;
+
+  private final String nodeId = UUID.randomUUID().toString();
+  private final SharedCache transport;
+  private final String channel;
+  private final Map<Kind, Long> windows;
+  private final int maxSize;
+  private final Map<String, Counter> own = new ConcurrentHashMap<>();
+  private final Map<String, Remote> remote = new ConcurrentHashMap<>();
+  private final Map<String, Long> clears = new ConcurrentHashMap<>();
+  private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+  private final Set<String> dirtyClears = ConcurrentHashMap.newKeySet();
+  private final BiConsumer<Kind, String> clearListener;
+  private final ScheduledExecutorService gossipExecutor;
+  private volatile boolean overflowReported;
+
+  /**
+   * @param clearListener called when another proxy clears the counter, so the local counters are cleared too
+   */
+  public ClusterCounters(SharedCache transport, String channel, long gossipInterval, Map<Kind, Long> windows, int maxSize,
+      BiConsumer<Kind, String> clearListener) {
+    this.transport = transport;
+    this.channel = channel;
+    this.windows = Map.copyOf(windows);
+    this.maxSize = Math.max(1, maxSize);
+    this.clearListener = clearListener;
+    this.transport.subscribe(channel, this::receive);
+    this.gossipExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth Counters Gossip");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.gossipExecutor.scheduleWithFixedDelay(this::gossip, gossipInterval, gossipInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Counts the attempt made on this proxy, it is published with the next gossip.
+   */
+  public void increment(Kind kind, String key) {
+    String counterKey = kind.name() + '|' + key;
+    if (!this.hasRoom(this.own, counterKey)) {
+      return;
+    }
+
+    long currentTime = System.currentTimeMillis();
+    long window = this.windows.get(kind);
+    this.own.compute(counterKey, (ignored, counter) -> kind.accumulating && counter != null && currentTime - counter.start < window
+        ? new Counter(counter.start, counter.count + 1)
+        : new Counter(currentTime, 1));
+    this.dirty.add(counterKey);
+  }
+
+  /**
+   * @return the amount of the attempts made on the other proxies within the window
+   */
+  public int getRemote(Kind kind, String key) {
+    Remote counters = this.remote.get(kind.name() + '|' + key);
+    return counters == null ? 0 : counters.sum(System.currentTimeMillis() - this.windows.get(kind));
+  }
+
+  /**
+   * Drops the attempts made on every proxy.
+   */
+  public void clear(Kind kind, String key) {
+    String counterKey = kind.name() + '|' + key;
+    this.applyClear(counterKey, System.currentTimeMillis());
+    this.dirty.remove(counterKey);
+    this.dirtyClears.add(counterKey);
+  }
+
+  public void close() {
+    this.gossipExecutor.shutdownNow();
+  }
+
+  private void applyClear(String counterKey, long clearTime) {
+    if (this.hasRoom(this.clears, counterKey)) {
+      this.clears.merge(counterKey, clearTime, Math::max);
+    }
+
+    this.own.computeIfPresent(counterKey, (ignored, counter) -> counter.start <= clearTime ? null : counter);
+    Remote counters = this.remote.get(counterKey);
+    if (counters != null) {
+      counters.clear(clearTime);
+    }
+  }
+
+  private void gossip() {
+    try {
+      List<String> lines = new ArrayList<>();
+      for (String counterKey : this.dirtyClears) {
+        this.dirtyClears.remove(counterKey);
+        Long clearTime = this.clears.get(counterKey);
+        if (clearTime != null) {
+          lines.add("clear|" + counterKey + '|' + clearTime);
+        }
+      }
+
+      for (String counterKey : this.dirty) {
+        this.dirty.remove(counterKey);
+        Counter counter = this.own.get(counterKey);
+        if (counter != null) {
+          lines.add(counterKey + '|' + counter.start + '|' + counter.count);
+        }
+      }
+
+      for (int i = 0; i < lines.size(); i += MAX_LINES_PER_MESSAGE) {
+        List<String> chunk = lines.subList(i, Math.min(lines.size(), i + MAX_LINES_PER_MESSAGE));
+        this.transport.publish(this.channel, this.nodeId + '\n' + String.join("\n", chunk));
+      }
+
+      this.purge();
+    } catch (RuntimeException e) {
+      LimboAuth.getLogger().error("Unable to publish the attempt counters.", e);
+    }
+  }
+
+  private void purge() {
+    long currentTime = System.currentTimeMillis();
+    this.own.entrySet().removeIf(entry -> currentTime - entry.getValue().start >= this.getWindow(entry.getKey()));
+    this.clears.entrySet().removeIf(entry -> currentTime - entry.getValue() >= this.getWindow(entry.getKey()));
+    this.remote.entrySet().removeIf(entry -> entry.getValue().purge(currentTime - this.getWindow(entry.getKey())));
+    if (this.own.size() < this.maxSize && this.remote.size() < this.maxSize && this.clears.size() < this.maxSize) {
+      this.overflowReported = false;
+    }
+  }
+
+  private long getWindow(String counterKey) {
+    return this.windows.get(Kind.valueOf(counterKey.substring(0, counterKey.indexOf('|'))));
+  }
+
+  private boolean hasRoom(Map<String, ?> counters, String counterKey) {
+    if (counters.size() < this.maxSize || counters.containsKey(counterKey)) {
+      return true;
+    }
+
+    if (!this.overflowReported) {
+      this.overflowReported = true;
+      LimboAuth.getLogger().warn("Too many attempt counters to sync, the new keys are counted locally only until the old ones expire.");
+    }
+
+    return false;
+  }
+
+  private void receive(String message) {
+    String[] lines = message.split("\n");
+    String senderId = lines[0];
+    if (senderId.equals(this.nodeId)) {
+      return;
+    }
+
+    try {
+      for (int i = 1; i < lines.length; ++i) {
+        String[] parts = lines[i].split("\\|");
+        if (parts[0].equals("clear")) {
+          Kind kind = Kind.valueOf(parts[1]);
+          this.applyClear(kind.name() + '|' + parts[2], Long.parseLong(parts[3]));
+          this.clearListener.accept(kind, parts[2]);
+        } else {
+          String counterKey = Kind.valueOf(parts[0]).name() + '|' + parts[1];
+          Counter counter = new Counter(Long.parseLong(parts[2]), Integer.parseInt(parts[3]));
+          Long clearTime = this.clears.get(counterKey);
+          if ((clearTime == null || counter.start > clearTime) && this.hasRoom(this.remote, counterKey)) {
+            this.remote.computeIfAbsent(counterKey, ignored -> new Remote()).merge(senderId, counter);
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      LimboAuth.getLogger().error("Unable to read the attempt counters of {}.", senderId, e);
+    }
+  }
+
+  public enum Kind {
+
+    /**
+     * Failed login attempts, counted until the window since the first attempt passes.
+     */
+    BRUTEFORCE(true),
+    /**
+     * Ratelimited actions, only the latest one is kept.
+     */
+    RATELIMIT(false);
+
+    private final boolean accumulating;
+
+    Kind(boolean accumulating) {
+      this.accumulating = accumulating;
+    }
+  }
+
+  private static class Counter {
+
+    private final long start;
+    private final int count;
+
+    private Counter(long start, int count) {
+      this.start = start;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Counters of the same key received from the other proxies.
+   */
+  private static class Remote {
+
+    private final Map<String, Counter> nodes = new HashMap<>();
+
+    private synchronized void merge(String nodeId, Counter counter) {
+      this.nodes.merge(nodeId, counter, (current, received) -> {
+        if (received.start != current.start) {
+          return received.start > current.start ? received : current;
+        }
+
+        return received.count > current.count ? received : current;
+      });
+    }
+
+    private synchronized int sum(long aliveAfter) {
+      int sum = 0;
+      for (Counter counter : this.nodes.values()) {
+        if (counter.start > aliveAfter) {
+          sum += counter.count;
+        }
+      }
+
+      return sum;
+    }
+
+    private synchronized void clear(long clearTime) {
+      this.nodes.values().removeIf(counter -> counter.start <= clearTime);
+    }
+
+    /**
+     * @return true if there are no counters left
+     */
+    private synchronized boolean purge(long aliveAfter) {
+      this.nodes.values().removeIf(counter -> counter.start <= aliveAfter);
+      return this.nodes.isEmpty();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import com.velocitypowered.proxy.util.ratelimit.Ratelimiter;
+import java.net.InetAddress;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Ratelimiter that also takes the attempts made on the other proxies into account, if the cluster counters are set.
+ */
+public class ClusterRatelimiter implements Ratelimiter {
+
+  private final Ratelimiter local;
+  @Nullable
+  private volatile ClusterCounters counters;
+
+  public ClusterRatelimiter(Ratelimiter local) {
+    this.local = local;
+  }
+
+  @Override
+  public boolean attempt(InetAddress address) {
+    if (!this.local.attempt(address)) {
+      return false;
+    }
+
+    ClusterCounters counters = this.counters;
+    if (counters == null) {
+      return true;
+    }
+
+    String key = address.getHostAddress();
+    if (counters.getRemote(ClusterCounters.Kind.RATELIMIT, key) != 0) {
+      return false;
+    }
+
+    counters.increment(ClusterCounters.Kind.RATELIMIT, key);
+    return true;
+  }
+
+  public void setCounters(@Nullable ClusterCounters counters) {
+    this.counters = counters;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Segmented cache with the fixed time to live and the hard size cap.
+ * As every entry lives for the same time, each segment keeps the entries in the insertion order,
+ * so the expired entries are always at the head and are removed in O(1) during the regular accesses, without full scans.
+ * If the segment is full, its oldest entry is evicted.
+ */
+public class ExpiringCache<K, V> implements CacheStatistics {
+
+  private static final int SEGMENTS = 16;
+
+  private final long ttl;
+  private final int maxSize;
+  private final Segment<K, V>[] segments;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public ExpiringCache(long ttl, int maxSize) {
+    this.ttl = ttl;
+    this.maxSize = maxSize;
+    @SuppressWarnings("unchecked")
+    Segment<K, V>[] segments = (Segment<K, V>[]) new Segment<?, ?>[SEGMENTS];
+    this.segments = segments;
+    int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; ++i) {
+      this.segments[i] = new Segment<>(segmentSize);
+    }
+  }
+
+  public V get(K key) {
+    Segment<K, V> segment = this.segmentFor(key);
+    synchronized (segment) {
+      this.expire(segment, System.currentTimeMillis());
+      Entry<V> entry = segment.map.get(key);
+      if (entry == null) {
+        this.misses.increment();
+        return null;
+      }
+
+      this.hits.increment();
+      return entry.value;
+    }
+  }
+
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    Segment<K, V> segment = this.segmentFor(key);
+    synchronized (segment) {
+      long now = System.currentTimeMillis();
+      this.expire(segment, now);
+      Entry<V> entry = segment.map.get(key);
+      if (entry != null) {
+        this.hits.increment();
+        return entry.value;
+      }
+
+      this.misses.increment();
+      V value = mappingFunction.apply(key);
+      this.insert(segment, key, value, now);
+      return value;
+    }
+  }
+
+  public void put(K key, V value) {
+    this.put(key, value, System.currentTimeMillis());
+  }
+
+  /**
+   * Puts the entry that was created at the given time, e.g. restored from the disk.
+   * The entries should be put in the order of their creation time, otherwise the older ones may outlive their time to live.
+   */
+  public void put(K key, V value, long createdAt) {
+    Segment<K, V> segment = this.segmentFor(key);
+    synchronized (segment) {
+      this.expire(segment, System.currentTimeMillis());
+      // Re-insert the entry, so it moves to the tail with the new expiration time
+      segment.map.remove(key);
+      this.insert(segment, key, value, createdAt);
+    }
+  }
+
+  public V remove(K key) {
+    Segment<K, V> segment = this.segmentFor(key);
+    synchronized (segment) {
+      Entry<V> entry = segment.map.remove(key);
+      return entry == null ? null : entry.value;
+    }
+  }
+
+  /**
+   * Iterates over the entries that are not expired yet, segment by segment.
+   */
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Segment<K, V> segment : this.segments) {
+      synchronized (segment) {
+        this.expire(segment, System.currentTimeMillis());
+        segment.map.forEach((key, entry) -> action.accept(key, entry.value));
+      }
+    }
+  }
+
+  public void clear() {
+    for (Segment<K, V> segment : this.segments) {
+      synchronized (segment) {
+        segment.map.clear();
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (Segment<K, V> segment : this.segments) {
+      synchronized (segment) {
+        size += segment.map.size();
+      }
+    }
+
+    return size;
+  }
+
+  public long getTtl() {
+    return this.ttl;
+  }
+
+  @Override
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
+  @Override
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  @Override
+  public long getExpirations() {
+    return this.expirations.sum();
+  }
+
+  @Override
+  public long getEvictions() {
+    return this.evictions.sum();
+  }
+
+  private void insert(Segment<K, V> segment, K key, V value, long now) {
+    segment.map.put(key, new Entry<>(value, now + this.ttl));
+    if (segment.map.size() > segment.maxSize) {
+      Iterator<Entry<V>> iterator = segment.map.values().iterator();
+      iterator.next();
+      iterator.remove();
+      this.evictions.increment();
+    }
+  }
+
+  private void expire(Segment<K, V> segment, long now) {
+    Iterator<Entry<V>> iterator = segment.map.values().iterator();
+    while (iterator.hasNext() && iterator.next().expiresAt <= now) {
+      iterator.remove();
+      this.expirations.increment();
+    }
+  }
+
+  private Segment<K, V> segmentFor(K key) {
+    int hash = key.hashCode();
+    return this.segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+  }
+
+  private static class Segment<K, V> {
+
+    private final Map<K, Entry<V>> map = new LinkedHashMap<>();
+    private final int maxSize;
+
+    Segment(int maxSize) {
+      this.maxSize = maxSize;
+    }
+  }
+
+  private static class Entry<V> {
+
+    private final V value;
+    private final long expiresAt;
+
+    Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
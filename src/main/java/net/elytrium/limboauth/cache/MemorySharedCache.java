@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Shared cache that lives in this proxy only, for the single proxy setups and for testing.
+ */
+public class MemorySharedCache implements SharedCache {
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+
+  @Override
+  public CompletableFuture<String> get(String key) {
+    Entry entry = this.entries.get(key);
+    if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+      this.entries.remove(key, entry);
+      entry = null;
+    }
+
+    return CompletableFuture.completedFuture(entry == null ? null : entry.value);
+  }
+
+  @Override
+  public CompletableFuture<Void> set(String key, String value, long ttlMillis) {
+    long currentTime = System.currentTimeMillis();
+    this.entries.put(key, new Entry(value, currentTime + ttlMillis));
+    if (this.entries.size() % 1024 == 0) {
+      this.entries.values().removeIf(entry -> entry.expiresAt <= currentTime);
+    }
+
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public CompletableFuture<Void> delete(String key) {
+    this.entries.remove(key);
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public CompletableFuture<Void> publish(String channel, String message) {
+    this.listeners.getOrDefault(channel, List.of()).forEach(listener -> listener.accept(message));
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public void subscribe(String channel, Consumer<String> listener) {
+    this.listeners.computeIfAbsent(channel, key -> new CopyOnWriteArrayList<>()).add(listener);
+  }
+
+  @Override
+  public void close() {
+    this.entries.clear();
+    this.listeners.clear();
+  }
+
+  private static class Entry {
+
+    private final String value;
+    private final long expiresAt;
+
+    private Entry(String value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
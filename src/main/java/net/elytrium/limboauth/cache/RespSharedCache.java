@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import net.elytrium.limboauth.LimboAuth;
+
+/**
+ * Shared cache client for the Redis protocol (RESP2), works with Redis, Valkey, KeyDB, Dragonfly and the like.
+ *
+ * <p>The commands are pipelined over one connection and their replies are matched in the order they were sent.
+ * Connecting and writing is done on a dedicated thread, so the callers never block on the socket.
+ * The pub/sub messages are received over a separate connection, it is pinged while idle and reconnected if the server doesn't answer.
+ * The messages published while it is reconnecting are lost, the resubscribe listeners are called after it.
+ */
+public class RespSharedCache implements SharedCache {
+
+  private static final long RECONNECT_DELAY = 1000;
+  private static final int SUBSCRIBER_PING_INTERVAL = 5000;
+
+  private final String host;
+  private final int port;
+  private final String password;
+  private final int database;
+  private final int timeout;
+  private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+  private final List<Runnable> resubscribeListeners = new CopyOnWriteArrayList<>();
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "LimboAuth Shared Cache Writer");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private volatile Connection connection;
+  private volatile Connection subscriberConnection;
+  private volatile boolean closed;
+  private volatile boolean available = true;
+  private long lastConnectFailure;
+  private Thread subscriberThread;
+
+  /**
+   * @param hostname host and optional port, 6379 is used by default, IPv6 addresses with a port are written as [address]:port
+   * @param timeout connect and command timeout in milliseconds
+   */
+  public RespSharedCache(String hostname, String password, int database, int timeout) {
+    int portIndex = hostname.lastIndexOf(':');
+    if (hostname.startsWith("[")) {
+      int bracketIndex = hostname.indexOf(']');
+      if (bracketIndex == -1) {
+        throw new IllegalArgumentException("Invalid shared cache hostname: " + hostname);
+      }
+
+      this.host = hostname.substring(1, bracketIndex);
+      portIndex = portIndex > bracketIndex ? portIndex : -1;
+    } else if (portIndex != hostname.indexOf(':')) {
+      // Bare IPv6 address
+      this.host = hostname;
+      portIndex = -1;
+    } else {
+      this.host = portIndex == -1 ? hostname : hostname.substring(0, portIndex);
+    }
+
+    this.port = portIndex == -1 ? 6379 : Integer.parseInt(hostname.substring(portIndex + 1));
+    this.password = password;
+    this.database = database;
+    this.timeout = Math.max(1, timeout);
+  }
+
+  @Override
+  public CompletableFuture<String> get(String key) {
+    return this.send("GET", key).thenApply(reply -> (String) reply);
+  }
+
+  @Override
+  public CompletableFuture<Void> set(String key, String value, long ttlMillis) {
+    return this.send("SET", key, value, "PX", String.valueOf(Math.max(1, ttlMillis))).thenApply(reply -> null);
+  }
+
+  @Override
+  public CompletableFuture<Void> delete(String key) {
+    return this.send("DEL", key).thenApply(reply -> null);
+  }
+
+  @Override
+  public CompletableFuture<Void> publish(String channel, String message) {
+    return this.send("PUBLISH", channel, message).thenApply(reply -> null);
+  }
+
+  @Override
+  public synchronized void subscribe(String channel, Consumer<String> listener) {
+    boolean newChannel = !this.listeners.containsKey(channel);
+    this.listeners.computeIfAbsent(channel, key -> new CopyOnWriteArrayList<>()).add(listener);
+    if (this.subscriberThread == null) {
+      this.subscriberThread = new Thread(this::runSubscriber, "LimboAuth Shared Cache Subscriber");
+      this.subscriberThread.setDaemon(true);
+      this.subscriberThread.start();
+    } else if (newChannel) {
+      Connection subscriberConnection = this.subscriberConnection;
+      if (subscriberConnection != null) {
+        try {
+          subscriberConnection.write("SUBSCRIBE", channel);
+        } catch (IOException e) {
+          // The subscriber reconnects and subscribes to every channel again
+          subscriberConnection.close();
+        }
+      }
+    }
+  }
+
+  @Override
+  public void addResubscribeListener(Runnable listener) {
+    this.resubscribeListeners.add(listener);
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+    this.writer.shutdown();
+    Connection connection = this.connection;
+    if (connection != null) {
+      connection.fail(new IOException("Shared cache is closed"));
+    }
+
+    Connection subscriberConnection = this.subscriberConnection;
+    if (subscriberConnection != null) {
+      subscriberConnection.close();
+    }
+  }
+
+  private CompletableFuture<Object> send(String... command) {
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    future.orTimeout(this.timeout, TimeUnit.MILLISECONDS);
+    try {
+      this.writer.execute(() -> this.write(future, command));
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(new IOException("Shared cache is closed", e));
+    }
+
+    return future;
+  }
+
+  /**
+   * Runs on the writer thread only.
+   */
+  private void write(CompletableFuture<Object> future, String... command) {
+    if (future.isDone()) {
+      // Timed out while waiting in the queue
+      return;
+    }
+
+    Connection connection;
+    try {
+      connection = this.connect();
+    } catch (IOException e) {
+      future.completeExceptionally(e);
+      return;
+    }
+
+    connection.pending.add(future);
+    future.whenComplete((reply, throwable) -> {
+      // The server stopped answering, or the write is stuck, so the connection is dropped and opened again by the next command
+      if (throwable instanceof TimeoutException) {
+        connection.fail(throwable);
+      }
+    });
+
+    try {
+      connection.write(command);
+    } catch (IOException e) {
+      connection.fail(e);
+    }
+  }
+
+  /**
+   * Runs on the writer thread only.
+   */
+  private Connection connect() throws IOException {
+    if (this.closed) {
+      throw new IOException("Shared cache is closed");
+    }
+
+    if (this.connection != null && !this.connection.failed) {
+      return this.connection;
+    }
+
+    if (System.currentTimeMillis() - this.lastConnectFailure < RECONNECT_DELAY) {
+      throw new IOException("Shared cache is unavailable");
+    }
+
+    try {
+      Connection connection = this.open();
+      Thread reader = new Thread(connection::readReplies, "LimboAuth Shared Cache Reader");
+      reader.setDaemon(true);
+      reader.start();
+      this.connection = connection;
+      if (!this.available) {
+        this.available = true;
+        LimboAuth.getLogger().info("Connected to the shared cache again.");
+      }
+
+      return connection;
+    } catch (IOException e) {
+      this.lastConnectFailure = System.currentTimeMillis();
+      this.markUnavailable(e);
+      throw e;
+    }
+  }
+
+  private Connection open() throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(this.host, this.port), this.timeout);
+      socket.setTcpNoDelay(true);
+      Connection connection = new Connection(socket);
+      if (!this.password.isEmpty()) {
+        connection.call("AUTH", this.password);
+      }
+
+      if (this.database != 0) {
+        connection.call("SELECT", String.valueOf(this.database));
+      }
+
+      return connection;
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  private void runSubscriber() {
+    boolean subscribed = false;
+    while (!this.closed) {
+      try {
+        Connection subscriberConnection = this.open();
+        this.subscriberConnection = subscriberConnection;
+        synchronized (this) {
+          for (String channel : this.listeners.keySet()) {
+            subscriberConnection.write("SUBSCRIBE", channel);
+          }
+        }
+
+        if (subscribed) {
+          this.resubscribeListeners.forEach(Runnable::run);
+        }
+
+        subscribed = true;
+        boolean pinged = false;
+        while (!this.closed) {
+          // A half-open connection doesn't fail by itself, so the idle connection is pinged, the PONG is received as a regular reply
+          if (!subscriberConnection.awaitReply(pinged ? this.timeout : SUBSCRIBER_PING_INTERVAL)) {
+            if (pinged) {
+              throw new SocketTimeoutException("Shared cache subscriber connection doesn't answer");
+            }
+
+            subscriberConnection.write("PING");
+            pinged = true;
+            continue;
+          }
+
+          pinged = false;
+          if (subscriberConnection.readReply() instanceof List<?> message
+              && message.size() == 3 && "message".equals(message.get(0))) {
+            this.listeners.getOrDefault((String) message.get(1), List.of()).forEach(listener -> listener.accept((String) message.get(2)));
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        if (!this.closed) {
+          this.markUnavailable(e);
+          try {
+            Thread.sleep(RECONNECT_DELAY);
+          } catch (InterruptedException interrupted) {
+            return;
+          }
+        }
+      } finally {
+        if (this.subscriberConnection != null) {
+          this.subscriberConnection.close();
+        }
+      }
+    }
+  }
+
+  private void markUnavailable(Throwable throwable) {
+    if (this.available) {
+      this.available = false;
+      LimboAuth.getLogger().warn("Shared cache is unavailable, the local caches are used only.", throwable);
+    }
+  }
+
+  public boolean isAvailable() {
+    return this.available;
+  }
+
+  private class Connection {
+
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final Queue<CompletableFuture<Object>> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean failed;
+
+    private Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      this.input = new BufferedInputStream(socket.getInputStream());
+      this.output = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    private synchronized void write(String... command) throws IOException {
+      this.output.write(('*' + String.valueOf(command.length) + "\r\n").getBytes(StandardCharsets.UTF_8));
+      for (String argument : command) {
+        byte[] bytes = argument.getBytes(StandardCharsets.UTF_8);
+        this.output.write(('$' + String.valueOf(bytes.length) + "\r\n").getBytes(StandardCharsets.UTF_8));
+        this.output.write(bytes);
+        this.output.write('\r');
+        this.output.write('\n');
+      }
+
+      this.output.flush();
+    }
+
+    /**
+     * Sends the command and waits for the reply, only used before the reader thread is started.
+     */
+    private void call(String... command) throws IOException {
+      this.socket.setSoTimeout(RespSharedCache.this.timeout);
+      this.write(command);
+      Object reply = this.readReply();
+      this.socket.setSoTimeout(0);
+      if (reply instanceof ErrorReply error) {
+        throw new IOException(command[0] + " failed: " + error.message);
+      }
+    }
+
+    /**
+     * Waits for the next reply without consuming it, the reply itself must be read within the command timeout.
+     *
+     * @return false if nothing has been received in time
+     */
+    private boolean awaitReply(int timeoutMillis) throws IOException {
+      this.socket.setSoTimeout(timeoutMillis);
+      this.input.mark(1);
+      try {
+        if (this.input.read() == -1) {
+          throw new EOFException("Shared cache connection is closed");
+        }
+      } catch (SocketTimeoutException e) {
+        return false;
+      }
+
+      this.input.reset();
+      this.socket.setSoTimeout(RespSharedCache.this.timeout);
+      return true;
+    }
+
+    private void readReplies() {
+      try {
+        while (!this.failed) {
+          Object reply = this.readReply();
+          CompletableFuture<Object> future = this.pending.poll();
+          if (future == null) {
+            throw new IOException("Unexpected reply");
+          }
+
+          if (reply instanceof ErrorReply error) {
+            future.completeExceptionally(new IOException(error.message));
+          } else {
+            future.complete(reply);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        if (!this.failed && !RespSharedCache.this.closed) {
+          RespSharedCache.this.markUnavailable(e);
+        }
+
+        this.fail(e);
+      }
+    }
+
+    private Object readReply() throws IOException {
+      int type = this.input.read();
+      if (type == -1) {
+        throw new EOFException("Shared cache connection is closed");
+      }
+
+      String line = this.readLine();
+      switch (type) {
+        case '+':
+          return line;
+        case '-':
+          return new ErrorReply(line);
+        case ':':
+          return Long.parseLong(line);
+        case '$': {
+          int length = Integer.parseInt(line);
+          if (length < 0) {
+            return null;
+          }
+
+          byte[] bytes = this.input.readNBytes(length);
+          this.readLine();
+          return new String(bytes, StandardCharsets.UTF_8);
+        }
+        case '*': {
+          int size = Integer.parseInt(line);
+          if (size < 0) {
+            return null;
+          }
+
+          List<Object> elements = new ArrayList<>(size);
+          for (int i = 0; i < size; ++i) {
+            elements.add(this.readReply());
+          }
+
+          return elements;
+        }
+        default:
+          throw new IOException("Unknown reply type: " + (char) type);
+      }
+    }
+
+    private String readLine() throws IOException {
+      StringBuilder line = new StringBuilder();
+      int character;
+      while ((character = this.input.read()) != '\r') {
+        if (character == -1) {
+          throw new EOFException("Shared cache connection is closed");
+        }
+
+        line.append((char) character);
+      }
+
+      this.input.read();
+      return line.toString();
+    }
+
+    private void fail(Throwable throwable) {
+      this.failed = true;
+      this.close();
+      CompletableFuture<Object> future;
+      while ((future = this.pending.poll()) != null) {
+        future.completeExceptionally(throwable);
+      }
+    }
+
+    private void close() {
+      try {
+        this.socket.close();
+      } catch (IOException e) {
+        // Already closed
+      }
+    }
+  }
+
+  private static class ErrorReply {
+
+    private final String message;
+
+    private ErrorReply(String message) {
+      this.message = message;
+    }
+  }
+}
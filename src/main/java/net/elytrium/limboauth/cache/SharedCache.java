@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Key-value store shared between the proxies, e.g. the auth sessions and the premium states are kept there,
+ * so the player doesn't have to log in again after reconnecting to another proxy.
+ *
+ * <p>The futures are completed exceptionally if the store is unreachable, callers should treat it as a cache miss.
+ */
+public interface SharedCache {
+
+  /**
+   * @return the value, or null if there is no such key or it has expired
+   */
+  CompletableFuture<String> get(String key);
+
+  /**
+   * Waits for the value for at most timeoutMillis.
+   *
+   * @return the value, or null if there is no such key, or the store is unreachable or didn't answer in time
+   */
+  default String get(String key, long timeoutMillis) {
+    try {
+      return this.get(key).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException | TimeoutException e) {
+      return null;
+    }
+  }
+
+  CompletableFuture<Void> set(String key, String value, long ttlMillis);
+
+  CompletableFuture<Void> delete(String key);
+
+  /**
+   * Sends the message to the subscribers of the channel on every proxy, including this one.
+   */
+  CompletableFuture<Void> publish(String channel, String message);
+
+  void subscribe(String channel, Consumer<String> listener);
+
+  /**
+   * The listener is called after the subscriptions are restored, the messages published while they were lost aren't received.
+   */
+  default void addResubscribeListener(Runnable listener) {
+
+  }
+
+  void close();
+}
@@ -17,12 +17,9 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.UpdateBuilder;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
-import java.sql.SQLException;
 import java.util.Locale;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
@@ -30,13 +27,13 @@ import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.event.ChangePasswordEvent;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
 import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
 import net.kyori.adventure.text.Component;
 
 public class ChangePasswordCommand extends RatelimitedCommand {
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final boolean needOldPass;
   private final Component notRegistered;
@@ -46,9 +43,9 @@ public class ChangePasswordCommand extends RatelimitedCommand {
   private final Component usage;
   private final Component notPlayer;
 
-  public ChangePasswordCommand(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao) {
+  public ChangePasswordCommand(LimboAuth plugin, PlayerRepository playerRepository) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.needOldPass = Settings.IMP.MAIN.CHANGE_PASSWORD_NEED_OLD_PASSWORD;
@@ -64,50 +61,42 @@ public class ChangePasswordCommand extends RatelimitedCommand {
   public void execute(CommandSource source, String[] args) {
     if (source instanceof Player) {
       String usernameLowercase = ((Player) source).getUsername().toLowerCase(Locale.ROOT);
-      RegisteredPlayer player = AuthSessionHandler.fetchInfoLowercased(this.playerDao, usernameLowercase);
-
-      if (player == null) {
-        source.sendMessage(this.notRegistered);
-        return;
-      }
-
-      boolean onlineMode = player.getHash().isEmpty();
-      boolean needOldPass = this.needOldPass && !onlineMode;
-      if (needOldPass) {
-        if (args.length < 2) {
-          source.sendMessage(this.usage);
+      this.playerRepository.findByNickname(usernameLowercase).thenAcceptAsync(player -> {
+        if (player == null) {
+          source.sendMessage(this.notRegistered);
           return;
         }
 
-        if (!AuthSessionHandler.checkPassword(args[0], player, this.playerDao)) {
-          source.sendMessage(this.wrongPassword);
+        boolean onlineMode = player.getHash().isEmpty();
+        boolean needOldPass = this.needOldPass && !onlineMode;
+        if (needOldPass) {
+          if (args.length < 2) {
+            source.sendMessage(this.usage);
+            return;
+          }
+
+          if (!AuthSessionHandler.checkPassword(args[0], player, this.playerRepository)) {
+            source.sendMessage(this.wrongPassword);
+            return;
+          }
+        } else if (args.length < 1) {
+          source.sendMessage(this.usage);
           return;
         }
-      } else if (args.length < 1) {
-        source.sendMessage(this.usage);
-        return;
-      }
 
-      try {
         final String oldHash = player.getHash();
         final String newPassword = needOldPass ? args[1] : args[0];
         final String newHash = RegisteredPlayer.genHash(newPassword);
 
-        UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
-        updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, usernameLowercase);
-        updateBuilder.updateColumnValue(RegisteredPlayer.HASH_FIELD, newHash);
-        updateBuilder.update();
-
-        this.plugin.removePlayerFromCacheLowercased(usernameLowercase);
+        this.playerRepository.updateHash(usernameLowercase, newHash).thenRun(() -> {
+          this.plugin.removePlayerFromCacheLowercased(usernameLowercase);
 
-        this.plugin.getServer().getEventManager().fireAndForget(
-            new ChangePasswordEvent(player, needOldPass ? args[0] : null, oldHash, newPassword, newHash));
+          this.plugin.getServer().getEventManager().fireAndForget(
+              new ChangePasswordEvent(player, needOldPass ? args[0] : null, oldHash, newPassword, newHash));
 
-        source.sendMessage(this.successful);
-      } catch (SQLException e) {
-        source.sendMessage(this.errorOccurred);
-        throw new SQLRuntimeException(e);
-      }
+          source.sendMessage(this.successful);
+        }).exceptionally(handleError(source, this.errorOccurred));
+      }, this.plugin.getHashingExecutor()).exceptionally(handleError(source, this.errorOccurred));
     } else {
       source.sendMessage(this.notPlayer);
     }
@@ -17,46 +17,42 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.UpdateBuilder;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.ProxyServer;
-import java.sql.SQLException;
-import java.text.MessageFormat;
 import java.util.List;
 import java.util.Locale;
-import net.elytrium.commons.kyori.serialization.Serializer;
+import java.util.concurrent.CompletableFuture;
 import net.elytrium.commons.velocity.commands.SuggestUtils;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.event.ChangePasswordEvent;
-import net.elytrium.limboauth.handler.AuthSessionHandler;
 import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
+import net.elytrium.limboauth.text.ComponentTemplate;
 import net.kyori.adventure.text.Component;
 
 public class ForceChangePasswordCommand extends RatelimitedCommand {
 
   private final LimboAuth plugin;
   private final ProxyServer server;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
-  private final String message;
-  private final String successful;
-  private final String notSuccessful;
-  private final String notRegistered;
+  private final ComponentTemplate message;
+  private final ComponentTemplate successful;
+  private final ComponentTemplate notSuccessful;
+  private final ComponentTemplate notRegistered;
   private final Component usage;
 
-  public ForceChangePasswordCommand(LimboAuth plugin, ProxyServer server, Dao<RegisteredPlayer, String> playerDao) {
+  public ForceChangePasswordCommand(LimboAuth plugin, ProxyServer server, PlayerRepository playerRepository) {
     this.plugin = plugin;
     this.server = server;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
-    this.message = Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_MESSAGE;
-    this.successful = Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_SUCCESSFUL;
-    this.notSuccessful = Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_NOT_SUCCESSFUL;
-    this.notRegistered = Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_NOT_REGISTERED;
+    this.message = ComponentTemplate.compile(LimboAuth.getSerializer(), Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_MESSAGE);
+    this.successful = ComponentTemplate.compile(LimboAuth.getSerializer(), Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_SUCCESSFUL);
+    this.notSuccessful = ComponentTemplate.compile(LimboAuth.getSerializer(), Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_NOT_SUCCESSFUL);
+    this.notRegistered = ComponentTemplate.compile(LimboAuth.getSerializer(), Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_NOT_REGISTERED);
     this.usage = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_USAGE);
   }
 
@@ -72,34 +68,26 @@ public class ForceChangePasswordCommand extends RatelimitedCommand {
       String nicknameLowercased = args[0].toLowerCase(Locale.ROOT);
       String newPassword = args[1];
 
-      Serializer serializer = LimboAuth.getSerializer();
-      try {
-        RegisteredPlayer registeredPlayer = AuthSessionHandler.fetchInfoLowercased(this.playerDao, nicknameLowercased);
-
+      Component notSuccessful = this.notSuccessful.render(nickname);
+      this.playerRepository.findByNickname(nicknameLowercased).thenComposeAsync(registeredPlayer -> {
         if (registeredPlayer == null) {
-          source.sendMessage(serializer.deserialize(MessageFormat.format(this.notRegistered, nickname)));
-          return;
+          source.sendMessage(this.notRegistered.render(nickname));
+          return CompletableFuture.completedFuture(null);
         }
 
         final String oldHash = registeredPlayer.getHash();
         final String newHash = RegisteredPlayer.genHash(newPassword);
 
-        UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
-        updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nicknameLowercased);
-        updateBuilder.updateColumnValue(RegisteredPlayer.HASH_FIELD, newHash);
-        updateBuilder.update();
-
-        this.plugin.removePlayerFromCacheLowercased(nicknameLowercased);
-        this.server.getPlayer(nickname)
-            .ifPresent(player -> player.sendMessage(serializer.deserialize(MessageFormat.format(this.message, newPassword))));
+        return this.playerRepository.updateHash(nicknameLowercased, newHash).thenRun(() -> {
+          this.plugin.removePlayerFromCacheLowercased(nicknameLowercased);
+          this.server.getPlayer(nickname)
+              .ifPresent(player -> player.sendMessage(this.message.render(newPassword)));
 
-        this.plugin.getServer().getEventManager().fireAndForget(new ChangePasswordEvent(registeredPlayer, null, oldHash, newPassword, newHash));
+          this.plugin.getServer().getEventManager().fireAndForget(new ChangePasswordEvent(registeredPlayer, null, oldHash, newPassword, newHash));
 
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, nickname)));
-      } catch (SQLException e) {
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.notSuccessful, nickname)));
-        throw new SQLRuntimeException(e);
-      }
+          source.sendMessage(this.successful.render(nickname));
+        });
+      }, this.plugin.getHashingExecutor()).exceptionally(handleError(source, notSuccessful));
     } else {
       source.sendMessage(this.usage);
     }
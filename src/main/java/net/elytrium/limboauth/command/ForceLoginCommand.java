@@ -18,28 +18,27 @@
 package net.elytrium.limboauth.command;
 
 import com.velocitypowered.api.command.CommandSource;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
-import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
+import net.elytrium.limboauth.text.ComponentTemplate;
 import net.kyori.adventure.text.Component;
 
 public class ForceLoginCommand extends RatelimitedCommand {
 
   private final LimboAuth plugin;
 
-  private final String successful;
-  private final String unknownPlayer;
+  private final ComponentTemplate successful;
+  private final ComponentTemplate unknownPlayer;
   private final Component usage;
 
   public ForceLoginCommand(LimboAuth plugin) {
     this.plugin = plugin;
 
-    this.successful = Settings.IMP.MAIN.STRINGS.FORCE_LOGIN_SUCCESSFUL;
-    this.unknownPlayer = Settings.IMP.MAIN.STRINGS.FORCE_LOGIN_UNKNOWN_PLAYER;
+    this.successful = ComponentTemplate.compile(LimboAuth.getSerializer(), Settings.IMP.MAIN.STRINGS.FORCE_LOGIN_SUCCESSFUL);
+    this.unknownPlayer = ComponentTemplate.compile(LimboAuth.getSerializer(), Settings.IMP.MAIN.STRINGS.FORCE_LOGIN_UNKNOWN_PLAYER);
     this.usage = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_LOGIN_USAGE);
   }
 
@@ -48,15 +47,14 @@ public class ForceLoginCommand extends RatelimitedCommand {
     if (args.length == 1) {
       String nickname = args[0];
 
-      Serializer serializer = LimboAuth.getSerializer();
       AuthSessionHandler handler = this.plugin.getAuthenticatingPlayer(nickname);
       if (handler == null) {
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.unknownPlayer, nickname)));
+        source.sendMessage(this.unknownPlayer.render(nickname));
         return;
       }
 
       handler.finishLogin();
-      source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, nickname)));
+      source.sendMessage(this.successful.render(nickname));
     } else {
       source.sendMessage(this.usage);
     }
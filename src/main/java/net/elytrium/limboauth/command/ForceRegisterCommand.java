@@ -17,36 +17,34 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
-import java.sql.SQLException;
-import java.text.MessageFormat;
 import java.util.Locale;
-import net.elytrium.commons.kyori.serialization.Serializer;
+import java.util.concurrent.CompletableFuture;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
+import net.elytrium.limboauth.text.ComponentTemplate;
 import net.kyori.adventure.text.Component;
 
 public class ForceRegisterCommand extends RatelimitedCommand {
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
-  private final String successful;
-  private final String notSuccessful;
+  private final ComponentTemplate successful;
+  private final ComponentTemplate notSuccessful;
   private final Component usage;
   private final Component takenNickname;
   private final Component incorrectNickname;
 
-  public ForceRegisterCommand(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao) {
+  public ForceRegisterCommand(LimboAuth plugin, PlayerRepository playerRepository) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
-    this.successful = Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_SUCCESSFUL;
-    this.notSuccessful = Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_NOT_SUCCESSFUL;
+    this.successful = ComponentTemplate.compile(LimboAuth.getSerializer(), Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_SUCCESSFUL);
+    this.notSuccessful = ComponentTemplate.compile(LimboAuth.getSerializer(), Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_NOT_SUCCESSFUL);
     this.usage = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_USAGE);
     this.takenNickname = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_TAKEN_NICKNAME);
     this.incorrectNickname = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_INCORRECT_NICKNAME);
@@ -58,27 +56,23 @@ public class ForceRegisterCommand extends RatelimitedCommand {
       String nickname = args[0];
       String password = args[1];
 
-      Serializer serializer = LimboAuth.getSerializer();
-      try {
-        if (!this.plugin.getNicknameValidationPattern().matcher(nickname).matches()) {
-          source.sendMessage(this.incorrectNickname);
-          return;
-        }
+      if (!this.plugin.getNicknameValidationPattern().matcher(nickname).matches()) {
+        source.sendMessage(this.incorrectNickname);
+        return;
+      }
 
-        String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
-        if (this.playerDao.idExists(lowercaseNickname)) {
+      Component notSuccessful = this.notSuccessful.render(nickname);
+      String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+      this.playerRepository.exists(lowercaseNickname).thenComposeAsync(exists -> {
+        if (exists) {
           source.sendMessage(this.takenNickname);
-          return;
+          return CompletableFuture.completedFuture(null);
         }
 
         RegisteredPlayer player = new RegisteredPlayer(nickname, "", "").setPassword(password);
-        this.playerDao.create(player);
-
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, nickname)));
-      } catch (SQLException e) {
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.notSuccessful, nickname)));
-        throw new SQLRuntimeException(e);
-      }
+        return this.playerRepository.create(player)
+            .thenRun(() -> source.sendMessage(this.successful.render(nickname)));
+      }, this.plugin.getHashingExecutor()).exceptionally(handleError(source, notSuccessful));
     } else {
       source.sendMessage(this.usage);
     }
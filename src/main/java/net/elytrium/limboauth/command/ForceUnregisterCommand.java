@@ -17,12 +17,9 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.ProxyServer;
-import java.sql.SQLException;
-import java.text.MessageFormat;
 import java.util.List;
 import java.util.Locale;
 import net.elytrium.commons.kyori.serialization.Serializer;
@@ -30,30 +27,30 @@ import net.elytrium.commons.velocity.commands.SuggestUtils;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.event.AuthUnregisterEvent;
-import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
+import net.elytrium.limboauth.text.ComponentTemplate;
 import net.kyori.adventure.text.Component;
 
 public class ForceUnregisterCommand extends RatelimitedCommand {
 
   private final LimboAuth plugin;
   private final ProxyServer server;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final Component kick;
-  private final String successful;
-  private final String notSuccessful;
+  private final ComponentTemplate successful;
+  private final ComponentTemplate notSuccessful;
   private final Component usage;
 
-  public ForceUnregisterCommand(LimboAuth plugin, ProxyServer server, Dao<RegisteredPlayer, String> playerDao) {
+  public ForceUnregisterCommand(LimboAuth plugin, ProxyServer server, PlayerRepository playerRepository) {
     this.plugin = plugin;
     this.server = server;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.kick = serializer.deserialize(Settings.IMP.MAIN.STRINGS.FORCE_UNREGISTER_KICK);
-    this.successful = Settings.IMP.MAIN.STRINGS.FORCE_UNREGISTER_SUCCESSFUL;
-    this.notSuccessful = Settings.IMP.MAIN.STRINGS.FORCE_UNREGISTER_NOT_SUCCESSFUL;
+    this.successful = ComponentTemplate.compile(serializer, Settings.IMP.MAIN.STRINGS.FORCE_UNREGISTER_SUCCESSFUL);
+    this.notSuccessful = ComponentTemplate.compile(serializer, Settings.IMP.MAIN.STRINGS.FORCE_UNREGISTER_NOT_SUCCESSFUL);
     this.usage = serializer.deserialize(Settings.IMP.MAIN.STRINGS.FORCE_UNREGISTER_USAGE);
   }
 
@@ -68,17 +65,12 @@ public class ForceUnregisterCommand extends RatelimitedCommand {
       String playerNick = args[0];
       String usernameLowercased = playerNick.toLowerCase(Locale.ROOT);
 
-      Serializer serializer = LimboAuth.getSerializer();
-      try {
-        this.plugin.getServer().getEventManager().fireAndForget(new AuthUnregisterEvent(playerNick));
-        this.playerDao.deleteById(usernameLowercased);
+      this.plugin.getServer().getEventManager().fireAndForget(new AuthUnregisterEvent(playerNick));
+      this.playerRepository.delete(usernameLowercased).thenRun(() -> {
         this.plugin.removePlayerFromCacheLowercased(usernameLowercased);
         this.server.getPlayer(playerNick).ifPresent(player -> player.disconnect(this.kick));
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, playerNick)));
-      } catch (SQLException e) {
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.notSuccessful, playerNick)));
-        throw new SQLRuntimeException(e);
-      }
+        source.sendMessage(this.successful.render(playerNick));
+      }).exceptionally(handleError(source, this.notSuccessful.render(playerNick)));
     } else {
       source.sendMessage(this.usage);
     }
@@ -20,12 +20,16 @@ package net.elytrium.limboauth.command;
 import com.google.common.collect.ImmutableList;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
+import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.stream.Collectors;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.concurrent.CircuitBreaker;
+import net.elytrium.limboauth.storage.MonitoredConnectionSource;
+import net.elytrium.limboauth.storage.ReplicaRoutingPlayerRepository;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
@@ -115,6 +119,52 @@ public class LimboAuthCommand extends RatelimitedCommand {
         (LimboAuthCommand parent, CommandSource source, String[] args) -> {
           parent.plugin.reload();
           source.sendMessage(LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.RELOAD));
+        }),
+    STATS("Show caches, login, database pool and isPremium API statistics.", Settings.IMP.MAIN.COMMAND_PERMISSION_STATE.STATS,
+        (LimboAuthCommand parent, CommandSource source, String[] args) -> {
+          source.sendMessage(Component.text("Caches:", NamedTextColor.WHITE));
+          parent.plugin.getCaches().forEach((name, cache) -> source.sendMessage(Component.textOfChildren(
+              Component.text("  " + name + ": ", NamedTextColor.GREEN),
+              Component.text(MessageFormat.format("{0}/{1} entries, {2} hits, {3} misses, {4} expired, {5} evicted",
+                  cache.size(), cache.getMaxSize(), cache.getHits(), cache.getMisses(), cache.getExpirations(), cache.getEvictions()),
+                  NamedTextColor.YELLOW)
+          )));
+
+          source.sendMessage(Component.text("Login stages (time since the pre-login):", NamedTextColor.WHITE));
+          parent.plugin.getLoginStageTimes().forEach((stage, times) -> source.sendMessage(Component.textOfChildren(
+              Component.text("  " + stage.name().toLowerCase(Locale.ROOT) + ": ", NamedTextColor.GREEN),
+              Component.text(MessageFormat.format("{0} ms median, {1} ms p95", times.getPercentile(50, 1, 0), times.getPercentile(95, 1, 0)),
+                  NamedTextColor.YELLOW)
+          )));
+          MonitoredConnectionSource pool = parent.plugin.getConnectionPool();
+          source.sendMessage(Component.text("Database pool:", NamedTextColor.WHITE));
+          source.sendMessage(Component.text(MessageFormat.format(
+              "  {0}/{1} connections in use, {2} peak, {3} idle, {4} ms median wait, {5} ms p95 wait, {6} timeouts, {7} failed pings, {8} leaks",
+              pool.getActiveCount(), pool.getMaxSize(), pool.getPeakActiveCount(), pool.getCurrentConnectionsFree(),
+              pool.getWaitTimes().getPercentile(50, 1, 0), pool.getWaitTimes().getPercentile(95, 1, 0),
+              pool.getTimeouts(), pool.getFailedValidations(), pool.getLeaked()), NamedTextColor.YELLOW));
+          ReplicaRoutingPlayerRepository replicaRepository = parent.plugin.getReplicaRepository();
+          if (replicaRepository != null) {
+            source.sendMessage(Component.text(MessageFormat.format("Database replicas ({0} reads sent to the primary):",
+                replicaRepository.getPrimaryReads()), NamedTextColor.WHITE));
+            replicaRepository.getReplicas().forEach(replica -> source.sendMessage(Component.textOfChildren(
+                Component.text("  " + replica.getName() + ": ", NamedTextColor.GREEN),
+                Component.text(MessageFormat.format("{0}, {1} ms lag, {2} reads",
+                    replica.isAvailable() ? "available" : "unavailable", replica.getLag(), replica.getReads()), NamedTextColor.YELLOW)
+            )));
+          }
+
+          source.sendMessage(Component.text("isPremium APIs:", NamedTextColor.WHITE));
+          parent.plugin.getPremiumApiClient().getBackends().forEach(backend -> {
+            CircuitBreaker circuitBreaker = backend.getCircuitBreaker();
+            source.sendMessage(Component.textOfChildren(
+                Component.text("  " + backend.getUrl() + ": ", NamedTextColor.GREEN),
+                Component.text(circuitBreaker == null ? "circuit breaker is disabled"
+                    : MessageFormat.format("{0}, {1}% failed, {2}% slow, {3} skipped lookups",
+                        circuitBreaker.getState(), circuitBreaker.getFailureRate(), circuitBreaker.getSlowCallRate(), circuitBreaker.getRejected()),
+                    NamedTextColor.YELLOW)
+            ));
+          });
         });
 
     private final String command;
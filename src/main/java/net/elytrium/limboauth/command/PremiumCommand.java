@@ -17,24 +17,22 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
-import java.sql.SQLException;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
-import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
 import net.kyori.adventure.text.Component;
 
 public class PremiumCommand extends RatelimitedCommand {
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final String confirmKeyword;
   private final Component notRegistered;
@@ -46,9 +44,9 @@ public class PremiumCommand extends RatelimitedCommand {
   private final Component usage;
   private final Component notPlayer;
 
-  public PremiumCommand(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao) {
+  public PremiumCommand(LimboAuth plugin, PlayerRepository playerRepository) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.confirmKeyword = Settings.IMP.MAIN.CONFIRM_KEYWORD;
@@ -68,28 +66,31 @@ public class PremiumCommand extends RatelimitedCommand {
       if (args.length == 2) {
         if (this.confirmKeyword.equalsIgnoreCase(args[1])) {
           String usernameLowercase = ((Player) source).getUsername().toLowerCase(Locale.ROOT);
-          RegisteredPlayer player = AuthSessionHandler.fetchInfoLowercased(this.playerDao, usernameLowercase);
-          if (player == null) {
-            source.sendMessage(this.notRegistered);
-          } else if (player.getHash().isEmpty()) {
-            source.sendMessage(this.alreadyPremium);
-          } else if (AuthSessionHandler.checkPassword(args[0], player, this.playerDao)) {
-            if (this.plugin.isPremiumExternal(usernameLowercase).getState() == LimboAuth.PremiumState.PREMIUM_USERNAME) {
-              try {
+          this.playerRepository.findByNickname(usernameLowercase).thenComposeAsync(player -> {
+            if (player == null) {
+              source.sendMessage(this.notRegistered);
+            } else if (player.getHash().isEmpty()) {
+              source.sendMessage(this.alreadyPremium);
+            } else if (AuthSessionHandler.checkPassword(args[0], player, this.playerRepository)) {
+              // The hashing thread isn't blocked while the API answers
+              return this.plugin.isPremiumExternalAsync(usernameLowercase).thenCompose(response -> {
+                if (response.getState() != LimboAuth.PremiumState.PREMIUM_USERNAME) {
+                  source.sendMessage(this.notPremium);
+                  return CompletableFuture.completedFuture(null);
+                }
+
                 player.setHash("");
-                this.playerDao.update(player);
-                this.plugin.removePlayerFromCacheLowercased(usernameLowercase);
-                ((Player) source).disconnect(this.successful);
-              } catch (SQLException e) {
-                source.sendMessage(this.errorOccurred);
-                throw new SQLRuntimeException(e);
-              }
+                return this.playerRepository.update(player).thenRun(() -> {
+                  this.plugin.removePlayerFromCacheLowercased(usernameLowercase);
+                  ((Player) source).disconnect(this.successful);
+                });
+              });
             } else {
-              source.sendMessage(this.notPremium);
+              source.sendMessage(this.wrongPassword);
             }
-          } else {
-            source.sendMessage(this.wrongPassword);
-          }
+
+            return CompletableFuture.completedFuture(null);
+          }, this.plugin.getHashingExecutor()).exceptionally(handleError(source, this.errorOccurred));
 
           return;
         }
@@ -20,6 +20,8 @@ package net.elytrium.limboauth.command;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.kyori.adventure.text.Component;
@@ -46,4 +48,15 @@ public abstract class RatelimitedCommand implements SimpleCommand {
   }
 
   protected abstract void execute(CommandSource source, String[] args);
+
+  /**
+   * Sends the error message to the source and logs the exception, intended to be used with {@link CompletableFuture#exceptionally}.
+   */
+  protected static <T> Function<Throwable, T> handleError(CommandSource source, Component message) {
+    return throwable -> {
+      source.sendMessage(message);
+      LimboAuth.getLogger().error("Unable to execute the command.", throwable);
+      return null;
+    };
+  }
 }
@@ -17,8 +17,6 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.UpdateBuilder;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
@@ -28,15 +26,14 @@ import dev.samstevens.totp.secret.DefaultSecretGenerator;
 import dev.samstevens.totp.secret.SecretGenerator;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.sql.SQLException;
-import java.text.MessageFormat;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
-import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
+import net.elytrium.limboauth.text.ComponentTemplate;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.event.ClickEvent;
 
@@ -44,7 +41,8 @@ public class TotpCommand extends RatelimitedCommand {
 
   private final SecretGenerator secretGenerator = new DefaultSecretGenerator();
   private final RecoveryCodeGenerator codesGenerator = new RecoveryCodeGenerator();
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final LimboAuth plugin;
+  private final PlayerRepository playerRepository;
 
   private final Component notPlayer;
   private final Component usage;
@@ -57,15 +55,16 @@ public class TotpCommand extends RatelimitedCommand {
   private final String issuer;
   private final String qrGeneratorUrl;
   private final Component qr;
-  private final String token;
+  private final ComponentTemplate token;
   private final int recoveryCodesAmount;
-  private final String recovery;
+  private final ComponentTemplate recovery;
   private final Component disabled;
   private final Component wrong;
   private final Component crackedCommand;
 
-  public TotpCommand(Dao<RegisteredPlayer, String> playerDao) {
-    this.playerDao = playerDao;
+  public TotpCommand(LimboAuth plugin, PlayerRepository playerRepository) {
+    this.plugin = plugin;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.notPlayer = serializer.deserialize(Settings.IMP.MAIN.STRINGS.NOT_PLAYER);
@@ -79,9 +78,9 @@ public class TotpCommand extends RatelimitedCommand {
     this.issuer = Settings.IMP.MAIN.TOTP_ISSUER;
     this.qrGeneratorUrl = Settings.IMP.MAIN.QR_GENERATOR_URL;
     this.qr = serializer.deserialize(Settings.IMP.MAIN.STRINGS.TOTP_QR);
-    this.token = Settings.IMP.MAIN.STRINGS.TOTP_TOKEN;
+    this.token = ComponentTemplate.compile(serializer, Settings.IMP.MAIN.STRINGS.TOTP_TOKEN);
     this.recoveryCodesAmount = Settings.IMP.MAIN.TOTP_RECOVERY_CODES_AMOUNT;
-    this.recovery = Settings.IMP.MAIN.STRINGS.TOTP_RECOVERY;
+    this.recovery = ComponentTemplate.compile(serializer, Settings.IMP.MAIN.STRINGS.TOTP_RECOVERY);
     this.disabled = serializer.deserialize(Settings.IMP.MAIN.STRINGS.TOTP_DISABLED);
     this.wrong = serializer.deserialize(Settings.IMP.MAIN.STRINGS.TOTP_WRONG);
     this.crackedCommand = serializer.deserialize(Settings.IMP.MAIN.STRINGS.CRACKED_COMMAND);
@@ -97,80 +96,52 @@ public class TotpCommand extends RatelimitedCommand {
         String username = ((Player) source).getUsername();
         String usernameLowercase = username.toLowerCase(Locale.ROOT);
 
-        RegisteredPlayer playerInfo;
-        UpdateBuilder<RegisteredPlayer, String> updateBuilder;
         if (args[0].equalsIgnoreCase("enable")) {
           if (this.needPassword ? args.length == 2 : args.length == 1) {
-            playerInfo = AuthSessionHandler.fetchInfoLowercased(this.playerDao, usernameLowercase);
-            if (playerInfo == null) {
-              source.sendMessage(this.notRegistered);
-              return;
-            } else if (playerInfo.getHash().isEmpty()) {
-              source.sendMessage(this.crackedCommand);
-              return;
-            } else if (this.needPassword && !AuthSessionHandler.checkPassword(args[1], playerInfo, this.playerDao)) {
-              source.sendMessage(this.wrongPassword);
-              return;
-            }
-
-            if (!playerInfo.getTotpToken().isEmpty()) {
-              source.sendMessage(this.alreadyEnabled);
-              return;
-            }
-
-            String secret = this.secretGenerator.generate();
-            try {
-              updateBuilder = this.playerDao.updateBuilder();
-              updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, usernameLowercase);
-              updateBuilder.updateColumnValue(RegisteredPlayer.TOTP_TOKEN_FIELD, secret);
-              updateBuilder.update();
-            } catch (SQLException e) {
-              source.sendMessage(this.errorOccurred);
-              throw new SQLRuntimeException(e);
-            }
-            source.sendMessage(this.successful);
-
-            QrData data = new QrData.Builder()
-                .label(username)
-                .secret(secret)
-                .issuer(this.issuer)
-                .build();
-            String qrUrl = this.qrGeneratorUrl.replace("{data}", URLEncoder.encode(data.getUri(), StandardCharsets.UTF_8));
-            source.sendMessage(this.qr.clickEvent(ClickEvent.openUrl(qrUrl)));
-
-            Serializer serializer = LimboAuth.getSerializer();
-            source.sendMessage(serializer.deserialize(MessageFormat.format(this.token, secret))
-                .clickEvent(ClickEvent.copyToClipboard(secret)));
-            String codes = String.join(", ", this.codesGenerator.generateCodes(this.recoveryCodesAmount));
-            source.sendMessage(serializer.deserialize(MessageFormat.format(this.recovery, codes))
-                .clickEvent(ClickEvent.copyToClipboard(codes)));
+            this.playerRepository.findByNickname(usernameLowercase).thenAcceptAsync(playerInfo -> {
+              if (playerInfo == null) {
+                source.sendMessage(this.notRegistered);
+                return;
+              } else if (playerInfo.getHash().isEmpty()) {
+                source.sendMessage(this.crackedCommand);
+                return;
+              } else if (this.needPassword && !AuthSessionHandler.checkPassword(args[1], playerInfo, this.playerRepository)) {
+                source.sendMessage(this.wrongPassword);
+                return;
+              }
+
+              if (!playerInfo.getTotpToken().isEmpty()) {
+                source.sendMessage(this.alreadyEnabled);
+                return;
+              }
+
+              String secret = this.secretGenerator.generate();
+              this.playerRepository.updateTotpToken(usernameLowercase, secret)
+                  .thenRun(() -> {
+                    this.plugin.removePlayerFromCacheLowercased(usernameLowercase);
+                    this.sendSecret(source, username, secret);
+                  })
+                  .exceptionally(handleError(source, this.errorOccurred));
+            }, this.plugin.getHashingExecutor()).exceptionally(handleError(source, this.errorOccurred));
           } else {
             source.sendMessage(this.usage);
           }
         } else if (args[0].equalsIgnoreCase("disable")) {
           if (args.length == 2) {
-            playerInfo = AuthSessionHandler.fetchInfoLowercased(this.playerDao, usernameLowercase);
-
-            if (playerInfo == null) {
-              source.sendMessage(this.notRegistered);
-              return;
-            }
-
-            if (AuthSessionHandler.TOTP_CODE_VERIFIER.isValidCode(playerInfo.getTotpToken(), args[1])) {
-              try {
-                updateBuilder = this.playerDao.updateBuilder();
-                updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, usernameLowercase);
-                updateBuilder.updateColumnValue(RegisteredPlayer.TOTP_TOKEN_FIELD, "");
-                updateBuilder.update();
-
-                source.sendMessage(this.disabled);
-              } catch (SQLException e) {
-                source.sendMessage(this.errorOccurred);
-                throw new SQLRuntimeException(e);
+            this.playerRepository.findByNickname(usernameLowercase).thenCompose(playerInfo -> {
+              if (playerInfo == null) {
+                source.sendMessage(this.notRegistered);
+              } else if (AuthSessionHandler.TOTP_CODE_VERIFIER.isValidCode(playerInfo.getTotpToken(), args[1])) {
+                return this.playerRepository.updateTotpToken(usernameLowercase, "").thenRun(() -> {
+                  this.plugin.removePlayerFromCacheLowercased(usernameLowercase);
+                  source.sendMessage(this.disabled);
+                });
+              } else {
+                source.sendMessage(this.wrong);
               }
-            } else {
-              source.sendMessage(this.wrong);
-            }
+
+              return CompletableFuture.completedFuture(null);
+            }).exceptionally(handleError(source, this.errorOccurred));
           } else {
             source.sendMessage(this.usage);
           }
@@ -183,6 +154,24 @@ public class TotpCommand extends RatelimitedCommand {
     }
   }
 
+  private void sendSecret(CommandSource source, String username, String secret) {
+    source.sendMessage(this.successful);
+
+    QrData data = new QrData.Builder()
+        .label(username)
+        .secret(secret)
+        .issuer(this.issuer)
+        .build();
+    String qrUrl = this.qrGeneratorUrl.replace("{data}", URLEncoder.encode(data.getUri(), StandardCharsets.UTF_8));
+    source.sendMessage(this.qr.clickEvent(ClickEvent.openUrl(qrUrl)));
+
+    source.sendMessage(this.token.render(secret)
+        .clickEvent(ClickEvent.copyToClipboard(secret)));
+    String codes = String.join(", ", this.codesGenerator.generateCodes(this.recoveryCodesAmount));
+    source.sendMessage(this.recovery.render(codes)
+        .clickEvent(ClickEvent.copyToClipboard(codes)));
+  }
+
   @Override
   public boolean hasPermission(SimpleCommand.Invocation invocation) {
     return Settings.IMP.MAIN.COMMAND_PERMISSION_STATE.TOTP
@@ -17,25 +17,22 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
-import java.sql.SQLException;
 import java.util.Locale;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.event.AuthUnregisterEvent;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
-import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
 import net.kyori.adventure.text.Component;
 
 public class UnregisterCommand extends RatelimitedCommand {
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final String confirmKeyword;
   private final Component notPlayer;
@@ -46,9 +43,9 @@ public class UnregisterCommand extends RatelimitedCommand {
   private final Component usage;
   private final Component crackedCommand;
 
-  public UnregisterCommand(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao) {
+  public UnregisterCommand(LimboAuth plugin, PlayerRepository playerRepository) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.confirmKeyword = Settings.IMP.MAIN.CONFIRM_KEYWORD;
@@ -68,24 +65,21 @@ public class UnregisterCommand extends RatelimitedCommand {
         if (this.confirmKeyword.equalsIgnoreCase(args[1])) {
           String username = ((Player) source).getUsername();
           String usernameLowercase = username.toLowerCase(Locale.ROOT);
-          RegisteredPlayer player = AuthSessionHandler.fetchInfoLowercased(this.playerDao, usernameLowercase);
-          if (player == null) {
-            source.sendMessage(this.notRegistered);
-          } else if (player.getHash().isEmpty()) {
-            source.sendMessage(this.crackedCommand);
-          } else if (AuthSessionHandler.checkPassword(args[0], player, this.playerDao)) {
-            try {
+          this.playerRepository.findByNickname(usernameLowercase).thenAcceptAsync(player -> {
+            if (player == null) {
+              source.sendMessage(this.notRegistered);
+            } else if (player.getHash().isEmpty()) {
+              source.sendMessage(this.crackedCommand);
+            } else if (AuthSessionHandler.checkPassword(args[0], player, this.playerRepository)) {
               this.plugin.getServer().getEventManager().fireAndForget(new AuthUnregisterEvent(username));
-              this.playerDao.deleteById(usernameLowercase);
-              this.plugin.removePlayerFromCacheLowercased(usernameLowercase);
-              ((Player) source).disconnect(this.successful);
-            } catch (SQLException e) {
-              source.sendMessage(this.errorOccurred);
-              throw new SQLRuntimeException(e);
+              this.playerRepository.delete(usernameLowercase).thenRun(() -> {
+                this.plugin.removePlayerFromCacheLowercased(usernameLowercase);
+                ((Player) source).disconnect(this.successful);
+              }).exceptionally(handleError(source, this.errorOccurred));
+            } else {
+              source.sendMessage(this.wrongPassword);
             }
-          } else {
-            source.sendMessage(this.wrongPassword);
-          }
+          }, this.plugin.getHashingExecutor()).exceptionally(handleError(source, this.errorOccurred));
 
           return;
         }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.concurrent;
+
+/**
+ * Circuit breaker that stops calling a failing or slow dependency.
+ *
+ * <p>The failure and slow call rates are calculated over the sliding window of the latest calls.
+ * If any of them reaches its threshold, the breaker opens and rejects the calls for the open duration.
+ * Then it lets a few probe calls through (half-open) and closes if all of them succeed, or opens again otherwise.
+ */
+public class CircuitBreaker {
+
+  private final int minCalls;
+  private final int failureRateThreshold;
+  private final long slowCallDuration;
+  private final int slowCallRateThreshold;
+  private final long openDuration;
+  private final int halfOpenProbes;
+
+  private final boolean[] failedCalls;
+  private final boolean[] slowCalls;
+  private int windowIndex;
+  private int calls;
+  private int failures;
+  private int slows;
+
+  private State state = State.CLOSED;
+  private long openedAt;
+  private int probesStarted;
+  private int probesSucceeded;
+  private long rejected;
+
+  /**
+   * @param failureRateThreshold  percentage of the failed calls in the window to open the breaker
+   * @param slowCallDuration      calls that took at least this amount of milliseconds are slow
+   * @param slowCallRateThreshold percentage of the slow calls in the window to open the breaker
+   */
+  public CircuitBreaker(int windowSize, int minCalls, int failureRateThreshold, long slowCallDuration, int slowCallRateThreshold,
+      long openDuration, int halfOpenProbes) {
+    this.failedCalls = new boolean[Math.max(1, windowSize)];
+    this.slowCalls = new boolean[this.failedCalls.length];
+    this.minCalls = Math.max(1, Math.min(minCalls, this.failedCalls.length));
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallDuration = slowCallDuration;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.openDuration = openDuration;
+    this.halfOpenProbes = Math.max(1, halfOpenProbes);
+  }
+
+  /**
+   * @return false if the call should not be made, otherwise its result should be passed to {@link #record(boolean, long)}
+   */
+  public synchronized boolean tryAcquire() {
+    if (this.state == State.OPEN) {
+      if (System.currentTimeMillis() - this.openedAt < this.openDuration) {
+        ++this.rejected;
+        return false;
+      }
+
+      this.state = State.HALF_OPEN;
+      this.probesStarted = 0;
+      this.probesSucceeded = 0;
+    }
+
+    if (this.state == State.HALF_OPEN) {
+      if (this.probesStarted >= this.halfOpenProbes) {
+        ++this.rejected;
+        return false;
+      }
+
+      ++this.probesStarted;
+    }
+
+    return true;
+  }
+
+  public synchronized void record(boolean success, long durationMillis) {
+    boolean slow = durationMillis >= this.slowCallDuration;
+    switch (this.state) {
+      case HALF_OPEN: {
+        if (!success || slow) {
+          this.open();
+        } else if (++this.probesSucceeded >= this.halfOpenProbes) {
+          this.close();
+        }
+
+        break;
+      }
+      case CLOSED: {
+        if (this.calls == this.failedCalls.length) {
+          this.failures -= this.failedCalls[this.windowIndex] ? 1 : 0;
+          this.slows -= this.slowCalls[this.windowIndex] ? 1 : 0;
+        } else {
+          ++this.calls;
+        }
+
+        this.failedCalls[this.windowIndex] = !success;
+        this.slowCalls[this.windowIndex] = slow;
+        this.failures += success ? 0 : 1;
+        this.slows += slow ? 1 : 0;
+        this.windowIndex = (this.windowIndex + 1) % this.failedCalls.length;
+
+        if (this.calls >= this.minCalls
+            && (this.failures * 100L >= (long) this.failureRateThreshold * this.calls
+            || this.slows * 100L >= (long) this.slowCallRateThreshold * this.calls)) {
+          this.open();
+        }
+
+        break;
+      }
+      default: {
+        // Calls that were started before the breaker has opened
+        break;
+      }
+    }
+  }
+
+  private void open() {
+    this.state = State.OPEN;
+    this.openedAt = System.currentTimeMillis();
+  }
+
+  private void close() {
+    this.state = State.CLOSED;
+    this.windowIndex = 0;
+    this.calls = 0;
+    this.failures = 0;
+    this.slows = 0;
+  }
+
+  public synchronized State getState() {
+    return this.state;
+  }
+
+  /**
+   * @return percentage of the failed calls in the current window
+   */
+  public synchronized int getFailureRate() {
+    return this.calls == 0 ? 0 : this.failures * 100 / this.calls;
+  }
+
+  /**
+   * @return percentage of the slow calls in the current window
+   */
+  public synchronized int getSlowCallRate() {
+    return this.calls == 0 ? 0 : this.slows * 100 / this.calls;
+  }
+
+  public synchronized long getRejected() {
+    return this.rejected;
+  }
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+}
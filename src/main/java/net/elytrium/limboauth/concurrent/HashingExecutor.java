@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded thread pool for the password hashing, BCrypt is too slow to be computed on the network threads.
+ */
+public class HashingExecutor implements Executor {
+
+  private final ThreadPoolExecutor executor;
+
+  public HashingExecutor(int threads, int maxQueueSize) {
+    int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger threadCounter = new AtomicInteger();
+    ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(Math.max(1, maxQueueSize));
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth Hashing #" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }, new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Computes the task on the hashing pool, the callback is invoked on the callbackExecutor.
+   *
+   * @return false if the queue is full and the task was rejected, the callback won't be invoked in this case
+   */
+  public <T> boolean submit(Supplier<T> task, Executor callbackExecutor, BiConsumer<T, Throwable> callback) {
+    CompletableFuture<T> future;
+    try {
+      future = CompletableFuture.supplyAsync(task, this.executor);
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+
+    future.whenCompleteAsync(callback, callbackExecutor);
+    return true;
+  }
+
+  /**
+   * Executes the task on the hashing pool.
+   *
+   * @throws RejectedExecutionException if the queue is full
+   */
+  @Override
+  public void execute(Runnable task) {
+    this.executor.execute(task);
+  }
+
+  /**
+   * Stops accepting new tasks, already queued tasks will be completed.
+   */
+  public void shutdown() {
+    this.executor.shutdown();
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.concurrent;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of the latest call durations to derive the percentiles from.
+ */
+public class LatencyWindow {
+
+  private final long[] samples;
+  private int index;
+  private int size;
+
+  public LatencyWindow(int windowSize) {
+    this.samples = new long[Math.max(1, windowSize)];
+  }
+
+  public synchronized void record(long durationMillis) {
+    this.samples[this.index] = durationMillis;
+    this.index = (this.index + 1) % this.samples.length;
+    if (this.size < this.samples.length) {
+      ++this.size;
+    }
+  }
+
+  /**
+   * @return the percentile of the recorded durations, or defaultValue if there are less than minSamples of them
+   */
+  public long getPercentile(int percentile, int minSamples, long defaultValue) {
+    long[] sorted;
+    synchronized (this) {
+      if (this.size == 0 || this.size < minSamples) {
+        return defaultValue;
+      }
+
+      sorted = Arrays.copyOf(this.samples, this.size);
+    }
+
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(sorted.length * Math.min(100, Math.max(0, percentile)) / 100.0);
+    return sorted[Math.max(0, rank - 1)];
+  }
+}
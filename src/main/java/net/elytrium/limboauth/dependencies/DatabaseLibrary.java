@@ -17,7 +17,6 @@
 
 package net.elytrium.limboauth.dependencies;
 
-import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
 import com.j256.ormlite.jdbc.db.DatabaseTypeUtils;
 import com.j256.ormlite.support.ConnectionSource;
 import java.io.IOException;
@@ -32,8 +31,11 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.storage.MonitoredConnectionSource;
 
 public enum DatabaseLibrary {
   H2_LEGACY_V1(
@@ -126,6 +128,11 @@ public enum DatabaseLibrary {
 
   public ConnectionSource connectToORM(Path dir, String hostname, String database, String user, String password)
       throws ReflectiveOperationException, IOException, SQLException, URISyntaxException {
+    return this.connectToORM(dir, hostname, database, user, password, new Settings.DATABASE.POOL());
+  }
+
+  public MonitoredConnectionSource connectToORM(Path dir, String hostname, String database, String user, String password, Settings.DATABASE.POOL pool)
+      throws ReflectiveOperationException, IOException, SQLException, URISyntaxException {
     if (this.driver.getOriginal() == null) {
       IsolatedClassLoader classLoader = new IsolatedClassLoader(new URL[] {this.baseLibrary.getClassLoaderURL()});
       Class<?> driverClass = classLoader.loadClass(
@@ -144,8 +151,23 @@ public enum DatabaseLibrary {
 
     String jdbc = this.stringGetter.getJdbcString(dir, hostname, database);
     boolean h2 = this.baseLibrary == BaseLibrary.H2_V1 || this.baseLibrary == BaseLibrary.H2_V2;
-    return new JdbcPooledConnectionSource(this.driver.getInitializer() + jdbc,
-        h2 ? null : user, h2 ? null : password, DatabaseTypeUtils.createDatabaseType(jdbc));
+    return new MonitoredConnectionSource(this.driver.getInitializer() + jdbc, h2 ? null : user, h2 ? null : password,
+        DatabaseTypeUtils.createDatabaseType(jdbc), pool.MAX_SIZE, pool.MIN_IDLE, pool.MAX_IDLE, pool.MAX_LIFETIME,
+        pool.VALIDATION_INTERVAL, pool.ACQUIRE_TIMEOUT, pool.LEAK_DETECTION_THRESHOLD);
+  }
+
+  /**
+   * @return the queries that return the replica lag in seconds, each one is the fallback of the previous one if the server doesn't
+   *     support it, or an empty list if the replicas are not supported
+   */
+  public List<String> getReplicaLagQueries() {
+    return switch (this) {
+      // SHOW SLAVE STATUS is removed in MySQL 8.4, SHOW REPLICA STATUS is only supported since MySQL 8.0.22 and MariaDB 10.5.1
+      case MYSQL, MARIADB -> List.of("SHOW REPLICA STATUS", "SHOW SLAVE STATUS");
+      case POSTGRESQL -> List.of("SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+          + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END");
+      case H2_LEGACY_V1, H2, SQLITE -> List.of();
+    };
   }
 
   private static Connection fromDriver(Class<?> connectionClass, String jdbc, String user, String password, boolean register)
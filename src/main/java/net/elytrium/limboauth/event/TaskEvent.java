@@ -18,14 +18,12 @@
 package net.elytrium.limboauth.event;
 
 import java.util.function.Consumer;
-import net.elytrium.limboauth.LimboAuth;
-import net.elytrium.limboauth.Settings;
 import net.kyori.adventure.text.Component;
 import org.jetbrains.annotations.NotNull;
 
 public abstract class TaskEvent {
 
-  private static Component DEFAULT_REASON;
+  private static volatile Component DEFAULT_REASON;
 
   private final Consumer<TaskEvent> onComplete;
 
@@ -76,8 +74,8 @@ public abstract class TaskEvent {
     return this.reason;
   }
 
-  public static void reload() {
-    DEFAULT_REASON = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.EVENT_CANCELLED);
+  public static void reload(Component defaultReason) {
+    DEFAULT_REASON = defaultReason;
   }
 
   public enum Result {
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.elytrium.limboauth.handler;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.elytrium.limboauth.LimboAuth;
+
+/**
+ * One timer for the auth time of all authenticating players.
+ *
+ * <p>The sessions are ordered by the deadline, so the expired ones are taken from the head and the rest only get their boss bars updated.
+ * The sweep only reads the entries, the handler callbacks are run on the executor of the player.
+ */
+public class AuthCountdown {
+
+  private static final long TICK_INTERVAL = 1000;
+
+  private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>(
+      Comparator.comparingLong((Entry entry) -> entry.deadline).thenComparingLong(entry -> entry.id)
+  );
+  private final AtomicLong idCounter = new AtomicLong();
+  private final ScheduledThreadPoolExecutor executor;
+
+  public AuthCountdown() {
+    this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth Countdown");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.scheduleAtFixedRate(this::tick, TICK_INTERVAL, TICK_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Starts the countdown of the session, {@link AuthSessionHandler#onTimesUp()} is invoked once the deadline passes.
+   *
+   * @param executor the executor of the player, the handler callbacks are run there
+   * @param bossBar whether {@link AuthSessionHandler#updateBossBar(long)} should be invoked every tick
+   */
+  Entry add(AuthSessionHandler handler, Executor executor, long deadline, boolean bossBar) {
+    Entry entry = new Entry(handler, executor, deadline, bossBar, this.idCounter.incrementAndGet());
+    this.entries.add(entry);
+    return entry;
+  }
+
+  void remove(Entry entry) {
+    this.entries.remove(entry);
+  }
+
+  public int size() {
+    return this.entries.size();
+  }
+
+  private void tick() {
+    long now = System.currentTimeMillis();
+    for (Entry entry : this.entries) {
+      if (entry.deadline <= now) {
+        // The session could be removed concurrently by the disconnect
+        if (this.entries.remove(entry)) {
+          this.dispatch(entry, entry.handler::onTimesUp, "Unable to kick the player after the auth time.");
+        }
+      } else if (entry.bossBar) {
+        this.dispatch(entry, () -> entry.handler.updateBossBar(now), "Unable to update the auth boss bar.");
+      }
+    }
+  }
+
+  private void dispatch(Entry entry, Runnable task, String errorMessage) {
+    try {
+      entry.executor.execute(() -> {
+        try {
+          task.run();
+        } catch (Throwable e) {
+          LimboAuth.getLogger().error(errorMessage, e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // The player's event loop is shut down, so is the connection
+    }
+  }
+
+  public void shutdown() {
+    this.executor.shutdownNow();
+    this.entries.clear();
+  }
+
+  static final class Entry {
+
+    private final AuthSessionHandler handler;
+    private final Executor executor;
+    private final long deadline;
+    private final boolean bossBar;
+    private final long id;
+
+    private Entry(AuthSessionHandler handler, Executor executor, long deadline, boolean bossBar, long id) {
+      this.handler = handler;
+      this.executor = executor;
+      this.deadline = deadline;
+      this.bossBar = bossBar;
+      this.id = id;
+    }
+  }
+}
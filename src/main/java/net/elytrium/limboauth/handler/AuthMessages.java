@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.elytrium.limboauth.handler;
+
+import java.text.MessageFormat;
+import net.elytrium.commons.kyori.serialization.Serializer;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.text.ComponentTemplate;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.title.Title;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Deserialized messages of the auth session in one language, the components are only read by the session handler.
+ */
+public final class AuthMessages {
+
+  final Component ratelimited;
+  final ComponentTemplate bossbarName;
+  final Component ipLimitKick;
+  final Component databaseErrorKick;
+  final ComponentTemplate wrongNicknameCaseKick;
+  final Component timesUp;
+  final Component registerSuccessful;
+  @Nullable
+  final Title registerSuccessfulTitle;
+  final Component[] loginWrongPassword;
+  final Component loginWrongPasswordKick;
+  final Component totp;
+  @Nullable
+  final Title totpTitle;
+  final Component register;
+  @Nullable
+  final Title registerTitle;
+  final Component[] login;
+  @Nullable
+  final Title loginTitle;
+  final Component registerDifferentPasswords;
+  final Component registerPasswordTooLong;
+  final Component registerPasswordTooShort;
+  final Component registerPasswordUnsafe;
+  final Component loginSuccessful;
+  final Component sessionExpired;
+  @Nullable
+  final Title loginSuccessfulTitle;
+
+  public AuthMessages(Serializer serializer, Settings.MAIN main, Settings.MAIN.STRINGS strings) {
+    this.ratelimited = serializer.deserialize(strings.RATELIMITED);
+    // Every player on the same second left shares the rendered name
+    this.bossbarName = ComponentTemplate.compile(serializer, strings.BOSSBAR, Math.max(0, main.AUTH_TIME / 1000) + 1);
+    this.ipLimitKick = serializer.deserialize(strings.IP_LIMIT_KICK);
+    this.databaseErrorKick = serializer.deserialize(strings.DATABASE_ERROR_KICK);
+    this.wrongNicknameCaseKick = ComponentTemplate.compile(serializer, strings.WRONG_NICKNAME_CASE_KICK);
+    this.timesUp = serializer.deserialize(strings.TIMES_UP);
+    this.registerSuccessful = serializer.deserialize(strings.REGISTER_SUCCESSFUL);
+    if (strings.REGISTER_SUCCESSFUL_TITLE.isEmpty() && strings.REGISTER_SUCCESSFUL_SUBTITLE.isEmpty()) {
+      this.registerSuccessfulTitle = null;
+    } else {
+      this.registerSuccessfulTitle = Title.title(
+          serializer.deserialize(strings.REGISTER_SUCCESSFUL_TITLE),
+          serializer.deserialize(strings.REGISTER_SUCCESSFUL_SUBTITLE),
+          main.CRACKED_TITLE_SETTINGS.toTimes()
+      );
+    }
+    int loginAttempts = main.LOGIN_ATTEMPTS;
+    this.loginWrongPassword = new Component[loginAttempts];
+    for (int i = 0; i < loginAttempts; ++i) {
+      this.loginWrongPassword[i] = serializer.deserialize(MessageFormat.format(strings.LOGIN_WRONG_PASSWORD, i + 1));
+    }
+    this.loginWrongPasswordKick = serializer.deserialize(strings.LOGIN_WRONG_PASSWORD_KICK);
+    this.totp = serializer.deserialize(strings.TOTP);
+    if (strings.TOTP_TITLE.isEmpty() && strings.TOTP_SUBTITLE.isEmpty()) {
+      this.totpTitle = null;
+    } else {
+      this.totpTitle = Title.title(
+          serializer.deserialize(strings.TOTP_TITLE),
+          serializer.deserialize(strings.TOTP_SUBTITLE),
+          main.CRACKED_TITLE_SETTINGS.toTimes()
+      );
+    }
+    this.register = serializer.deserialize(strings.REGISTER);
+    if (strings.REGISTER_TITLE.isEmpty() && strings.REGISTER_SUBTITLE.isEmpty()) {
+      this.registerTitle = null;
+    } else {
+      this.registerTitle = Title.title(
+          serializer.deserialize(strings.REGISTER_TITLE),
+          serializer.deserialize(strings.REGISTER_SUBTITLE),
+          main.CRACKED_TITLE_SETTINGS.toTimes()
+      );
+    }
+    this.login = new Component[loginAttempts];
+    for (int i = 0; i < loginAttempts; ++i) {
+      this.login[i] = serializer.deserialize(MessageFormat.format(strings.LOGIN, i + 1));
+    }
+    if (strings.LOGIN_TITLE.isEmpty() && strings.LOGIN_SUBTITLE.isEmpty()) {
+      this.loginTitle = null;
+    } else {
+      this.loginTitle = Title.title(
+          serializer.deserialize(MessageFormat.format(strings.LOGIN_TITLE, loginAttempts)),
+          serializer.deserialize(MessageFormat.format(strings.LOGIN_SUBTITLE, loginAttempts)),
+          main.CRACKED_TITLE_SETTINGS.toTimes()
+      );
+    }
+    this.registerDifferentPasswords = serializer.deserialize(strings.REGISTER_DIFFERENT_PASSWORDS);
+    this.registerPasswordTooLong = serializer.deserialize(strings.REGISTER_PASSWORD_TOO_LONG);
+    this.registerPasswordTooShort = serializer.deserialize(strings.REGISTER_PASSWORD_TOO_SHORT);
+    this.registerPasswordUnsafe = serializer.deserialize(strings.REGISTER_PASSWORD_UNSAFE);
+    this.loginSuccessful = serializer.deserialize(strings.LOGIN_SUCCESSFUL);
+    this.sessionExpired = serializer.deserialize(strings.MOD_SESSION_EXPIRED);
+    if (strings.LOGIN_SUCCESSFUL_TITLE.isEmpty() && strings.LOGIN_SUCCESSFUL_SUBTITLE.isEmpty()) {
+      this.loginSuccessfulTitle = null;
+    } else {
+      this.loginSuccessfulTitle = Title.title(
+          serializer.deserialize(strings.LOGIN_SUCCESSFUL_TITLE),
+          serializer.deserialize(strings.LOGIN_SUCCESSFUL_SUBTITLE),
+          main.CRACKED_TITLE_SETTINGS.toTimes()
+      );
+    }
+  }
+}
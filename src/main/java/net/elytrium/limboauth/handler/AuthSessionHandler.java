@@ -18,7 +18,6 @@
 package net.elytrium.limboauth.handler;
 
 import at.favre.lib.crypto.bcrypt.BCrypt;
-import com.google.common.primitives.Longs;
 import com.j256.ormlite.dao.Dao;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.proxy.protocol.packet.PluginMessagePacket;
@@ -27,20 +26,17 @@ import dev.samstevens.totp.code.DefaultCodeGenerator;
 import dev.samstevens.totp.code.DefaultCodeVerifier;
 import dev.samstevens.totp.time.SystemTimeProvider;
 import io.netty.buffer.ByteBuf;
-import io.whitfin.siphash.SipHasher;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
-import java.text.MessageFormat;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import net.elytrium.commons.kyori.serialization.Serializer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import net.elytrium.limboapi.api.Limbo;
 import net.elytrium.limboapi.api.LimboSessionHandler;
 import net.elytrium.limboapi.api.player.LimboPlayer;
+import net.elytrium.limboauth.AuthConfigSnapshot;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.event.PostAuthorizationEvent;
@@ -49,9 +45,9 @@ import net.elytrium.limboauth.event.TaskEvent;
 import net.elytrium.limboauth.migration.MigrationHash;
 import net.elytrium.limboauth.model.RegisteredPlayer;
 import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
 import net.kyori.adventure.bossbar.BossBar;
 import net.kyori.adventure.text.Component;
-import net.kyori.adventure.title.Title;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class AuthSessionHandler implements LimboSessionHandler {
@@ -60,134 +56,98 @@ public class AuthSessionHandler implements LimboSessionHandler {
   private static final BCrypt.Verifyer HASH_VERIFIER = BCrypt.verifyer();
   private static final BCrypt.Hasher HASHER = BCrypt.withDefaults();
 
-  private static Component ratelimited;
-  private static BossBar.Color bossbarColor;
-  private static BossBar.Overlay bossbarOverlay;
-  private static Component ipLimitKick;
-  private static Component databaseErrorKick;
-  private static String wrongNicknameCaseKick;
-  private static Component timesUp;
-  private static Component registerSuccessful;
-  @Nullable
-  private static Title registerSuccessfulTitle;
-  private static Component[] loginWrongPassword;
-  private static Component loginWrongPasswordKick;
-  private static Component totp;
-  @Nullable
-  private static Title totpTitle;
-  private static Component register;
-  @Nullable
-  private static Title registerTitle;
-  private static Component[] login;
-  @Nullable
-  private static Title loginTitle;
-  private static Component registerDifferentPasswords;
-  private static Component registerPasswordTooLong;
-  private static Component registerPasswordTooShort;
-  private static Component registerPasswordUnsafe;
-  private static Component loginSuccessful;
-  private static Component sessionExpired;
-  @Nullable
-  private static Title loginSuccessfulTitle;
-  @Nullable
-  private static MigrationHash migrationHash;
-
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
   private final Player proxyPlayer;
   private final LimboAuth plugin;
+  /**
+   * The config is captured once, so the session isn't affected by the reloads.
+   */
+  private final AuthConfigSnapshot config;
+  private final Settings.MAIN settings;
 
   private final long joinTime = System.currentTimeMillis();
-  private final BossBar bossBar = BossBar.bossBar(
-      Component.empty(),
-      1.0F,
-      bossbarColor,
-      bossbarOverlay
-  );
-  private final boolean loginOnlyByMod = Settings.IMP.MAIN.MOD.ENABLED && Settings.IMP.MAIN.MOD.LOGIN_ONLY_BY_MOD;
+  private final BossBar bossBar;
+  private final boolean loginOnlyByMod;
 
   @Nullable
   private RegisteredPlayer playerInfo;
 
-  private ScheduledFuture<?> authMainTask;
+  private volatile AuthCountdown.Entry countdownEntry;
 
   private LimboPlayer player;
-  private int attempts = Settings.IMP.MAIN.LOGIN_ATTEMPTS;
+  private int attempts;
   private boolean totpState;
   private String tempPassword;
   private boolean tokenReceived;
+  private boolean processing;
+  private boolean authStarted;
+  private volatile boolean disconnected;
 
-  public AuthSessionHandler(Dao<RegisteredPlayer, String> playerDao, Player proxyPlayer, LimboAuth plugin, @Nullable RegisteredPlayer playerInfo) {
-    this.playerDao = playerDao;
+  public AuthSessionHandler(PlayerRepository playerRepository, Player proxyPlayer, LimboAuth plugin, @Nullable RegisteredPlayer playerInfo) {
+    this.playerRepository = playerRepository;
     this.proxyPlayer = proxyPlayer;
     this.plugin = plugin;
     this.playerInfo = playerInfo;
+    this.config = plugin.getConfig();
+    this.settings = this.config.getSettings().MAIN;
+    this.bossBar = BossBar.bossBar(Component.empty(), 1.0F, this.settings.BOSSBAR_COLOR, this.settings.BOSSBAR_OVERLAY);
+    this.loginOnlyByMod = this.settings.MOD.ENABLED && this.settings.MOD.LOGIN_ONLY_BY_MOD;
+    this.attempts = this.settings.LOGIN_ATTEMPTS;
   }
 
   @Override
   public void onSpawn(Limbo server, LimboPlayer player) {
     this.player = player;
 
-    if (Settings.IMP.MAIN.DISABLE_FALLING) {
+    if (this.settings.DISABLE_FALLING) {
       this.player.disableFalling();
     } else {
       this.player.enableFalling();
     }
 
-    Serializer serializer = LimboAuth.getSerializer();
+    // The auth time runs from the join, even if the registrations check below hangs
+    boolean bossBarEnabled = !this.loginOnlyByMod && this.settings.ENABLE_BOSSBAR;
+    this.countdownEntry = this.plugin.getAuthCountdown().add(this, player.getScheduledExecutor(), this.joinTime + this.settings.AUTH_TIME, bossBarEnabled);
+    if (this.disconnected) {
+      // Disconnected before the entry was published, so onDisconnect couldn't remove it
+      this.plugin.getAuthCountdown().remove(this.countdownEntry);
+      return;
+    }
 
     if (this.playerInfo == null) {
-      try {
-        String ip = this.proxyPlayer.getRemoteAddress().getAddress().getHostAddress();
-        List<RegisteredPlayer> alreadyRegistered = this.playerDao.queryForEq(RegisteredPlayer.IP_FIELD, ip);
-        if (alreadyRegistered != null) {
-          int sizeOfValidRegistrations = alreadyRegistered.size();
-          if (Settings.IMP.MAIN.IP_LIMIT_VALID_TIME > 0) {
-            for (RegisteredPlayer registeredPlayer : alreadyRegistered.stream()
-                .filter(registeredPlayer -> registeredPlayer.getRegDate() < System.currentTimeMillis() - Settings.IMP.MAIN.IP_LIMIT_VALID_TIME)
-                .collect(Collectors.toList())) {
-              registeredPlayer.setIP("");
-              this.playerDao.update(registeredPlayer);
-              --sizeOfValidRegistrations;
+      String ip = this.proxyPlayer.getRemoteAddress().getAddress().getHostAddress();
+      long validTime = this.settings.IP_LIMIT_VALID_TIME;
+      // The expired registrations are not counted, their IPs are cleared later by LimboAuth#clearExpiredRegistrationIps
+      this.playerRepository.countByIp(ip, validTime > 0 ? System.currentTimeMillis() - validTime : 0)
+          .whenCompleteAsync((validRegistrations, throwable) -> {
+            if (this.disconnected) {
+              return;
             }
-          }
 
-          if (sizeOfValidRegistrations >= Settings.IMP.MAIN.IP_LIMIT_REGISTRATIONS) {
-            this.proxyPlayer.disconnect(ipLimitKick);
-            return;
-          }
-        }
-      } catch (SQLException e) {
-        this.proxyPlayer.disconnect(databaseErrorKick);
-        throw new SQLRuntimeException(e);
-      }
+            if (throwable != null) {
+              this.proxyPlayer.disconnect(this.messages().databaseErrorKick);
+              LimboAuth.getLogger().error("Unable to check the registrations of " + ip, throwable);
+            } else if (validRegistrations >= this.settings.IP_LIMIT_REGISTRATIONS) {
+              this.proxyPlayer.disconnect(this.messages().ipLimitKick);
+            } else {
+              this.startAuth();
+            }
+          }, this.player.getScheduledExecutor());
     } else {
       if (!this.proxyPlayer.getUsername().equals(this.playerInfo.getNickname())) {
-        this.proxyPlayer.disconnect(serializer.deserialize(
-            MessageFormat.format(wrongNicknameCaseKick, this.playerInfo.getNickname(), this.proxyPlayer.getUsername()))
-        );
+        this.proxyPlayer.disconnect(this.messages().wrongNicknameCaseKick.render(this.playerInfo.getNickname(), this.proxyPlayer.getUsername()));
         return;
       }
 
       this.plugin.addAuthenticatingPlayer(player.getProxyPlayer().getUsername(), this);
+      this.startAuth();
     }
+  }
 
-    boolean bossBarEnabled = !this.loginOnlyByMod && Settings.IMP.MAIN.ENABLE_BOSSBAR;
-    int authTime = Settings.IMP.MAIN.AUTH_TIME;
-    float multiplier = 1000.0F / authTime;
-    this.authMainTask = this.player.getScheduledExecutor().scheduleWithFixedDelay(() -> {
-      if (System.currentTimeMillis() - this.joinTime > authTime) {
-        this.proxyPlayer.disconnect(timesUp);
-      } else {
-        if (bossBarEnabled) {
-          float secondsLeft = (authTime - (System.currentTimeMillis() - this.joinTime)) / 1000.0F;
-          this.bossBar.name(serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.BOSSBAR, (int) secondsLeft)));
-          // It's possible, that the progress value can overcome 1, e.g. 1.0000001.
-          this.bossBar.progress(Math.min(1.0F, secondsLeft * multiplier));
-        }
-      }
-    }, 0, 1, TimeUnit.SECONDS);
-
-    if (bossBarEnabled) {
+  private void startAuth() {
+    this.authStarted = true;
+    if (!this.loginOnlyByMod && this.settings.ENABLE_BOSSBAR) {
+      this.updateBossBar(System.currentTimeMillis());
       this.proxyPlayer.showBossBar(this.bossBar);
     }
 
@@ -198,40 +158,24 @@ public class AuthSessionHandler implements LimboSessionHandler {
 
   @Override
   public void onChat(String message) {
-    if (this.loginOnlyByMod) {
+    // The auth isn't started until the registrations amount is checked
+    if (this.loginOnlyByMod || !this.authStarted) {
       return;
     }
 
     if (!LimboAuth.RATELIMITER.attempt(this.proxyPlayer.getRemoteAddress().getAddress())) {
-      this.proxyPlayer.sendMessage(AuthSessionHandler.ratelimited);
+      this.proxyPlayer.sendMessage(this.messages().ratelimited);
       return;
     }
 
     String[] args = message.split(" ");
     if (args.length != 0 && this.checkArgsLength(args.length)) {
-      Command command = Command.parse(args[0]);
+      Command command = Command.parse(this.settings, args[0]);
       if (command == Command.REGISTER && !this.totpState && this.playerInfo == null) {
         String password = args[1];
         if (this.checkPasswordsRepeat(args) && this.checkPasswordLength(password) && this.checkPasswordStrength(password)) {
           this.saveTempPassword(password);
-          RegisteredPlayer registeredPlayer = new RegisteredPlayer(this.proxyPlayer).setPassword(password);
-
-          try {
-            this.playerDao.create(registeredPlayer);
-            this.playerInfo = registeredPlayer;
-          } catch (SQLException e) {
-            this.proxyPlayer.disconnect(databaseErrorKick);
-            throw new SQLRuntimeException(e);
-          }
-
-          this.proxyPlayer.sendMessage(registerSuccessful);
-          if (registerSuccessfulTitle != null) {
-            this.proxyPlayer.showTitle(registerSuccessfulTitle);
-          }
-
-          this.plugin.getServer().getEventManager()
-              .fire(new PostRegisterEvent(this::finishAuth, this.player, this.playerInfo, this.tempPassword))
-              .thenAcceptAsync(this::finishAuth);
+          this.hashAsync(() -> RegisteredPlayer.genHash(password, this.settings.BCRYPT_COST), this::register);
         }
 
         // {@code return} placed here (not above), because
@@ -243,18 +187,11 @@ public class AuthSessionHandler implements LimboSessionHandler {
         String password = args[1];
         this.saveTempPassword(password);
 
-        if (password.length() > 0 && checkPassword(password, this.playerInfo, this.playerDao)) {
-          if (this.playerInfo.getTotpToken().isEmpty()) {
-            this.finishLogin();
-          } else {
-            this.totpState = true;
-            this.sendMessage(true);
-          }
-        } else if (--this.attempts != 0) {
-          this.proxyPlayer.sendMessage(loginWrongPassword[this.attempts - 1]);
-          this.checkBruteforceAttempts();
+        if (password.length() > 0) {
+          RegisteredPlayer playerInfo = this.playerInfo;
+          this.hashAsync(() -> checkPassword(password, playerInfo, this.playerRepository, this.settings.MIGRATION_HASH), this::login);
         } else {
-          this.proxyPlayer.disconnect(loginWrongPasswordKick);
+          this.login(false);
         }
 
         return;
@@ -273,14 +210,14 @@ public class AuthSessionHandler implements LimboSessionHandler {
 
   @Override
   public void onGeneric(Object packet) {
-    if (Settings.IMP.MAIN.MOD.ENABLED && packet instanceof PluginMessagePacket) {
+    if (this.settings.MOD.ENABLED && packet instanceof PluginMessagePacket) {
       PluginMessagePacket pluginMessage = (PluginMessagePacket) packet;
       String channel = pluginMessage.getChannel();
 
       if (channel.equals("MC|Brand") || channel.equals("minecraft:brand")) {
         // Minecraft can't handle the plugin message immediately after going to the PLAY
         // state, so we have to postpone sending it
-        if (Settings.IMP.MAIN.MOD.ENABLED) {
+        if (this.settings.MOD.ENABLED) {
           this.proxyPlayer.sendPluginMessage(this.plugin.getChannelIdentifier(this.proxyPlayer), new byte[0]);
         }
       } else if (channel.equals(this.plugin.getChannelIdentifier(this.proxyPlayer).getId())) {
@@ -300,7 +237,7 @@ public class AuthSessionHandler implements LimboSessionHandler {
 
         if (data.readableBytes() < 16) {
           this.checkBruteforceAttempts();
-          this.proxyPlayer.sendMessage(sessionExpired);
+          this.proxyPlayer.sendMessage(this.messages().sessionExpired);
           return;
         }
 
@@ -308,19 +245,13 @@ public class AuthSessionHandler implements LimboSessionHandler {
         long hash = data.readLong();
 
         if (this.playerInfo.getTokenIssuedAt() > issueTime) {
-          this.proxyPlayer.sendMessage(sessionExpired);
+          this.proxyPlayer.sendMessage(this.messages().sessionExpired);
           return;
         }
 
-        byte[] lowercaseNicknameSerialized = this.playerInfo.getLowercaseNickname().getBytes(StandardCharsets.UTF_8);
-        long correctHash = SipHasher.init(Settings.IMP.MAIN.MOD.VERIFY_KEY)
-            .update(lowercaseNicknameSerialized)
-            .update(Longs.toByteArray(issueTime))
-            .digest();
-
-        if (hash != correctHash) {
+        if (hash != LimboAuth.getModTokenHash(this.settings.MOD.VERIFY_KEY, this.playerInfo.getLowercaseNickname(), issueTime)) {
           this.checkBruteforceAttempts();
-          this.proxyPlayer.sendMessage(sessionExpired);
+          this.proxyPlayer.sendMessage(this.messages().sessionExpired);
           return;
         }
 
@@ -329,10 +260,90 @@ public class AuthSessionHandler implements LimboSessionHandler {
     }
   }
 
+  private <T> void hashAsync(Supplier<T> task, Consumer<T> callback) {
+    if (this.processing) {
+      this.proxyPlayer.sendMessage(this.messages().ratelimited);
+      return;
+    }
+
+    this.processing = true;
+    boolean submitted = this.plugin.getHashingExecutor().submit(task, this.player.getScheduledExecutor(), (result, throwable) -> {
+      this.processing = false;
+      if (this.disconnected) {
+        return;
+      }
+
+      if (throwable != null) {
+        this.proxyPlayer.disconnect(this.messages().databaseErrorKick);
+        LimboAuth.getLogger().error("Unable to process the password of " + this.proxyPlayer.getUsername(), throwable);
+        return;
+      }
+
+      callback.accept(result);
+    });
+
+    if (!submitted) {
+      this.processing = false;
+      this.proxyPlayer.sendMessage(this.messages().ratelimited);
+    }
+  }
+
+  private void register(String hash) {
+    if (this.playerInfo != null) {
+      return;
+    }
+
+    RegisteredPlayer registeredPlayer = new RegisteredPlayer(this.proxyPlayer).setHash(hash);
+
+    this.processing = true;
+    this.playerRepository.create(registeredPlayer).whenCompleteAsync((result, throwable) -> {
+      this.processing = false;
+      if (this.disconnected) {
+        return;
+      }
+
+      if (throwable != null) {
+        this.proxyPlayer.disconnect(this.messages().databaseErrorKick);
+        LimboAuth.getLogger().error("Unable to register " + this.proxyPlayer.getUsername(), throwable);
+      } else {
+        this.playerInfo = registeredPlayer;
+        this.finishRegister();
+      }
+    }, this.player.getScheduledExecutor());
+  }
+
+  private void finishRegister() {
+    AuthMessages messages = this.messages();
+    this.proxyPlayer.sendMessage(messages.registerSuccessful);
+    if (messages.registerSuccessfulTitle != null) {
+      this.proxyPlayer.showTitle(messages.registerSuccessfulTitle);
+    }
+
+    this.plugin.getServer().getEventManager()
+        .fire(new PostRegisterEvent(this::finishAuth, this.player, this.playerInfo, this.tempPassword))
+        .thenAcceptAsync(this::finishAuth);
+  }
+
+  private void login(boolean correctPassword) {
+    if (correctPassword) {
+      if (this.playerInfo.getTotpToken().isEmpty()) {
+        this.finishLogin();
+      } else {
+        this.totpState = true;
+        this.sendMessage(true);
+      }
+    } else if (--this.attempts != 0) {
+      this.proxyPlayer.sendMessage(this.messages().loginWrongPassword[this.attempts - 1]);
+      this.checkBruteforceAttempts();
+    } else {
+      this.proxyPlayer.disconnect(this.messages().loginWrongPasswordKick);
+    }
+  }
+
   private void checkBruteforceAttempts() {
     this.plugin.incrementBruteforceAttempts(this.proxyPlayer.getRemoteAddress().getAddress());
-    if (this.plugin.getBruteforceAttempts(this.proxyPlayer.getRemoteAddress().getAddress()) >= Settings.IMP.MAIN.BRUTEFORCE_MAX_ATTEMPTS) {
-      this.proxyPlayer.disconnect(loginWrongPasswordKick);
+    if (this.plugin.getBruteforceAttempts(this.proxyPlayer.getRemoteAddress().getAddress()) >= this.settings.BRUTEFORCE_MAX_ATTEMPTS) {
+      this.proxyPlayer.disconnect(this.messages().loginWrongPasswordKick);
     }
   }
 
@@ -342,35 +353,66 @@ public class AuthSessionHandler implements LimboSessionHandler {
 
   @Override
   public void onDisconnect() {
-    if (this.authMainTask != null) {
-      this.authMainTask.cancel(true);
+    this.disconnected = true;
+    AuthCountdown.Entry countdownEntry = this.countdownEntry;
+    if (countdownEntry != null) {
+      this.plugin.getAuthCountdown().remove(countdownEntry);
     }
 
     this.proxyPlayer.hideBossBar(this.bossBar);
     this.plugin.removeAuthenticatingPlayer(this.player.getProxyPlayer().getUsername());
   }
 
+  private AuthMessages messages() {
+    return this.config.getMessages().get(this.proxyPlayer.getEffectiveLocale());
+  }
+
+  /**
+   * Runs on the executor of the player, like the other callbacks of the session.
+   */
+  void onTimesUp() {
+    if (!this.disconnected) {
+      this.proxyPlayer.disconnect(this.messages().timesUp);
+    }
+  }
+
+  /**
+   * Runs on the executor of the player, or by {@link #startAuth()}.
+   */
+  void updateBossBar(long now) {
+    if (this.disconnected) {
+      return;
+    }
+
+    int authTime = this.settings.AUTH_TIME;
+    float secondsLeft = (authTime - (now - this.joinTime)) / 1000.0F;
+    this.bossBar.name(this.messages().bossbarName.render(Math.max(0, (int) secondsLeft)));
+    // It's possible, that the progress value can overcome 1, e.g. 1.0000001.
+    this.bossBar.progress(Math.max(0.0F, Math.min(1.0F, secondsLeft * 1000.0F / authTime)));
+  }
+
   private void sendMessage(boolean sendTitle) {
+    AuthMessages messages = this.messages();
     if (this.totpState) {
-      this.proxyPlayer.sendMessage(totp);
-      if (sendTitle && totpTitle != null) {
-        this.proxyPlayer.showTitle(totpTitle);
+      this.proxyPlayer.sendMessage(messages.totp);
+      if (sendTitle && messages.totpTitle != null) {
+        this.proxyPlayer.showTitle(messages.totpTitle);
       }
     } else if (this.playerInfo == null) {
-      this.proxyPlayer.sendMessage(register);
-      if (sendTitle && registerTitle != null) {
-        this.proxyPlayer.showTitle(registerTitle);
+      this.proxyPlayer.sendMessage(messages.register);
+      if (sendTitle && messages.registerTitle != null) {
+        this.proxyPlayer.showTitle(messages.registerTitle);
       }
     } else {
-      this.proxyPlayer.sendMessage(login[this.attempts - 1]);
-      if (sendTitle && loginTitle != null) {
-        this.proxyPlayer.showTitle(loginTitle);
+      this.proxyPlayer.sendMessage(messages.login[this.attempts - 1]);
+      if (sendTitle && messages.loginTitle != null) {
+        this.proxyPlayer.showTitle(messages.loginTitle);
       }
     }
   }
 
   private boolean checkArgsLength(int argsLength) {
-    if (this.playerInfo == null && Settings.IMP.MAIN.REGISTER_NEED_REPEAT_PASSWORD) {
+    if (this.playerInfo == null && this.settings.REGISTER_NEED_REPEAT_PASSWORD) {
       return argsLength == 3;
     } else {
       return argsLength == 2;
@@ -378,21 +420,21 @@ public class AuthSessionHandler implements LimboSessionHandler {
   }
 
   private boolean checkPasswordsRepeat(String[] args) {
-    if (!Settings.IMP.MAIN.REGISTER_NEED_REPEAT_PASSWORD || args[1].equals(args[2])) {
+    if (!this.settings.REGISTER_NEED_REPEAT_PASSWORD || args[1].equals(args[2])) {
       return true;
     } else {
-      this.proxyPlayer.sendMessage(registerDifferentPasswords);
+      this.proxyPlayer.sendMessage(this.messages().registerDifferentPasswords);
       return false;
     }
   }
 
   private boolean checkPasswordLength(String password) {
     int length = password.length();
-    if (length > Settings.IMP.MAIN.MAX_PASSWORD_LENGTH) {
-      this.proxyPlayer.sendMessage(registerPasswordTooLong);
+    if (length > this.settings.MAX_PASSWORD_LENGTH) {
+      this.proxyPlayer.sendMessage(this.messages().registerPasswordTooLong);
       return false;
-    } else if (length < Settings.IMP.MAIN.MIN_PASSWORD_LENGTH) {
-      this.proxyPlayer.sendMessage(registerPasswordTooShort);
+    } else if (length < this.settings.MIN_PASSWORD_LENGTH) {
+      this.proxyPlayer.sendMessage(this.messages().registerPasswordTooShort);
       return false;
     } else {
       return true;
@@ -400,8 +442,8 @@ public class AuthSessionHandler implements LimboSessionHandler {
   }
 
   private boolean checkPasswordStrength(String password) {
-    if (Settings.IMP.MAIN.CHECK_PASSWORD_STRENGTH && this.plugin.getUnsafePasswords().contains(password)) {
-      this.proxyPlayer.sendMessage(registerPasswordUnsafe);
+    if (this.settings.CHECK_PASSWORD_STRENGTH && this.plugin.getUnsafePasswordIndex().contains(password)) {
+      this.proxyPlayer.sendMessage(this.messages().registerPasswordUnsafe);
       return false;
     } else {
       return true;
@@ -409,9 +451,10 @@ public class AuthSessionHandler implements LimboSessionHandler {
   }
 
   public void finishLogin() {
-    this.proxyPlayer.sendMessage(loginSuccessful);
-    if (loginSuccessfulTitle != null) {
-      this.proxyPlayer.showTitle(loginSuccessfulTitle);
+    AuthMessages messages = this.messages();
+    this.proxyPlayer.sendMessage(messages.loginSuccessful);
+    if (messages.loginSuccessfulTitle != null) {
+      this.proxyPlayer.showTitle(messages.loginSuccessfulTitle);
     }
 
     this.plugin.clearBruteforceAttempts(this.proxyPlayer.getRemoteAddress().getAddress());
@@ -433,14 +476,12 @@ public class AuthSessionHandler implements LimboSessionHandler {
   }
 
   private void finishAuth() {
-    if (Settings.IMP.MAIN.CRACKED_TITLE_SETTINGS.CLEAR_AFTER_LOGIN) {
+    if (this.settings.CRACKED_TITLE_SETTINGS.CLEAR_AFTER_LOGIN) {
       this.proxyPlayer.clearTitle();
     }
 
     try {
-      this.plugin.updateLoginData(this.proxyPlayer);
-    } catch (SQLException e) {
-      throw new SQLRuntimeException(e);
+      this.plugin.updateLoginDataAsync(this.proxyPlayer);
     } catch (Throwable e) {
       e.printStackTrace();
     }
@@ -449,83 +490,38 @@ public class AuthSessionHandler implements LimboSessionHandler {
     this.player.disconnect();
   }
 
-  public static void reload() {
-    Serializer serializer = LimboAuth.getSerializer();
-    AuthSessionHandler.ratelimited = serializer.deserialize(Settings.IMP.MAIN.STRINGS.RATELIMITED);
-    bossbarColor = Settings.IMP.MAIN.BOSSBAR_COLOR;
-    bossbarOverlay = Settings.IMP.MAIN.BOSSBAR_OVERLAY;
-    ipLimitKick = serializer.deserialize(Settings.IMP.MAIN.STRINGS.IP_LIMIT_KICK);
-    databaseErrorKick = serializer.deserialize(Settings.IMP.MAIN.STRINGS.DATABASE_ERROR_KICK);
-    wrongNicknameCaseKick = Settings.IMP.MAIN.STRINGS.WRONG_NICKNAME_CASE_KICK;
-    timesUp = serializer.deserialize(Settings.IMP.MAIN.STRINGS.TIMES_UP);
-    registerSuccessful = serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_SUCCESSFUL);
-    if (Settings.IMP.MAIN.STRINGS.REGISTER_SUCCESSFUL_TITLE.isEmpty() && Settings.IMP.MAIN.STRINGS.REGISTER_SUCCESSFUL_SUBTITLE.isEmpty()) {
-      registerSuccessfulTitle = null;
-    } else {
-      registerSuccessfulTitle = Title.title(
-          serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_SUCCESSFUL_TITLE),
-          serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_SUCCESSFUL_SUBTITLE),
-          Settings.IMP.MAIN.CRACKED_TITLE_SETTINGS.toTimes()
-      );
-    }
-    int loginAttempts = Settings.IMP.MAIN.LOGIN_ATTEMPTS;
-    loginWrongPassword = new Component[loginAttempts];
-    for (int i = 0; i < loginAttempts; ++i) {
-      loginWrongPassword[i] = serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.LOGIN_WRONG_PASSWORD, i + 1));
-    }
-    loginWrongPasswordKick = serializer.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_WRONG_PASSWORD_KICK);
-    totp = serializer.deserialize(Settings.IMP.MAIN.STRINGS.TOTP);
-    if (Settings.IMP.MAIN.STRINGS.TOTP_TITLE.isEmpty() && Settings.IMP.MAIN.STRINGS.TOTP_SUBTITLE.isEmpty()) {
-      totpTitle = null;
-    } else {
-      totpTitle = Title.title(
-          serializer.deserialize(Settings.IMP.MAIN.STRINGS.TOTP_TITLE),
-          serializer.deserialize(Settings.IMP.MAIN.STRINGS.TOTP_SUBTITLE),
-          Settings.IMP.MAIN.CRACKED_TITLE_SETTINGS.toTimes()
-      );
-    }
-    register = serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER);
-    if (Settings.IMP.MAIN.STRINGS.REGISTER_TITLE.isEmpty() && Settings.IMP.MAIN.STRINGS.REGISTER_SUBTITLE.isEmpty()) {
-      registerTitle = null;
-    } else {
-      registerTitle = Title.title(
-          serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_TITLE),
-          serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_SUBTITLE),
-          Settings.IMP.MAIN.CRACKED_TITLE_SETTINGS.toTimes()
-      );
-    }
-    login = new Component[loginAttempts];
-    for (int i = 0; i < loginAttempts; ++i) {
-      login[i] = serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.LOGIN, i + 1));
-    }
-    if (Settings.IMP.MAIN.STRINGS.LOGIN_TITLE.isEmpty() && Settings.IMP.MAIN.STRINGS.LOGIN_SUBTITLE.isEmpty()) {
-      loginTitle = null;
-    } else {
-      loginTitle = Title.title(
-          serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.LOGIN_TITLE, loginAttempts)),
-          serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.LOGIN_SUBTITLE, loginAttempts)),
-          Settings.IMP.MAIN.CRACKED_TITLE_SETTINGS.toTimes()
-      );
-    }
-    registerDifferentPasswords = serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_DIFFERENT_PASSWORDS);
-    registerPasswordTooLong = serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_PASSWORD_TOO_LONG);
-    registerPasswordTooShort = serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_PASSWORD_TOO_SHORT);
-    registerPasswordUnsafe = serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_PASSWORD_UNSAFE);
-    loginSuccessful = serializer.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_SUCCESSFUL);
-    sessionExpired = serializer.deserialize(Settings.IMP.MAIN.STRINGS.MOD_SESSION_EXPIRED);
-    if (Settings.IMP.MAIN.STRINGS.LOGIN_SUCCESSFUL_TITLE.isEmpty() && Settings.IMP.MAIN.STRINGS.LOGIN_SUCCESSFUL_SUBTITLE.isEmpty()) {
-      loginSuccessfulTitle = null;
-    } else {
-      loginSuccessfulTitle = Title.title(
-          serializer.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_SUCCESSFUL_TITLE),
-          serializer.deserialize(Settings.IMP.MAIN.STRINGS.LOGIN_SUCCESSFUL_SUBTITLE),
-          Settings.IMP.MAIN.CRACKED_TITLE_SETTINGS.toTimes()
-      );
+  public static boolean checkPassword(String password, RegisteredPlayer player, PlayerRepository playerRepository) {
+    return checkPassword(password, player, playerRepository, Settings.IMP.MAIN.MIGRATION_HASH);
+  }
+
+  /**
+   * @param migrationHash MIGRATION_HASH of the settings the caller has captured
+   */
+  public static boolean checkPassword(String password, RegisteredPlayer player, PlayerRepository playerRepository, @Nullable MigrationHash migrationHash) {
+    String hash = player.getHash();
+    boolean isCorrect = HASH_VERIFIER.verify(
+        password.getBytes(StandardCharsets.UTF_8),
+        hash.replace("BCRYPT$", "$2a$").getBytes(StandardCharsets.UTF_8)
+    ).verified;
+
+    if (!isCorrect && migrationHash != null) {
+      isCorrect = migrationHash.checkPassword(hash, password);
+      if (isCorrect) {
+        player.setPassword(password);
+        playerRepository.update(player).exceptionally(throwable -> {
+          LimboAuth.getLogger().error("Unable to migrate the password hash of " + player.getNickname(), throwable);
+          return null;
+        });
+      }
     }
 
-    migrationHash = Settings.IMP.MAIN.MIGRATION_HASH;
+    return isCorrect;
   }
 
+  /**
+   * Use {@link AuthSessionHandler#checkPassword(String, RegisteredPlayer, PlayerRepository)}
+   */
+  @Deprecated
   public static boolean checkPassword(String password, RegisteredPlayer player, Dao<RegisteredPlayer, String> playerDao) {
     String hash = player.getHash();
     boolean isCorrect = HASH_VERIFIER.verify(
@@ -533,6 +529,7 @@ public class AuthSessionHandler implements LimboSessionHandler {
         hash.replace("BCRYPT$", "$2a$").getBytes(StandardCharsets.UTF_8)
     ).verified;
 
+    MigrationHash migrationHash = Settings.IMP.MAIN.MIGRATION_HASH;
     if (!isCorrect && migrationHash != null) {
       isCorrect = migrationHash.checkPassword(hash, password);
       if (isCorrect) {
@@ -548,6 +545,10 @@ public class AuthSessionHandler implements LimboSessionHandler {
     return isCorrect;
   }
 
+  /**
+   * Use {@link PlayerRepository#findByPremiumUuid(UUID)}
+   */
+  @Deprecated
   public static RegisteredPlayer fetchInfo(Dao<RegisteredPlayer, String> playerDao, UUID uuid) {
     try {
       List<RegisteredPlayer> playerList = playerDao.queryForEq(RegisteredPlayer.PREMIUM_UUID_FIELD, uuid.toString());
@@ -557,10 +558,18 @@ public class AuthSessionHandler implements LimboSessionHandler {
     }
   }
 
+  /**
+   * Use {@link PlayerRepository#findByNickname(String)}
+   */
+  @Deprecated
   public static RegisteredPlayer fetchInfo(Dao<RegisteredPlayer, String> playerDao, String nickname) {
     return AuthSessionHandler.fetchInfoLowercased(playerDao, nickname.toLowerCase(Locale.ROOT));
   }
 
+  /**
+   * Use {@link PlayerRepository#findByNickname(String)}
+   */
+  @Deprecated
   public static RegisteredPlayer fetchInfoLowercased(Dao<RegisteredPlayer, String> playerDao, String nickname) {
     try {
       List<RegisteredPlayer> playerList = playerDao.queryForEq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nickname);
@@ -586,12 +595,12 @@ public class AuthSessionHandler implements LimboSessionHandler {
     LOGIN,
     TOTP;
 
-    static Command parse(String command) {
-      if (Settings.IMP.MAIN.REGISTER_COMMAND.contains(command)) {
+    static Command parse(Settings.MAIN settings, String command) {
+      if (settings.REGISTER_COMMAND.contains(command)) {
         return Command.REGISTER;
-      } else if (Settings.IMP.MAIN.LOGIN_COMMAND.contains(command)) {
+      } else if (settings.LOGIN_COMMAND.contains(command)) {
         return Command.LOGIN;
-      } else if (Settings.IMP.MAIN.TOTP_COMMAND.contains(command)) {
+      } else if (settings.TOTP_COMMAND.contains(command)) {
         return Command.TOTP;
       } else {
         return Command.INVALID;
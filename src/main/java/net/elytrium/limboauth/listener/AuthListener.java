@@ -17,8 +17,7 @@
 
 package net.elytrium.limboauth.listener;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.UpdateBuilder;
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.PostLoginEvent;
@@ -32,9 +31,12 @@ import com.velocitypowered.proxy.connection.client.InitialInboundConnection;
 import com.velocitypowered.proxy.connection.client.LoginInboundConnection;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
-import java.sql.SQLException;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import net.elytrium.commons.utils.reflection.ReflectionException;
 import net.elytrium.limboapi.api.event.LoginLimboRegisterEvent;
@@ -43,9 +45,9 @@ import net.elytrium.limboauth.LimboAuth.CachedPremiumUser;
 import net.elytrium.limboauth.LimboAuth.PremiumState;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.floodgate.FloodgateApiHolder;
-import net.elytrium.limboauth.handler.AuthSessionHandler;
+import net.elytrium.limboauth.login.LoginContext;
 import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.storage.PlayerRepository;
 import net.kyori.adventure.text.Component;
 
 // TODO: Customizable events priority
@@ -55,73 +57,110 @@ public class AuthListener {
   //private static final MethodHandle LOGIN_FIELD;
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
   private final FloodgateApiHolder floodgateApi;
+  private final Settings.MAIN settings;
   private final Component errorOccurred;
+  private final Map<InboundConnection, LoginContext> loginContexts = new ConcurrentHashMap<>();
 
-  public AuthListener(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao, FloodgateApiHolder floodgateApi) {
+  public AuthListener(LimboAuth plugin, PlayerRepository playerRepository, FloodgateApiHolder floodgateApi) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
     this.floodgateApi = floodgateApi;
+    // The listener is registered again by every reload
+    this.settings = plugin.getConfig().getSettings().MAIN;
 
-    this.errorOccurred = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.ERROR_OCCURRED);
+    this.errorOccurred = LimboAuth.getSerializer().deserialize(this.settings.STRINGS.ERROR_OCCURRED);
   }
 
   @Subscribe(order = PostOrder.LATE)
-  public void onPreLoginEvent(PreLoginEvent event) {
+  public EventTask onPreLoginEvent(PreLoginEvent event) {
+    CompletableFuture<Void> future;
+    try {
+      future = this.checkPreLogin(event);
+    } catch (Throwable t) {
+      future = CompletableFuture.failedFuture(t);
+    }
+
+    // Premium checks may query the database and the external API, the event is resumed once they complete
+    return EventTask.resumeWhenComplete(future.whenComplete((result, throwable) -> {
+      if (throwable != null) {
+        event.setResult(PreLoginComponentResult.denied(this.errorOccurred));
+      }
+    }));
+  }
+
+  private CompletableFuture<Void> checkPreLogin(PreLoginEvent event) {
     // Ignore this event if it is was denied by other plugin
     if (!event.getResult().isAllowed()) {
-      return;
+      return CompletableFuture.completedFuture(null);
     }
 
-    try {
-      String username = event.getUsername();
-      if (!event.getResult().isForceOfflineMode()) {
-        if (this.plugin.isPremium(username)) {
-          event.setResult(PreLoginEvent.PreLoginComponentResult.forceOnlineMode());
-
-          try {
-            if (!Settings.IMP.MAIN.ONLINE_MODE_NEED_AUTH_STRICT) {
-              CachedPremiumUser premiumUser = this.plugin.getPremiumCache(username);
-              MinecraftConnection connection = this.getConnection(event.getConnection());
-              if (!connection.isClosed() && premiumUser != null && !premiumUser.isForcePremium()
-                  && this.plugin.isPremiumInternal(username.toLowerCase(Locale.ROOT)).getState() == PremiumState.UNKNOWN) {
-                this.plugin.getPendingLogins().add(username);
-
-                // As Velocity doesnt have any events for our usecase, just inject into netty
-                connection.getChannel().closeFuture().addListener(future -> {
-                  // Player has failed premium verfication client-side, mark as offline-mode
-                  if (this.plugin.getPendingLogins().remove(username)) {
-                    this.plugin.setPremiumCacheLowercased(username.toLowerCase(Locale.ROOT), false);
-                  }
-                });
-              }
-            }
-          } catch (Throwable throwable) {
-            throw new IllegalStateException("failed to track authentication process", throwable);
-          }
-        } else {
+    String username = event.getUsername();
+    LoginContext context = this.createLoginContext(event.getConnection(), username);
+    MinecraftConnection connection = context.getConnection();
+    CompletableFuture<Void> future;
+    if (!event.getResult().isForceOfflineMode()) {
+      future = this.plugin.isPremiumAsync(username, context).thenCompose(premium -> {
+        if (!premium) {
           event.setResult(PreLoginEvent.PreLoginComponentResult.forceOfflineMode());
+          return CompletableFuture.completedFuture(null);
         }
-      } else {
-        try {
-          MinecraftConnection connection = this.getConnection(event.getConnection());
-          if (!connection.isClosed()) {
-            this.plugin.saveForceOfflineMode(username);
-
-            // As Velocity doesnt have any events for our usecase, just inject into netty
-            connection.getChannel().closeFuture().addListener(future -> {
-              this.plugin.unsetForcedPreviously(username);
-            });
-          }
-        } catch (Throwable throwable) {
-          throw new IllegalStateException("failed to track client disconnection", throwable);
+
+        event.setResult(PreLoginEvent.PreLoginComponentResult.forceOnlineMode());
+        CachedPremiumUser premiumUser = context.getPremiumUser();
+        if (this.settings.ONLINE_MODE_NEED_AUTH_STRICT || connection.isClosed() || premiumUser == null || premiumUser.isForcePremium()) {
+          return CompletableFuture.completedFuture(null);
         }
+
+        return this.plugin.isPremiumInternalAsync(context).thenAccept(response -> {
+          if (response.getState() == PremiumState.UNKNOWN) {
+            this.watchPremiumVerification(context, connection);
+          }
+        });
+      });
+    } else {
+      if (!connection.isClosed()) {
+        this.plugin.saveForceOfflineMode(username);
+
+        // As Velocity doesnt have any events for our usecase, just inject into netty
+        connection.getChannel().closeFuture().addListener(channelFuture -> {
+          this.plugin.unsetForcedPreviously(username);
+        });
+      }
+
+      future = CompletableFuture.completedFuture(null);
+    }
+
+    return future.thenRun(() -> this.plugin.recordLoginStage(context, LoginContext.Stage.PRE_LOGIN));
+  }
+
+  private void watchPremiumVerification(LoginContext context, MinecraftConnection connection) {
+    this.plugin.setPendingPremiumVerification(context, true);
+
+    // As Velocity doesnt have any events for our usecase, just inject into netty
+    connection.getChannel().closeFuture().addListener(future -> {
+      // Player has failed premium verfication client-side, mark as offline-mode
+      if (context.isPendingPremiumVerification()) {
+        this.plugin.setPendingPremiumVerification(context, false);
+        this.plugin.setPremiumCacheLowercased(context.getLowercaseNickname(), false);
       }
+    });
+  }
+
+  private LoginContext createLoginContext(InboundConnection inbound, String username) {
+    MinecraftConnection connection;
+    try {
+      connection = this.getConnection(inbound);
     } catch (Throwable throwable) {
-      event.setResult(PreLoginComponentResult.denied(this.errorOccurred));
-      throw throwable;
+      throw new IllegalStateException("failed to create login context", throwable);
     }
+
+    LoginContext context = LoginContext.create(connection, username);
+    // The same inbound connection is passed to GameProfileRequestEvent, so it doesn't need the reflective access again
+    this.loginContexts.put(inbound, context);
+    connection.getChannel().closeFuture().addListener(future -> this.loginContexts.remove(inbound, context));
+    return context;
   }
 
   private MinecraftConnection getConnection(InboundConnection inbound) throws Throwable {
@@ -160,74 +199,111 @@ public class AuthListener {
       // We need to delay for player's client to finish switching the server, it takes a little time.
       this.plugin.getServer().getScheduler()
           .buildTask(this.plugin, postLoginTask)
-          .delay(Settings.IMP.MAIN.PREMIUM_AND_FLOODGATE_MESSAGES_DELAY, TimeUnit.MILLISECONDS)
+          .delay(this.settings.PREMIUM_AND_FLOODGATE_MESSAGES_DELAY, TimeUnit.MILLISECONDS)
           .schedule();
     }
   }
 
   @Subscribe
-  public void onLoginLimboRegister(LoginLimboRegisterEvent event) {
+  public EventTask onLoginLimboRegister(LoginLimboRegisterEvent event) {
     // Player has completed online-mode authentication, can be sure that the player has premium account
+    CompletableFuture<Void> premiumFuture;
     if (event.getPlayer().isOnlineMode()) {
-      CachedPremiumUser premiumUser = this.plugin.getPremiumCache(event.getPlayer().getUsername());
-      if (premiumUser != null) {
-        premiumUser.setForcePremium(true);
+      LoginContext context = LoginContext.get(event.getPlayer());
+      if (context != null) {
+        this.plugin.setPendingPremiumVerification(context, false);
       }
 
-      this.plugin.getPendingLogins().remove(event.getPlayer().getUsername());
+      CompletableFuture<CachedPremiumUser> premiumUser = context == null || context.getPremiumUser() == null
+          ? this.plugin.getPremiumCacheAsync(event.getPlayer().getUsername())
+          : CompletableFuture.completedFuture(context.getPremiumUser());
+      premiumFuture = premiumUser.thenAccept(cachedPremiumUser -> {
+        if (cachedPremiumUser != null) {
+          this.plugin.forcePremiumCache(event.getPlayer().getUsername(), cachedPremiumUser);
+        }
+      });
+    } else {
+      premiumFuture = CompletableFuture.completedFuture(null);
     }
 
-    if (this.plugin.needAuth(event.getPlayer())) {
-      event.addOnJoinCallback(() -> this.plugin.authPlayer(event.getPlayer()));
-    }
+    return EventTask.resumeWhenComplete(premiumFuture.thenCompose(ignored -> this.plugin.needAuthAsync(event.getPlayer())).thenAccept(needAuth -> {
+      if (needAuth) {
+        event.addOnJoinCallback(() -> this.plugin.authPlayer(event.getPlayer()));
+      }
+    }));
   }
 
   @Subscribe(order = PostOrder.FIRST)
-  public void onGameProfileRequest(GameProfileRequestEvent event) {
-    if (Settings.IMP.MAIN.SAVE_UUID && (this.floodgateApi == null || !this.floodgateApi.isFloodgatePlayer(event.getOriginalProfile().getId()))) {
-      RegisteredPlayer registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, event.getOriginalProfile().getId());
+  public EventTask onGameProfileRequest(GameProfileRequestEvent event) {
+    LoginContext context = this.loginContexts.remove(event.getConnection());
+    String lowercaseNickname = context == null ? event.getUsername().toLowerCase(Locale.ROOT) : context.getLowercaseNickname();
+    CompletableFuture<Boolean> future;
+    if (this.settings.SAVE_UUID && (this.floodgateApi == null || !this.floodgateApi.isFloodgatePlayer(event.getOriginalProfile().getId()))) {
+      UUID originalId = event.getOriginalProfile().getId();
+      CompletableFuture<List<RegisteredPlayer>> candidates = context == null
+          ? this.playerRepository.findByNicknameOrPremiumUuid(lowercaseNickname, originalId)
+          : context.findWithPremiumUuid(this.playerRepository, originalId);
+      future = candidates.thenCompose(players -> {
+        RegisteredPlayer registeredPlayer = null;
+        for (RegisteredPlayer candidate : players) {
+          if (candidate.getPremiumUuid().equals(originalId.toString()) && !candidate.getUuid().isEmpty()) {
+            event.setGameProfile(event.getOriginalProfile().withId(UUID.fromString(candidate.getUuid())));
+            return CompletableFuture.completedFuture(false);
+          }
 
-      if (registeredPlayer != null && !registeredPlayer.getUuid().isEmpty()) {
-        event.setGameProfile(event.getOriginalProfile().withId(UUID.fromString(registeredPlayer.getUuid())));
-        return;
-      }
-      registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, event.getUsername());
+          if (candidate.getLowercaseNickname().equals(lowercaseNickname)) {
+            registeredPlayer = candidate;
+          }
+        }
 
-      if (registeredPlayer != null) {
-        String currentUuid = registeredPlayer.getUuid();
+        if (registeredPlayer != null) {
+          String currentUuid = registeredPlayer.getUuid();
 
-        if (currentUuid.isEmpty()) {
-          try {
+          if (currentUuid.isEmpty()) {
             registeredPlayer.setUuid(event.getGameProfile().getId().toString());
-            this.playerDao.update(registeredPlayer);
-          } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
+            return this.playerRepository.update(registeredPlayer).thenApply(result -> true);
+          } else {
+            event.setGameProfile(event.getOriginalProfile().withId(UUID.fromString(currentUuid)));
           }
-        } else {
-          event.setGameProfile(event.getOriginalProfile().withId(UUID.fromString(currentUuid)));
         }
-      }
+
+        return CompletableFuture.completedFuture(true);
+      });
     } else if (event.isOnlineMode()) {
-      try {
-        UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
-        updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, event.getUsername().toLowerCase(Locale.ROOT));
-        updateBuilder.updateColumnValue(RegisteredPlayer.HASH_FIELD, "");
-        updateBuilder.update();
-      } catch (SQLException e) {
-        throw new SQLRuntimeException(e);
-      }
+      future = this.playerRepository.updateHash(lowercaseNickname, "").thenApply(result -> {
+        if (context != null) {
+          // The hash has been changed, fetch the player again
+          context.invalidate();
+        }
+
+        return true;
+      });
+    } else {
+      future = CompletableFuture.completedFuture(true);
     }
 
-    if (Settings.IMP.MAIN.FORCE_OFFLINE_UUID) {
+    return EventTask.resumeWhenComplete(future.thenAccept(applyProfileSettings -> {
+      if (applyProfileSettings) {
+        this.applyProfileSettings(event);
+      }
+
+      if (context != null) {
+        this.plugin.recordLoginStage(context, LoginContext.Stage.GAME_PROFILE_REQUEST);
+      }
+    }));
+  }
+
+  private void applyProfileSettings(GameProfileRequestEvent event) {
+    if (this.settings.FORCE_OFFLINE_UUID) {
       event.setGameProfile(event.getOriginalProfile().withId(UuidUtils.generateOfflinePlayerUuid(event.getUsername())));
     }
 
-    if (!event.isOnlineMode() && !Settings.IMP.MAIN.OFFLINE_MODE_PREFIX.isEmpty()) {
-      event.setGameProfile(event.getOriginalProfile().withName(Settings.IMP.MAIN.OFFLINE_MODE_PREFIX + event.getUsername()));
+    if (!event.isOnlineMode() && !this.settings.OFFLINE_MODE_PREFIX.isEmpty()) {
+      event.setGameProfile(event.getOriginalProfile().withName(this.settings.OFFLINE_MODE_PREFIX + event.getUsername()));
     }
 
-    if (event.isOnlineMode() && !Settings.IMP.MAIN.ONLINE_MODE_PREFIX.isEmpty()) {
-      event.setGameProfile(event.getOriginalProfile().withName(Settings.IMP.MAIN.ONLINE_MODE_PREFIX + event.getUsername()));
+    if (event.isOnlineMode() && !this.settings.ONLINE_MODE_PREFIX.isEmpty()) {
+      event.setGameProfile(event.getOriginalProfile().withName(this.settings.ONLINE_MODE_PREFIX + event.getUsername()));
     }
   }
 
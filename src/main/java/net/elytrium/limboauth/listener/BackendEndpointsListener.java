@@ -20,6 +20,7 @@ package net.elytrium.limboauth.listener;
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.PluginMessageEvent;
 import com.velocitypowered.api.event.connection.PluginMessageEvent.ForwardResult;
@@ -70,16 +71,21 @@ public class BackendEndpointsListener {
   }
 
   @Subscribe
-  public void onRequest(PluginMessageEvent event) {
+  public EventTask onRequest(PluginMessageEvent event) {
     if (event.getIdentifier() != API_CHANNEL) {
-      return;
+      return null;
     }
 
     event.setResult(ForwardResult.handled());
     if (!(event.getSource() instanceof VelocityServerConnection server) || !server.isActive()) {
-      return;
+      return null;
     }
 
+    // Database endpoints are blocking, so the response is written from the async thread
+    return EventTask.async(() -> this.handleRequest(event, server));
+  }
+
+  private void handleRequest(PluginMessageEvent event, VelocityServerConnection server) {
     Endpoint endpoint;
     ByteArrayDataInput in = ByteStreams.newDataInput(event.getData());
     String dataType = in.readUTF();
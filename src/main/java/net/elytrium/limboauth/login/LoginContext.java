@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.login;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.proxy.connection.MinecraftConnection;
+import com.velocitypowered.proxy.connection.client.ConnectedPlayer;
+import io.netty.util.AttributeKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.LimboAuth.CachedPremiumUser;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.storage.PlayerRepository;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Data of the joining player that is shared between the login stages, so they don't repeat the database queries,
+ * the premium checks and the reflective connection access.
+ * Created at pre-login and stored in the channel attribute, so it is discarded with the connection.
+ */
+public class LoginContext {
+
+  private static final AttributeKey<LoginContext> KEY = AttributeKey.valueOf("limboauth_login_context");
+
+  private final MinecraftConnection connection;
+  private final String nickname;
+  private final String lowercaseNickname;
+  private final long createdAt = System.nanoTime();
+  private final long[] stageTimes = new long[Stage.values().length];
+  private CompletableFuture<RegisteredPlayer> registeredPlayer;
+  private Boolean premium;
+  private CachedPremiumUser premiumUser;
+  private volatile boolean pendingPremiumVerification;
+
+  private LoginContext(MinecraftConnection connection, String nickname) {
+    this.connection = connection;
+    this.nickname = nickname;
+    this.lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    Arrays.fill(this.stageTimes, -1);
+  }
+
+  public static LoginContext create(MinecraftConnection connection, String nickname) {
+    LoginContext context = new LoginContext(connection, nickname);
+    connection.getChannel().attr(KEY).set(context);
+    return context;
+  }
+
+  /**
+   * @return the context of the player connection, its nickname may differ from the player one if the profile prefixes are set
+   */
+  @Nullable
+  public static LoginContext get(Player player) {
+    return player instanceof ConnectedPlayer ? ((ConnectedPlayer) player).getConnection().getChannel().attr(KEY).get() : null;
+  }
+
+  public MinecraftConnection getConnection() {
+    return this.connection;
+  }
+
+  public String getNickname() {
+    return this.nickname;
+  }
+
+  public String getLowercaseNickname() {
+    return this.lowercaseNickname;
+  }
+
+  /**
+   * @return the time in milliseconds since the pre-login
+   */
+  public synchronized long markStage(Stage stage) {
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.createdAt);
+    this.stageTimes[stage.ordinal()] = elapsed;
+    return elapsed;
+  }
+
+  /**
+   * @return the time in milliseconds from the pre-login to the stage, or -1 if the stage hasn't been reached
+   */
+  public synchronized long getStageTime(Stage stage) {
+    return this.stageTimes[stage.ordinal()];
+  }
+
+  /**
+   * @return the result of the pre-login premium check, or null if it wasn't checked
+   */
+  @Nullable
+  public synchronized Boolean getPremium() {
+    return this.premium;
+  }
+
+  public synchronized void setPremium(boolean premium, @Nullable CachedPremiumUser premiumUser) {
+    this.premium = premium;
+    this.premiumUser = premiumUser;
+  }
+
+  /**
+   * @return the premium cache entry which was used by the pre-login premium check
+   */
+  @Nullable
+  public synchronized CachedPremiumUser getPremiumUser() {
+    return this.premiumUser;
+  }
+
+  public boolean isPendingPremiumVerification() {
+    return this.pendingPremiumVerification;
+  }
+
+  /**
+   * Set if the premium nickname is not registered yet and the player is not confirmed to own it,
+   * the nickname is marked as cracked if the player disconnects before the online-mode authentication completes.
+   */
+  public void setPendingPremiumVerification(boolean pendingPremiumVerification) {
+    this.pendingPremiumVerification = pendingPremiumVerification;
+  }
+
+  /**
+   * @return the player, or null if the nickname is not registered
+   */
+  public synchronized CompletableFuture<RegisteredPlayer> getRegisteredPlayer(PlayerRepository playerRepository) {
+    if (this.registeredPlayer == null || this.registeredPlayer.isCompletedExceptionally()) {
+      this.registeredPlayer = playerRepository.findByNickname(this.lowercaseNickname);
+    }
+
+    return this.registeredPlayer;
+  }
+
+  public synchronized void setRegisteredPlayer(RegisteredPlayer registeredPlayer) {
+    this.registeredPlayer = CompletableFuture.completedFuture(registeredPlayer);
+  }
+
+  public synchronized void invalidate() {
+    this.registeredPlayer = null;
+  }
+
+  public CompletableFuture<PremiumState> getPremiumState(PlayerRepository playerRepository) {
+    return this.getRegisteredPlayer(playerRepository).thenApply(RegisteredPlayer::getPremiumState);
+  }
+
+  /**
+   * Same as {@link PlayerRepository#findByNicknameOrPremiumUuid(String, UUID)}, but the player with this nickname is not fetched again.
+   */
+  public CompletableFuture<List<RegisteredPlayer>> findWithPremiumUuid(PlayerRepository playerRepository, UUID premiumUuid) {
+    CompletableFuture<RegisteredPlayer> registeredPlayer;
+    synchronized (this) {
+      registeredPlayer = this.registeredPlayer;
+    }
+
+    if (registeredPlayer == null || !registeredPlayer.isDone() || registeredPlayer.isCompletedExceptionally()) {
+      return playerRepository.findByNicknameOrPremiumUuid(this.lowercaseNickname, premiumUuid).thenApply(players -> {
+        for (RegisteredPlayer player : players) {
+          if (player.getLowercaseNickname().equals(this.lowercaseNickname)) {
+            this.setRegisteredPlayer(player);
+            return players;
+          }
+        }
+
+        this.setRegisteredPlayer(null);
+        return players;
+      });
+    }
+
+    RegisteredPlayer nicknamePlayer = registeredPlayer.join();
+    if (nicknamePlayer != null && nicknamePlayer.getPremiumUuid().equals(premiumUuid.toString())) {
+      return CompletableFuture.completedFuture(List.of(nicknamePlayer));
+    }
+
+    return playerRepository.findByPremiumUuid(premiumUuid).thenApply(premiumPlayer -> {
+      List<RegisteredPlayer> players = new ArrayList<>(2);
+      if (premiumPlayer != null) {
+        players.add(premiumPlayer);
+      }
+
+      if (nicknamePlayer != null && (premiumPlayer == null || !premiumPlayer.getLowercaseNickname().equals(this.lowercaseNickname))) {
+        players.add(nicknamePlayer);
+      }
+
+      return players;
+    });
+  }
+
+  public enum Stage {
+    PRE_LOGIN,
+    GAME_PROFILE_REQUEST,
+    AUTH
+  }
+}
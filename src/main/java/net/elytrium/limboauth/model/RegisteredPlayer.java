@@ -24,6 +24,7 @@ import com.velocitypowered.api.proxy.Player;
 import java.net.InetSocketAddress;
 import java.util.Locale;
 import java.util.UUID;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
 import net.elytrium.limboauth.Settings;
 
 @DatabaseTable(tableName = "AUTH")
@@ -40,6 +41,10 @@ public class RegisteredPlayer {
   public static final String UUID_FIELD = "UUID";
   public static final String PREMIUM_UUID_FIELD = "PREMIUMUUID";
   public static final String TOKEN_ISSUED_AT_FIELD = "ISSUEDTIME";
+  /**
+   * Composite index of the IP limit count, the older tables get it on the plugin load.
+   */
+  public static final String IP_REG_DATE_INDEX = "AUTH_IP_REGDATE_idx";
 
   private static final BCrypt.Hasher HASHER = BCrypt.withDefaults();
 
@@ -52,13 +57,13 @@ public class RegisteredPlayer {
   @DatabaseField(canBeNull = false, columnName = HASH_FIELD)
   private String hash = "";
 
-  @DatabaseField(columnName = IP_FIELD, index = true)
+  @DatabaseField(columnName = IP_FIELD, indexName = IP_REG_DATE_INDEX)
   private String ip;
 
   @DatabaseField(columnName = TOTP_TOKEN_FIELD)
   private String totpToken = "";
 
-  @DatabaseField(columnName = REG_DATE_FIELD)
+  @DatabaseField(columnName = REG_DATE_FIELD, indexName = IP_REG_DATE_INDEX)
   private Long regDate = System.currentTimeMillis();
 
   @DatabaseField(columnName = UUID_FIELD)
@@ -112,7 +117,11 @@ public class RegisteredPlayer {
   }
 
   public static String genHash(String password) {
-    return HASHER.hashToString(Settings.IMP.MAIN.BCRYPT_COST, password.toCharArray());
+    return genHash(password, Settings.IMP.MAIN.BCRYPT_COST);
+  }
+
+  public static String genHash(String password, int cost) {
+    return HASHER.hashToString(cost, password.toCharArray());
   }
 
   public RegisteredPlayer setNickname(String nickname) {
@@ -204,6 +213,17 @@ public class RegisteredPlayer {
     return this.premiumUuid == null ? "" : this.premiumUuid;
   }
 
+  /**
+   * @return {@link PremiumState#UNKNOWN} if the player is not registered, otherwise the state of the registered account
+   */
+  public static PremiumState getPremiumState(RegisteredPlayer player) {
+    if (player == null) {
+      return PremiumState.UNKNOWN;
+    }
+
+    return player.getHash().isEmpty() ? PremiumState.PREMIUM : PremiumState.CRACKED;
+  }
+
   public String getLoginIp() {
     return this.loginIp == null ? "" : this.loginIp;
   }
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.password;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Read-only set of the unsafe passwords, stored as sorted 64-bit hashes in a memory-mapped file with a Bloom filter in front.
+ *
+ * <p>The index is converted once from the text list (one password per line) and is reused until the text list is modified.
+ * Lookups don't allocate and the set doesn't occupy the heap, only the pages that were touched are kept in the page cache.
+ *
+ * <p>File layout (big-endian): header, Bloom filter bits, sorted unique hashes.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class UnsafePasswordIndex {
+
+  private static final int MAGIC = 0x4C415550; // LAUP
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 40;
+  private static final int BITS_PER_ENTRY = 10;
+  private static final int HASH_FUNCTIONS = 7;
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final Path source;
+  private final long sourceSize;
+  private final long sourceLastModified;
+  private final ByteBuffer buffer;
+  private final long bloomMask;
+  private final int hashesOffset;
+  private final int size;
+
+  private UnsafePasswordIndex(Path source, ByteBuffer buffer) throws IOException {
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported unsafe passwords index format");
+    }
+
+    this.source = source;
+    this.sourceSize = buffer.getLong(8);
+    this.sourceLastModified = buffer.getLong(16);
+    long bloomBits = buffer.getLong(24);
+    this.size = buffer.getInt(32);
+    this.bloomMask = bloomBits - 1;
+    this.hashesOffset = HEADER_SIZE + (int) (bloomBits >>> 3);
+    if (Long.bitCount(bloomBits) != 1 || bloomBits < Long.SIZE || this.hashesOffset + (long) this.size * Long.BYTES != buffer.capacity()) {
+      throw new IOException("Corrupted unsafe passwords index");
+    }
+
+    this.buffer = buffer;
+  }
+
+  /**
+   * Maps the index of the text list, the index is (re)built if it is missing or outdated.
+   *
+   * @param source the text list, one password per line
+   * @param index  the index file, created next to the text list
+   */
+  public static UnsafePasswordIndex load(Path source, Path index) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+    if (Files.exists(index)) {
+      try {
+        UnsafePasswordIndex existing = map(source, index);
+        if (existing.sourceSize == attributes.size() && existing.sourceLastModified == attributes.lastModifiedTime().toMillis()) {
+          return existing;
+        }
+      } catch (IOException e) {
+        // Outdated format or a partially written file, build it again
+      }
+    }
+
+    convert(source, index, attributes);
+    return map(source, index);
+  }
+
+  private static UnsafePasswordIndex map(Path source, Path index) throws IOException {
+    try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Unsafe passwords index is too large");
+      }
+
+      return new UnsafePasswordIndex(source, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  private static void convert(Path source, Path index, BasicFileAttributes attributes) throws IOException {
+    long[] hashes = new long[1024];
+    int count = 0;
+    try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (count == hashes.length) {
+          hashes = Arrays.copyOf(hashes, hashes.length << 1);
+        }
+
+        hashes[count++] = hash(line);
+      }
+    }
+
+    Arrays.sort(hashes, 0, count);
+    int unique = 0;
+    for (int i = 0; i < count; ++i) {
+      if (unique == 0 || hashes[unique - 1] != hashes[i]) {
+        hashes[unique++] = hashes[i];
+      }
+    }
+
+    long bloomBits = Math.max(Long.SIZE, Long.highestOneBit(Math.max(1L, (long) unique * BITS_PER_ENTRY - 1)) << 1);
+    if (HEADER_SIZE + (bloomBits >>> 3) + (long) unique * Long.BYTES > Integer.MAX_VALUE) {
+      throw new IOException("Too many unsafe passwords: " + unique);
+    }
+
+    long[] bloom = new long[(int) (bloomBits >>> 6)];
+    long bloomMask = bloomBits - 1;
+    for (int i = 0; i < unique; ++i) {
+      long hash = hashes[i];
+      long first = hash & 0xFFFFFFFFL;
+      long second = hash >>> 32;
+      for (int j = 1; j <= HASH_FUNCTIONS; ++j) {
+        long bit = (first + j * second) & bloomMask;
+        bloom[(int) (bit >>> 6)] |= 1L << bit;
+      }
+    }
+
+    Path temp = index.resolveSibling(index.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer chunk = ByteBuffer.allocateDirect(64 * 1024);
+      chunk.putInt(MAGIC).putInt(VERSION).putLong(attributes.size()).putLong(attributes.lastModifiedTime().toMillis())
+          .putLong(bloomBits).putInt(unique).putInt(0);
+      writeLongs(channel, chunk, bloom, bloom.length);
+      writeLongs(channel, chunk, hashes, unique);
+      chunk.flip();
+      while (chunk.hasRemaining()) {
+        channel.write(chunk);
+      }
+    }
+
+    Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeLongs(FileChannel channel, ByteBuffer chunk, long[] values, int length) throws IOException {
+    for (int i = 0; i < length; ++i) {
+      if (chunk.remaining() < Long.BYTES) {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+          channel.write(chunk);
+        }
+
+        chunk.clear();
+      }
+
+      chunk.putLong(values[i]);
+    }
+  }
+
+  private static long hash(String password) {
+    return HASH_FUNCTION.hashString(password, StandardCharsets.UTF_8).asLong();
+  }
+
+  public boolean contains(String password) {
+    long hash = hash(password);
+    long first = hash & 0xFFFFFFFFL;
+    long second = hash >>> 32;
+    for (int i = 1; i <= HASH_FUNCTIONS; ++i) {
+      long bit = (first + i * second) & this.bloomMask;
+      if ((this.buffer.getLong(HEADER_SIZE + (int) (bit >>> 6) * Long.BYTES) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+
+    int low = 0;
+    int high = this.size - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long value = this.buffer.getLong(this.hashesOffset + middle * Long.BYTES);
+      if (value < hash) {
+        low = middle + 1;
+      } else if (value > hash) {
+        high = middle - 1;
+      } else {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Checks if the index was built from the current version of the given text list, so it can be reused on reload.
+   */
+  public boolean isUpToDate(Path source) throws IOException {
+    if (!this.source.equals(source) || !Files.exists(source)) {
+      return false;
+    }
+
+    BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+    return this.sourceSize == attributes.size() && this.sourceLastModified == attributes.lastModifiedTime().toMillis();
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Read-only view for the API users who expect a set, iterating it reads the text list.
+   */
+  public Set<String> asSet() {
+    return new AbstractSet<>() {
+
+      @Override
+      public boolean contains(Object password) {
+        return password instanceof String && UnsafePasswordIndex.this.contains((String) password);
+      }
+
+      @Override
+      public int size() {
+        return UnsafePasswordIndex.this.size;
+      }
+
+      @Override
+      public Iterator<String> iterator() {
+        try {
+          return Collections.unmodifiableSet(new LinkedHashSet<>(Files.readAllLines(UnsafePasswordIndex.this.source, StandardCharsets.UTF_8))).iterator();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.premium;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.LimboAuth.PremiumResponse;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.concurrent.CircuitBreaker;
+import net.elytrium.limboauth.concurrent.LatencyWindow;
+
+/**
+ * Asynchronous client of the isPremium APIs.
+ * Concurrent lookups of the same nickname share one request.
+ *
+ * <p>If ISPREMIUM_BULK_AUTH_URL is set, the lookups are collected for a few milliseconds
+ * and are resolved with one bulk request per batch instead.
+ *
+ * <p>If the API doesn't answer within the percentile of the recent response times or fails, the next one (mirror) is queried,
+ * and the first valid answer is taken. The APIs with the open circuit breaker are skipped,
+ * the lookup is answered with {@link PremiumState#ERROR} if none of them are available.
+ */
+public class PremiumApiClient {
+
+  private static final PremiumResponse NOT_FOUND = new PremiumResponse(PremiumState.CRACKED);
+  private static final PremiumResponse RATE_LIMITED = new PremiumResponse(PremiumState.RATE_LIMIT);
+  private static final PremiumResponse UNAVAILABLE = new PremiumResponse(PremiumState.ERROR);
+  private static final int HEDGE_MIN_SAMPLES = 20;
+
+  private final Map<String, CompletableFuture<PremiumResponse>> inFlight = new ConcurrentHashMap<>();
+  private final LatencyWindow latencies = new LatencyWindow(256);
+  private final HttpClient client;
+  private final long timeout;
+  private final String bulkUrl;
+  private final Executor bulkDelayedExecutor;
+  private final int bulkMaxSize;
+  private final List<Integer> bulkStatusCodeOk;
+  private final List<Integer> statusCodeRateLimit;
+  private final List<String> bulkValidatorFields;
+  private final String bulkNameField;
+  private final String bulkUuidField;
+  private final long hedgeMinDelay;
+  private final long hedgeMaxDelay;
+  private final int hedgePercentile;
+  private final List<PremiumBackend> backends;
+
+  private List<BulkLookup> bulkLookups = new ArrayList<>();
+
+  /**
+   * The settings are copied, the client is re-created by the reload if any of them changes.
+   *
+   * @param backends ISPREMIUM_AUTH_URL followed by the mirrors
+   */
+  public PremiumApiClient(Settings.MAIN settings, List<PremiumBackend> backends) {
+    this.client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(settings.ISPREMIUM_AUTH_TIMEOUT)).build();
+    this.timeout = settings.ISPREMIUM_AUTH_TIMEOUT;
+    this.bulkUrl = settings.ISPREMIUM_BULK_AUTH_URL;
+    this.bulkDelayedExecutor = CompletableFuture.delayedExecutor(settings.ISPREMIUM_BULK_DELAY, TimeUnit.MILLISECONDS);
+    this.bulkMaxSize = Math.max(1, settings.ISPREMIUM_BULK_MAX_SIZE);
+    this.bulkStatusCodeOk = List.copyOf(settings.ISPREMIUM_BULK_STATUS_CODE_OK);
+    this.statusCodeRateLimit = List.copyOf(settings.STATUS_CODE_RATE_LIMIT);
+    this.bulkValidatorFields = List.copyOf(settings.ISPREMIUM_BULK_JSON_VALIDATOR_FIELDS);
+    this.bulkNameField = settings.ISPREMIUM_BULK_JSON_NAME_FIELD;
+    this.bulkUuidField = settings.ISPREMIUM_BULK_JSON_UUID_FIELD;
+    this.hedgeMinDelay = settings.ISPREMIUM_HEDGE_MIN_DELAY;
+    this.hedgeMaxDelay = Math.max(this.hedgeMinDelay, settings.ISPREMIUM_HEDGE_MAX_DELAY);
+    this.hedgePercentile = settings.ISPREMIUM_HEDGE_PERCENTILE;
+    this.backends = List.copyOf(backends);
+  }
+
+  /**
+   * The returned future is never completed exceptionally, failures and timeouts are reported as {@link PremiumState#ERROR}.
+   */
+  public CompletableFuture<PremiumResponse> lookup(String nickname) {
+    CompletableFuture<PremiumResponse> future = new CompletableFuture<>();
+    CompletableFuture<PremiumResponse> existing = this.inFlight.putIfAbsent(nickname, future);
+    if (existing != null) {
+      return existing;
+    }
+
+    CompletableFuture<PremiumResponse> response = new CompletableFuture<>();
+    HedgedLookup hedgedLookup = new HedgedLookup(nickname, response);
+    hedgedLookup.next();
+    response.orTimeout(this.timeout, TimeUnit.MILLISECONDS).whenComplete((result, throwable) -> {
+      this.inFlight.remove(nickname, future);
+      if (throwable == null) {
+        future.complete(result);
+      } else {
+        future.complete(UNAVAILABLE);
+        LimboAuth.getLogger().error("Unable to authenticate with {} in time.", hedgedLookup.getQueriedUrls(), throwable);
+      }
+    });
+
+    return future;
+  }
+
+  public List<PremiumBackend> getBackends() {
+    return this.backends;
+  }
+
+  private long getHedgeDelay() {
+    long percentile = this.latencies.getPercentile(this.hedgePercentile, HEDGE_MIN_SAMPLES, this.hedgeMaxDelay);
+    return Math.max(this.hedgeMinDelay, Math.min(this.hedgeMaxDelay, percentile));
+  }
+
+  /**
+   * @return the URL the lookup is sent to, the bulk one replaces ISPREMIUM_AUTH_URL if it's set
+   */
+  private String getRequestUrl(PremiumBackend backend, boolean primary) {
+    return primary && !this.bulkUrl.isEmpty() ? this.bulkUrl : backend.getUrl();
+  }
+
+  private CompletableFuture<PremiumResponse> request(PremiumBackend backend, String nickname, boolean primary) {
+    if (primary && !this.bulkUrl.isEmpty()) {
+      return this.addBulkLookup(nickname);
+    }
+
+    return this.client.sendAsync(backend.createRequest(nickname, this.timeout), HttpResponse.BodyHandlers.ofString()).thenApply(backend::parse);
+  }
+
+  private class HedgedLookup {
+
+    private final String nickname;
+    private final CompletableFuture<PremiumResponse> response;
+    private final long hedgeDelay = PremiumApiClient.this.getHedgeDelay();
+    private final List<String> queriedUrls = new ArrayList<>();
+    private int nextBackend;
+    private int pending;
+    private boolean rateLimited;
+
+    HedgedLookup(String nickname, CompletableFuture<PremiumResponse> response) {
+      this.nickname = nickname;
+      this.response = response;
+    }
+
+    /**
+     * Queries the next available API, or completes the lookup if there are no more APIs to wait for.
+     */
+    synchronized void next() {
+      List<PremiumBackend> backends = PremiumApiClient.this.backends;
+      while (this.nextBackend < backends.size()) {
+        int index = this.nextBackend++;
+        PremiumBackend backend = backends.get(index);
+        CircuitBreaker circuitBreaker = backend.getCircuitBreaker();
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+          continue;
+        }
+
+        ++this.pending;
+        String url = PremiumApiClient.this.getRequestUrl(backend, index == 0);
+        this.queriedUrls.add(url);
+        long startTime = System.nanoTime();
+        CompletableFuture<PremiumResponse> request;
+        try {
+          request = PremiumApiClient.this.request(backend, this.nickname, index == 0);
+        } catch (Throwable t) {
+          request = CompletableFuture.failedFuture(t);
+        }
+
+        request.whenComplete((result, throwable) -> this.onResponse(backend, url, result, throwable, System.nanoTime() - startTime));
+        if (this.nextBackend < backends.size()) {
+          int hedgedBackend = this.nextBackend;
+          CompletableFuture.delayedExecutor(this.hedgeDelay, TimeUnit.MILLISECONDS).execute(() -> this.hedge(hedgedBackend));
+        }
+
+        return;
+      }
+
+      if (this.pending == 0) {
+        this.response.complete(this.rateLimited ? RATE_LIMITED : UNAVAILABLE);
+      }
+    }
+
+    private synchronized void hedge(int hedgedBackend) {
+      // Don't query the API if the lookup has already been answered or the previous one has already failed
+      if (!this.response.isDone() && this.nextBackend == hedgedBackend) {
+        this.next();
+      }
+    }
+
+    synchronized List<String> getQueriedUrls() {
+      return List.copyOf(this.queriedUrls);
+    }
+
+    private synchronized void onResponse(PremiumBackend backend, String url, PremiumResponse result, Throwable throwable, long durationNanos) {
+      long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+      boolean success = throwable == null && result.getState() != PremiumState.RATE_LIMIT && result.getState() != PremiumState.ERROR;
+      CircuitBreaker circuitBreaker = backend.getCircuitBreaker();
+      if (circuitBreaker != null) {
+        circuitBreaker.record(success, durationMillis);
+      }
+
+      --this.pending;
+      if (success) {
+        PremiumApiClient.this.latencies.record(durationMillis);
+        this.response.complete(result);
+        return;
+      }
+
+      if (throwable != null) {
+        LimboAuth.getLogger().error("Unable to authenticate with {}.", url, throwable);
+      } else if (result.getState() == PremiumState.RATE_LIMIT) {
+        this.rateLimited = true;
+      } else {
+        LimboAuth.getLogger().error("Unable to authenticate with {}, its response doesn't match the configured status codes or JSON fields.", url);
+      }
+
+      if (!this.response.isDone()) {
+        this.next();
+      }
+    }
+  }
+
+  private CompletableFuture<PremiumResponse> addBulkLookup(String nickname) {
+    BulkLookup lookup = new BulkLookup(nickname);
+    boolean first;
+    boolean full;
+    synchronized (this) {
+      first = this.bulkLookups.isEmpty();
+      this.bulkLookups.add(lookup);
+      full = this.bulkLookups.size() >= this.bulkMaxSize;
+    }
+
+    if (full) {
+      this.sendBulkLookups();
+    } else if (first) {
+      this.bulkDelayedExecutor.execute(this::sendBulkLookups);
+    }
+
+    return lookup.future;
+  }
+
+  private void sendBulkLookups() {
+    List<BulkLookup> lookups;
+    synchronized (this) {
+      if (this.bulkLookups.isEmpty()) {
+        return;
+      }
+
+      lookups = this.bulkLookups;
+      this.bulkLookups = new ArrayList<>();
+    }
+
+    JsonArray nicknames = new JsonArray(lookups.size());
+    lookups.forEach(lookup -> nicknames.add(lookup.nickname));
+
+    CompletableFuture<Map<String, PremiumResponse>> request;
+    try {
+      request = this.client.sendAsync(
+          HttpRequest.newBuilder()
+              .uri(URI.create(this.bulkUrl))
+              .timeout(Duration.ofMillis(this.timeout))
+              .header("Content-Type", "application/json")
+              .POST(HttpRequest.BodyPublishers.ofString(nicknames.toString()))
+              .build(),
+          HttpResponse.BodyHandlers.ofString()
+      ).thenApply(this::parseBulk);
+    } catch (Throwable t) {
+      request = CompletableFuture.failedFuture(t);
+    }
+
+    request.whenComplete((responses, throwable) -> lookups.forEach(lookup -> {
+      if (throwable != null) {
+        lookup.future.completeExceptionally(throwable);
+      } else if (responses == null) {
+        lookup.future.complete(RATE_LIMITED);
+      } else {
+        // The bulk API omits the nicknames that don't exist
+        lookup.future.complete(responses.getOrDefault(lookup.nickname.toLowerCase(Locale.ROOT), NOT_FOUND));
+      }
+    }));
+  }
+
+  /**
+   * @return the responses of the found nicknames by their lowercase nickname, or null if the API has rate-limited the request
+   */
+  private Map<String, PremiumResponse> parseBulk(HttpResponse<String> response) {
+    int statusCode = response.statusCode();
+
+    if (this.statusCodeRateLimit.contains(statusCode)) {
+      return null;
+    }
+
+    if (!this.bulkStatusCodeOk.contains(statusCode)) {
+      throw new IllegalStateException("Unexpected bulk isPremium API response code: " + statusCode);
+    }
+
+    Map<String, PremiumResponse> responses = new HashMap<>();
+    for (JsonElement jsonElement : JsonParser.parseString(response.body()).getAsJsonArray()) {
+      if (!(jsonElement instanceof JsonObject object) || !PremiumBackend.validateScheme(object, this.bulkValidatorFields)
+          || !object.has(this.bulkNameField) || !object.has(this.bulkUuidField)) {
+        throw new IllegalStateException("Invalid bulk isPremium API response: " + jsonElement);
+      }
+
+      responses.put(
+          object.get(this.bulkNameField).getAsString().toLowerCase(Locale.ROOT),
+          new PremiumResponse(PremiumState.PREMIUM_USERNAME, object.get(this.bulkUuidField).getAsString())
+      );
+    }
+
+    return responses;
+  }
+
+  private static class BulkLookup {
+
+    private final CompletableFuture<PremiumResponse> future = new CompletableFuture<>();
+    private final String nickname;
+
+    BulkLookup(String nickname) {
+      this.nickname = nickname;
+    }
+  }
+}
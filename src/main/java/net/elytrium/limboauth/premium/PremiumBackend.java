@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.premium;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import net.elytrium.limboauth.LimboAuth.PremiumResponse;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.concurrent.CircuitBreaker;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * One of the interchangeable isPremium APIs: ISPREMIUM_AUTH_URL or one of ISPREMIUM_MIRRORS.
+ */
+public class PremiumBackend {
+
+  private final String url;
+  private final List<Integer> userExistsStatusCodes;
+  private final List<Integer> userNotExistsStatusCodes;
+  private final List<Integer> rateLimitStatusCodes;
+  private final List<String> userExistsValidatorFields;
+  private final String uuidField;
+  private final List<String> userNotExistsValidatorFields;
+  @Nullable
+  private final CircuitBreaker circuitBreaker;
+
+  public PremiumBackend(String url, List<Integer> userExistsStatusCodes, List<Integer> userNotExistsStatusCodes, List<Integer> rateLimitStatusCodes,
+      List<String> userExistsValidatorFields, String uuidField, List<String> userNotExistsValidatorFields, @Nullable CircuitBreaker circuitBreaker) {
+    this.url = url;
+    this.userExistsStatusCodes = userExistsStatusCodes;
+    this.userNotExistsStatusCodes = userNotExistsStatusCodes;
+    this.rateLimitStatusCodes = rateLimitStatusCodes;
+    this.userExistsValidatorFields = userExistsValidatorFields;
+    this.uuidField = uuidField;
+    this.userNotExistsValidatorFields = userNotExistsValidatorFields;
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * @return ISPREMIUM_AUTH_URL with its status codes and JSON parameters
+   */
+  public static PremiumBackend fromSettings(Settings.MAIN settings, @Nullable CircuitBreaker circuitBreaker) {
+    return new PremiumBackend(
+        settings.ISPREMIUM_AUTH_URL,
+        settings.STATUS_CODE_USER_EXISTS,
+        settings.STATUS_CODE_USER_NOT_EXISTS,
+        settings.STATUS_CODE_RATE_LIMIT,
+        settings.USER_EXISTS_JSON_VALIDATOR_FIELDS,
+        settings.JSON_UUID_FIELD,
+        settings.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS,
+        circuitBreaker
+    );
+  }
+
+  /**
+   * @return the ISPREMIUM_MIRRORS entry, its omitted parameters are taken from ISPREMIUM_AUTH_URL ones
+   */
+  public static PremiumBackend fromMirror(Settings.MAIN settings, Settings.MAIN.ISPREMIUM_MIRROR mirror, @Nullable CircuitBreaker circuitBreaker) {
+    return new PremiumBackend(
+        mirror.URL,
+        Objects.requireNonNullElse(mirror.STATUS_CODE_USER_EXISTS, settings.STATUS_CODE_USER_EXISTS),
+        Objects.requireNonNullElse(mirror.STATUS_CODE_USER_NOT_EXISTS, settings.STATUS_CODE_USER_NOT_EXISTS),
+        Objects.requireNonNullElse(mirror.STATUS_CODE_RATE_LIMIT, settings.STATUS_CODE_RATE_LIMIT),
+        Objects.requireNonNullElse(mirror.USER_EXISTS_JSON_VALIDATOR_FIELDS, settings.USER_EXISTS_JSON_VALIDATOR_FIELDS),
+        Objects.requireNonNullElse(mirror.JSON_UUID_FIELD, settings.JSON_UUID_FIELD),
+        Objects.requireNonNullElse(mirror.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS, settings.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS),
+        circuitBreaker
+    );
+  }
+
+  public HttpRequest createRequest(String nickname, long timeout) {
+    return HttpRequest.newBuilder()
+        .uri(URI.create(String.format(this.url, URLEncoder.encode(nickname, StandardCharsets.UTF_8))))
+        .timeout(Duration.ofMillis(timeout))
+        .build();
+  }
+
+  public PremiumResponse parse(HttpResponse<String> response) {
+    int statusCode = response.statusCode();
+
+    if (this.rateLimitStatusCodes.contains(statusCode)) {
+      return new PremiumResponse(PremiumState.RATE_LIMIT);
+    }
+
+    JsonElement jsonElement = JsonParser.parseString(response.body());
+
+    if (this.userExistsStatusCodes.contains(statusCode) && validateScheme(jsonElement, this.userExistsValidatorFields)) {
+      return new PremiumResponse(PremiumState.PREMIUM_USERNAME, ((JsonObject) jsonElement).get(this.uuidField).getAsString());
+    }
+
+    if (this.userNotExistsStatusCodes.contains(statusCode) && validateScheme(jsonElement, this.userNotExistsValidatorFields)) {
+      return new PremiumResponse(PremiumState.CRACKED);
+    }
+
+    return new PremiumResponse(PremiumState.ERROR);
+  }
+
+  static boolean validateScheme(JsonElement jsonElement, List<String> scheme) {
+    if (!scheme.isEmpty()) {
+      if (!(jsonElement instanceof JsonObject)) {
+        return false;
+      }
+
+      JsonObject object = (JsonObject) jsonElement;
+      for (String field : scheme) {
+        if (!object.has(field)) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  public String getUrl() {
+    return this.url;
+  }
+
+  @Nullable
+  public CircuitBreaker getCircuitBreaker() {
+    return this.circuitBreaker;
+  }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.premium;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.LimboAuth.CachedPremiumUser;
+import net.elytrium.limboauth.LimboAuth.PremiumResponse;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.cache.ExpiringCache;
+import net.elytrium.limboauth.cache.SharedCache;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Combines the premium state responses of the internal and external checks and caches the result.
+ */
+public class PremiumChecker {
+
+  private static final int STORE_VERSION = 1;
+
+  private final ExpiringCache<String, CachedPremiumUser> premiumCache;
+  private final Function<UUID, CompletableFuture<Boolean>> premiumUuidCheck;
+  @Nullable
+  private final SharedCache sharedCache;
+  private final String sharedKeyPrefix;
+  private final long sharedTimeout;
+
+  public PremiumChecker(ExpiringCache<String, CachedPremiumUser> premiumCache, Function<UUID, CompletableFuture<Boolean>> premiumUuidCheck) {
+    this(premiumCache, premiumUuidCheck, null, "", 0);
+  }
+
+  /**
+   * @param sharedCache the premium states are also stored there, so the other proxies don't repeat the lookups
+   * @param sharedKeyPrefix SHARED_CACHE.KEY_PREFIX, the checker is re-created by the reload if it changes
+   * @param sharedTimeout SHARED_CACHE.TIMEOUT
+   */
+  public PremiumChecker(ExpiringCache<String, CachedPremiumUser> premiumCache, Function<UUID, CompletableFuture<Boolean>> premiumUuidCheck,
+      @Nullable SharedCache sharedCache, String sharedKeyPrefix, long sharedTimeout) {
+    this.premiumCache = premiumCache;
+    this.premiumUuidCheck = premiumUuidCheck;
+    this.sharedCache = sharedCache;
+    this.sharedKeyPrefix = sharedKeyPrefix;
+    this.sharedTimeout = sharedTimeout;
+  }
+
+  /**
+   * Queries the functions in the given order until one of them returns a definite answer, the next one is queried after the previous completes.
+   *
+   * @param settings the settings of the current login, the fallbacks for the unknown states are taken from them
+   */
+  @SafeVarargs
+  public final CompletableFuture<Boolean> isPremium(Settings.MAIN settings, String nickname,
+      Function<String, CompletableFuture<PremiumResponse>>... functions) {
+    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    return this.getCachedLowercased(lowercaseNickname).thenCompose(premiumUser -> {
+      if (premiumUser != null) {
+        return CompletableFuture.completedFuture(premiumUser.isPremium());
+      }
+
+      return this.query(settings, lowercaseNickname, functions, 0, new Responses());
+    });
+  }
+
+  private CompletableFuture<Boolean> query(Settings.MAIN settings, String lowercaseNickname,
+      Function<String, CompletableFuture<PremiumResponse>>[] functions, int index, Responses responses) {
+    if (index == functions.length) {
+      return this.resolve(settings, lowercaseNickname, responses);
+    }
+
+    CompletableFuture<PremiumResponse> response;
+    try {
+      response = functions[index].apply(lowercaseNickname);
+    } catch (Throwable t) {
+      response = CompletableFuture.failedFuture(t);
+    }
+
+    return response.exceptionally(throwable -> {
+      LimboAuth.getLogger().error("Unable to check player account state.", throwable);
+      return new PremiumResponse(PremiumState.ERROR);
+    }).thenCompose(check -> {
+      if (check.getUuid() != null) {
+        responses.uuid = check.getUuid();
+      }
+
+      switch (check.getState()) {
+        case CRACKED: {
+          return CompletableFuture.completedFuture(this.setPremiumLowercased(lowercaseNickname, false).isPremium());
+        }
+        case PREMIUM: {
+          return CompletableFuture.completedFuture(this.setForcedPremiumLowercased(lowercaseNickname, true).isPremium());
+        }
+        case PREMIUM_USERNAME: {
+          responses.premium = true;
+          break;
+        }
+        case UNKNOWN: {
+          responses.unknown = true;
+          break;
+        }
+        case RATE_LIMIT: {
+          responses.wasRateLimited = true;
+          break;
+        }
+        default:
+        case ERROR: {
+          responses.wasError = true;
+          break;
+        }
+      }
+
+      return this.query(settings, lowercaseNickname, functions, index + 1, responses);
+    });
+  }
+
+  private CompletableFuture<Boolean> resolve(Settings.MAIN settings, String lowercaseNickname, Responses responses) {
+    if (!responses.unknown || responses.uuid == null) {
+      return CompletableFuture.completedFuture(this.resolveUncertain(settings, lowercaseNickname, responses));
+    }
+
+    return this.premiumUuidCheck.apply(responses.uuid).thenApply(premiumUuid -> premiumUuid
+        ? this.setForcedPremiumLowercased(lowercaseNickname, true).isPremium()
+        : this.resolveUncertain(settings, lowercaseNickname, responses));
+  }
+
+  private boolean resolveUncertain(Settings.MAIN settings, String lowercaseNickname, Responses responses) {
+    if (responses.unknown && settings.ONLINE_MODE_NEED_AUTH) {
+      return false;
+    }
+
+    if (responses.wasRateLimited && responses.unknown || responses.wasRateLimited && responses.wasError) {
+      return settings.ON_RATE_LIMIT_PREMIUM;
+    }
+
+    if (responses.wasError && responses.unknown || !responses.premium) {
+      return settings.ON_SERVER_ERROR_PREMIUM;
+    }
+
+    return this.setPremiumLowercased(lowercaseNickname, true).isPremium();
+  }
+
+  /**
+   * Completes with null if the state isn't cached, the shared cache is asked without blocking the caller.
+   */
+  public CompletableFuture<CachedPremiumUser> getCachedLowercased(String lowercasedNickname) {
+    CachedPremiumUser premiumUser = this.premiumCache.get(lowercasedNickname);
+    if (premiumUser != null || this.sharedCache == null) {
+      return CompletableFuture.completedFuture(premiumUser);
+    }
+
+    return this.sharedCache.get(this.getSharedKey(lowercasedNickname))
+        .exceptionally(throwable -> null)
+        .completeOnTimeout(null, this.sharedTimeout, TimeUnit.MILLISECONDS)
+        .thenApply(value -> value == null ? null : CachedPremiumUser.deserialize(value));
+  }
+
+  public CachedPremiumUser setForcedPremiumLowercased(String lowercasedNickname, boolean value) {
+    return this.put(lowercasedNickname, value, value);
+  }
+
+  public CachedPremiumUser setPremiumLowercased(String lowercasedNickname, boolean value) {
+    return this.put(lowercasedNickname, value, false);
+  }
+
+  public void removeLowercased(String lowercasedNickname) {
+    this.premiumCache.remove(lowercasedNickname);
+    if (this.sharedCache != null) {
+      this.sharedCache.delete(this.getSharedKey(lowercasedNickname));
+    }
+  }
+
+  /**
+   * Marks the cached premium state as verified by the online-mode authentication.
+   */
+  public void forcePremiumLowercased(String lowercasedNickname, CachedPremiumUser premiumUser) {
+    premiumUser.setForcePremium(true);
+    if (this.sharedCache != null) {
+      long ttl = this.premiumCache.getTtl() - (System.currentTimeMillis() - premiumUser.getCheckTime());
+      if (ttl > 0) {
+        this.sharedCache.set(this.getSharedKey(lowercasedNickname), premiumUser.serialize(), ttl);
+      }
+    }
+  }
+
+  /**
+   * Removes the premium state from the local cache only, e.g. when another proxy has removed it from the shared cache.
+   */
+  public void invalidateLocalLowercased(String lowercasedNickname) {
+    this.premiumCache.remove(lowercasedNickname);
+  }
+
+  private CachedPremiumUser put(String lowercasedNickname, boolean premium, boolean forcePremium) {
+    CachedPremiumUser premiumUser = new CachedPremiumUser(System.currentTimeMillis(), premium);
+    premiumUser.setForcePremium(forcePremium);
+    this.premiumCache.put(lowercasedNickname, premiumUser);
+    if (this.sharedCache != null) {
+      this.sharedCache.set(this.getSharedKey(lowercasedNickname), premiumUser.serialize(), this.premiumCache.getTtl());
+    }
+
+    return premiumUser;
+  }
+
+  private String getSharedKey(String lowercasedNickname) {
+    return this.sharedKeyPrefix + "premium:" + lowercasedNickname;
+  }
+
+  /**
+   * Writes the cached premium states to the file, so they survive restarts and reloads.
+   */
+  public void save(Path path) throws IOException {
+    List<Map.Entry<String, CachedPremiumUser>> entries = new ArrayList<>();
+    this.premiumCache.forEach((nickname, premiumUser) -> entries.add(Map.entry(nickname, premiumUser)));
+
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      output.writeInt(STORE_VERSION);
+      output.writeInt(entries.size());
+      for (Map.Entry<String, CachedPremiumUser> entry : entries) {
+        CachedPremiumUser premiumUser = entry.getValue();
+        output.writeUTF(entry.getKey());
+        output.writeLong(premiumUser.getCheckTime());
+        output.writeBoolean(premiumUser.isPremium());
+        output.writeBoolean(premiumUser.isForcePremium());
+      }
+    }
+
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Restores the premium states written by {@link #save(Path)}, the expired ones are skipped.
+   */
+  public void load(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return;
+    }
+
+    List<Map.Entry<String, CachedPremiumUser>> entries = new ArrayList<>();
+    long expiredBefore = System.currentTimeMillis() - this.premiumCache.getTtl();
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (input.readInt() != STORE_VERSION) {
+        return;
+      }
+
+      int size = input.readInt();
+      for (int i = 0; i < size; ++i) {
+        String nickname = input.readUTF();
+        CachedPremiumUser premiumUser = new CachedPremiumUser(input.readLong(), input.readBoolean());
+        premiumUser.setForcePremium(input.readBoolean());
+        if (premiumUser.getCheckTime() > expiredBefore) {
+          entries.add(Map.entry(nickname, premiumUser));
+        }
+      }
+    }
+
+    // The cache expects the entries to be put in the order of their creation
+    entries.sort(Comparator.comparingLong(entry -> entry.getValue().getCheckTime()));
+    for (Map.Entry<String, CachedPremiumUser> entry : entries) {
+      this.premiumCache.put(entry.getKey(), entry.getValue(), entry.getValue().getCheckTime());
+    }
+  }
+
+  public ExpiringCache<String, CachedPremiumUser> getCache() {
+    return this.premiumCache;
+  }
+
+  /**
+   * The answers of the functions queried so far.
+   */
+  private static class Responses {
+
+    private boolean premium;
+    private boolean unknown;
+    private boolean wasRateLimited;
+    private boolean wasError;
+    private UUID uuid;
+  }
+}
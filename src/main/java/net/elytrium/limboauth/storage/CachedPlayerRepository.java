@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.storage;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Read-through cache of the registered players keyed by the lowercase nickname, with the secondary premium uuid index.
+ * Writes are applied to the cache immediately and persisted by the delegate in the background,
+ * the entry is invalidated if the write fails.
+ *
+ * <p>Missing players are cached only until the next lookup, so they are not kept past one login.
+ */
+public class CachedPlayerRepository implements PlayerRepository {
+
+  private final PlayerRepository delegate;
+  private final long ttl;
+  private final Map<String, Entry> nicknameCache;
+  private final Map<String, Entry> premiumUuidCache;
+  /**
+   * Premium uuids of the cached players, so invalidating the nickname drops the premium uuid entry even if the nickname entry was evicted.
+   */
+  private final Map<String, String> premiumUuids;
+  /**
+   * Sequence number of the last invalidation of the nickname, queries started before it don't put the outdated player to the cache.
+   */
+  private final Map<String, Long> invalidations;
+  private final AtomicLong sequence = new AtomicLong();
+  /**
+   * The latest sequence number evicted from the invalidations, queries started before it are not cached as they can't be checked.
+   */
+  private long evictedInvalidation;
+
+  public CachedPlayerRepository(PlayerRepository delegate, long ttl, int maxSize) {
+    this.delegate = delegate;
+    this.ttl = ttl;
+    this.nicknameCache = createCache(maxSize);
+    this.premiumUuidCache = createCache(maxSize);
+    this.premiumUuids = createCache(maxSize);
+    this.invalidations = new LinkedHashMap<>(16, 0.75F, false) {
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        if (this.size() > maxSize) {
+          CachedPlayerRepository.this.evictedInvalidation = eldest.getValue();
+          return true;
+        }
+
+        return false;
+      }
+    };
+  }
+
+  private static <K, V> Map<K, V> createCache(int maxSize) {
+    return new LinkedHashMap<>(16, 0.75F, true) {
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return this.size() > maxSize;
+      }
+    };
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByNickname(String lowercaseNickname) {
+    Entry entry = this.get(this.nicknameCache, lowercaseNickname);
+    if (entry != null) {
+      return CompletableFuture.completedFuture(entry.player);
+    }
+
+    long sequence = this.sequence.get();
+    return this.delegate.findByNickname(lowercaseNickname).thenApply(player -> {
+      synchronized (this) {
+        if (this.isUpToDate(sequence, lowercaseNickname)) {
+          this.nicknameCache.put(lowercaseNickname, new Entry(player, this.expiresAt()));
+        }
+      }
+
+      return player;
+    });
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByPremiumUuid(UUID premiumUuid) {
+    Entry entry = this.get(this.premiumUuidCache, premiumUuid.toString());
+    if (entry != null) {
+      return CompletableFuture.completedFuture(entry.player);
+    }
+
+    long sequence = this.sequence.get();
+    return this.delegate.findByPremiumUuid(premiumUuid).thenApply(player -> {
+      synchronized (this) {
+        if (player == null) {
+          // The player that was registered while the query was running is not replaced
+          this.premiumUuidCache.putIfAbsent(premiumUuid.toString(), new Entry(null, this.expiresAt()));
+        } else if (this.isUpToDate(sequence, player.getLowercaseNickname())) {
+          this.put(player);
+        }
+      }
+
+      return player;
+    });
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByNicknameOrPremiumUuid(String lowercaseNickname, UUID premiumUuid) {
+    synchronized (this) {
+      Entry nicknameEntry = this.get(this.nicknameCache, lowercaseNickname);
+      Entry premiumUuidEntry = this.get(this.premiumUuidCache, premiumUuid.toString());
+      if (nicknameEntry != null && premiumUuidEntry != null) {
+        if (nicknameEntry.player == null) {
+          return CompletableFuture.completedFuture(premiumUuidEntry.player == null ? List.of() : List.of(premiumUuidEntry.player));
+        } else if (premiumUuidEntry.player == null || premiumUuidEntry.player == nicknameEntry.player) {
+          return CompletableFuture.completedFuture(List.of(nicknameEntry.player));
+        } else {
+          return CompletableFuture.completedFuture(List.of(nicknameEntry.player, premiumUuidEntry.player));
+        }
+      }
+    }
+
+    long sequence = this.sequence.get();
+    return this.delegate.findByNicknameOrPremiumUuid(lowercaseNickname, premiumUuid).thenApply(players -> {
+      synchronized (this) {
+        if (this.isUpToDate(sequence, lowercaseNickname)
+            && players.stream().allMatch(player -> this.isUpToDate(sequence, player.getLowercaseNickname()))) {
+          players.forEach(this::put);
+          long expiresAt = this.expiresAt();
+          this.nicknameCache.putIfAbsent(lowercaseNickname, new Entry(null, expiresAt));
+          this.premiumUuidCache.putIfAbsent(premiumUuid.toString(), new Entry(null, expiresAt));
+        }
+      }
+
+      return players;
+    });
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByIp(String ip) {
+    return this.delegate.findByIp(ip);
+  }
+
+  @Override
+  public CompletableFuture<Long> countByIp(String ip, long registeredAfter) {
+    return this.delegate.countByIp(ip, registeredAfter);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> exists(String lowercaseNickname) {
+    return this.findByNickname(lowercaseNickname).thenApply(player -> player != null);
+  }
+
+  @Override
+  public CompletableFuture<PremiumState> getPremiumState(String lowercaseNickname) {
+    // Fetch the whole player, so the next login stages don't query it again
+    return this.findByNickname(lowercaseNickname).thenApply(RegisteredPlayer::getPremiumState);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> isPremiumUuid(UUID premiumUuid) {
+    Entry entry = this.get(this.premiumUuidCache, premiumUuid.toString());
+    if (entry != null) {
+      return CompletableFuture.completedFuture(entry.player != null && entry.player.getHash().isEmpty());
+    }
+
+    return this.delegate.isPremiumUuid(premiumUuid);
+  }
+
+  @Override
+  public CompletableFuture<Long> count() {
+    return this.delegate.count();
+  }
+
+  @Override
+  public CompletableFuture<Void> create(RegisteredPlayer player) {
+    this.put(player);
+    return this.invalidateOnFailure(player.getLowercaseNickname(), this.delegate.create(player));
+  }
+
+  @Override
+  public CompletableFuture<Void> update(RegisteredPlayer player) {
+    this.put(player);
+    return this.invalidateOnFailure(player.getLowercaseNickname(), this.delegate.update(player));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateHash(String lowercaseNickname, String hash) {
+    this.invalidate(lowercaseNickname);
+    return this.delegate.updateHash(lowercaseNickname, hash).whenComplete((result, throwable) -> this.invalidate(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateTotpToken(String lowercaseNickname, String totpToken) {
+    this.invalidate(lowercaseNickname);
+    return this.delegate.updateTotpToken(lowercaseNickname, totpToken).whenComplete((result, throwable) -> this.invalidate(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateLoginData(String lowercaseNickname, String loginIp, long loginDate) {
+    Entry entry = this.get(this.nicknameCache, lowercaseNickname);
+    if (entry != null && entry.player != null) {
+      entry.player.setLoginIp(loginIp);
+      entry.player.setLoginDate(loginDate);
+    }
+
+    return this.invalidateOnFailure(lowercaseNickname, this.delegate.updateLoginData(lowercaseNickname, loginIp, loginDate));
+  }
+
+  @Override
+  public CompletableFuture<Void> delete(String lowercaseNickname) {
+    this.invalidate(lowercaseNickname);
+    return this.delegate.delete(lowercaseNickname).whenComplete((result, throwable) -> this.invalidate(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Integer> clearRegistrationIps(long registeredBefore) {
+    return this.delegate.clearRegistrationIps(registeredBefore).whenComplete((cleared, throwable) -> {
+      // Otherwise updating the cached player would write the cleared IP back
+      synchronized (this) {
+        this.nicknameCache.values().forEach(entry -> {
+          if (entry.player != null && entry.player.getRegDate() < registeredBefore) {
+            entry.player.setIP("");
+          }
+        });
+      }
+    });
+  }
+
+  @Override
+  public synchronized void invalidate(String lowercaseNickname) {
+    this.invalidations.put(lowercaseNickname, this.sequence.incrementAndGet());
+    this.nicknameCache.remove(lowercaseNickname);
+    String premiumUuid = this.premiumUuids.remove(lowercaseNickname);
+    if (premiumUuid != null) {
+      this.premiumUuidCache.remove(premiumUuid);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return this.delegate.flush();
+  }
+
+  @Override
+  public void shutdown() {
+    this.delegate.shutdown();
+  }
+
+  private synchronized <K> Entry get(Map<K, Entry> cache, K key) {
+    Entry entry = cache.get(key);
+    if (entry == null) {
+      return null;
+    }
+
+    boolean expired = entry.expiresAt < System.currentTimeMillis();
+    // Missing players are only cached for the next lookup of the same login, the player may register on the other proxy afterwards
+    if (expired || entry.player == null) {
+      cache.remove(key);
+    }
+
+    return expired ? null : entry;
+  }
+
+  private synchronized void put(RegisteredPlayer player) {
+    long expiresAt = this.expiresAt();
+    this.nicknameCache.put(player.getLowercaseNickname(), new Entry(player, expiresAt));
+    String previousPremiumUuid = player.getPremiumUuid().isEmpty()
+        ? this.premiumUuids.remove(player.getLowercaseNickname())
+        : this.premiumUuids.put(player.getLowercaseNickname(), player.getPremiumUuid());
+    if (previousPremiumUuid != null && !previousPremiumUuid.equals(player.getPremiumUuid())) {
+      this.premiumUuidCache.remove(previousPremiumUuid);
+    }
+
+    if (!player.getPremiumUuid().isEmpty()) {
+      this.premiumUuidCache.put(player.getPremiumUuid(), new Entry(player, expiresAt));
+    }
+  }
+
+  /**
+   * @return whether the nickname wasn't invalidated since the query with this sequence number was started
+   */
+  private boolean isUpToDate(long sequence, String lowercaseNickname) {
+    return sequence >= this.evictedInvalidation && this.invalidations.getOrDefault(lowercaseNickname, 0L) <= sequence;
+  }
+
+  private CompletableFuture<Void> invalidateOnFailure(String lowercaseNickname, CompletableFuture<Void> future) {
+    return future.whenComplete((result, throwable) -> {
+      if (throwable != null) {
+        this.invalidate(lowercaseNickname);
+      }
+    });
+  }
+
+  private long expiresAt() {
+    return System.currentTimeMillis() + this.ttl;
+  }
+
+  private static class Entry {
+
+    private final RegisteredPlayer player;
+    private final long expiresAt;
+
+    Entry(RegisteredPlayer player, long expiresAt) {
+      this.player = player;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.elytrium.limboauth.storage;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Repository that routes the queries to the current delegate, which can be replaced without dropping the queries.
+ * The replaced delegate keeps completing the queries started on it and is shut down once they are done.
+ */
+public class HotSwapPlayerRepository implements PlayerRepository {
+
+  private static final long DRAIN_CHECK_INTERVAL = 50;
+
+  private volatile Target current;
+
+  public HotSwapPlayerRepository(PlayerRepository delegate) {
+    this.current = new Target(delegate);
+  }
+
+  /**
+   * Routes the new queries to the next delegate, then waits until the queries of the previous delegate are completed and shuts it down.
+   *
+   * @param drainTimeout time in milliseconds to wait for the queries of the previous delegate
+   * @return future completed after the previous delegate was shut down, with false if some of its queries were not completed in time
+   */
+  public CompletableFuture<Boolean> swap(PlayerRepository next, long drainTimeout) {
+    Target previous = this.current;
+    this.current = new Target(next);
+
+    CompletableFuture<Boolean> future = new CompletableFuture<>();
+    Thread thread = new Thread(() -> {
+      try {
+        future.complete(previous.drain(drainTimeout));
+      } catch (Throwable e) {
+        future.completeExceptionally(e);
+      }
+    }, "LimboAuth Database Drain");
+    thread.setDaemon(true);
+    thread.start();
+    return future;
+  }
+
+  public PlayerRepository getDelegate() {
+    return this.current.delegate;
+  }
+
+  private <T> CompletableFuture<T> call(Function<PlayerRepository, CompletableFuture<T>> query) {
+    while (true) {
+      Target target = this.current;
+      target.inFlight.incrementAndGet();
+      // The delegate may have been replaced and drained before the counter was incremented, the query is routed to the new one then
+      if (this.current != target) {
+        target.inFlight.decrementAndGet();
+        continue;
+      }
+
+      CompletableFuture<T> future;
+      try {
+        future = query.apply(target.delegate);
+      } catch (RuntimeException e) {
+        target.inFlight.decrementAndGet();
+        throw e;
+      }
+
+      return future.whenComplete((result, throwable) -> target.inFlight.decrementAndGet());
+    }
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByNickname(String lowercaseNickname) {
+    return this.call(delegate -> delegate.findByNickname(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByPremiumUuid(UUID premiumUuid) {
+    return this.call(delegate -> delegate.findByPremiumUuid(premiumUuid));
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByNicknameOrPremiumUuid(String lowercaseNickname, UUID premiumUuid) {
+    return this.call(delegate -> delegate.findByNicknameOrPremiumUuid(lowercaseNickname, premiumUuid));
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByIp(String ip) {
+    return this.call(delegate -> delegate.findByIp(ip));
+  }
+
+  @Override
+  public CompletableFuture<Long> countByIp(String ip, long registeredAfter) {
+    return this.call(delegate -> delegate.countByIp(ip, registeredAfter));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> exists(String lowercaseNickname) {
+    return this.call(delegate -> delegate.exists(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<PremiumState> getPremiumState(String lowercaseNickname) {
+    return this.call(delegate -> delegate.getPremiumState(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> isPremiumUuid(UUID premiumUuid) {
+    return this.call(delegate -> delegate.isPremiumUuid(premiumUuid));
+  }
+
+  @Override
+  public CompletableFuture<Long> count() {
+    return this.call(PlayerRepository::count);
+  }
+
+  @Override
+  public CompletableFuture<Void> create(RegisteredPlayer player) {
+    return this.call(delegate -> delegate.create(player));
+  }
+
+  @Override
+  public CompletableFuture<Void> update(RegisteredPlayer player) {
+    return this.call(delegate -> delegate.update(player));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateHash(String lowercaseNickname, String hash) {
+    return this.call(delegate -> delegate.updateHash(lowercaseNickname, hash));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateTotpToken(String lowercaseNickname, String totpToken) {
+    return this.call(delegate -> delegate.updateTotpToken(lowercaseNickname, totpToken));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateLoginData(String lowercaseNickname, String loginIp, long loginDate) {
+    return this.call(delegate -> delegate.updateLoginData(lowercaseNickname, loginIp, loginDate));
+  }
+
+  @Override
+  public CompletableFuture<Void> delete(String lowercaseNickname) {
+    return this.call(delegate -> delegate.delete(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Integer> clearRegistrationIps(long registeredBefore) {
+    return this.call(delegate -> delegate.clearRegistrationIps(registeredBefore));
+  }
+
+  @Override
+  public void invalidate(String lowercaseNickname) {
+    this.current.delegate.invalidate(lowercaseNickname);
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return this.current.delegate.flush();
+  }
+
+  @Override
+  public void shutdown() {
+    this.current.delegate.shutdown();
+  }
+
+  private static class Target {
+
+    private final PlayerRepository delegate;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private Target(PlayerRepository delegate) {
+      this.delegate = delegate;
+    }
+
+    private boolean drain(long timeout) throws InterruptedException {
+      // The batched updates are only completed when written, so they are written now instead of after the flush interval
+      this.flush();
+      long deadline = System.currentTimeMillis() + timeout;
+      while (this.inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(DRAIN_CHECK_INTERVAL);
+      }
+
+      boolean completed = this.inFlight.get() == 0;
+      if (!completed) {
+        LimboAuth.getLogger().warn("{} database queries were not completed within {} ms after the database reload.", this.inFlight.get(), timeout);
+      }
+
+      this.delegate.shutdown();
+      return completed;
+    }
+
+    private void flush() {
+      try {
+        this.delegate.flush().join();
+      } catch (CompletionException e) {
+        LimboAuth.getLogger().error("Unable to write the batched database updates.", e.getCause());
+      }
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.storage;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Runs the queries of the login path with plain JDBC: the prepared statements are cached per pooled connection,
+ * the state checks select only the needed columns, and the rows are mapped without the ORMLite reflection.
+ * The rest of the queries are run by ORMLite.
+ */
+public class JdbcPlayerRepository extends OrmLitePlayerRepository {
+
+  private static final String[] COLUMNS = {
+      RegisteredPlayer.NICKNAME_FIELD,
+      RegisteredPlayer.LOWERCASE_NICKNAME_FIELD,
+      RegisteredPlayer.HASH_FIELD,
+      RegisteredPlayer.IP_FIELD,
+      RegisteredPlayer.TOTP_TOKEN_FIELD,
+      RegisteredPlayer.REG_DATE_FIELD,
+      RegisteredPlayer.UUID_FIELD,
+      RegisteredPlayer.PREMIUM_UUID_FIELD,
+      RegisteredPlayer.LOGIN_IP_FIELD,
+      RegisteredPlayer.LOGIN_DATE_FIELD,
+      RegisteredPlayer.TOKEN_ISSUED_AT_FIELD
+  };
+
+  private final ConnectionSource connectionSource;
+  private final String tableName;
+  /**
+   * Pooled connections are handed to one thread at a time, so their statements are not shared between the threads.
+   */
+  private final Map<Connection, Map<String, PreparedStatement>> statements = new IdentityHashMap<>();
+
+  private final String findByNicknameQuery;
+  private final String findByPremiumUuidQuery;
+  private final String findByNicknameOrPremiumUuidQuery;
+  private final String hashByNicknameQuery;
+  private final String premiumByPremiumUuidQuery;
+  private final String countByIpQuery;
+  private final String countByIpSinceQuery;
+  private final String updateHashQuery;
+  private final String updateTotpTokenQuery;
+
+  /**
+   * @see OrmLitePlayerRepository#OrmLitePlayerRepository(Dao, int, long, int)
+   */
+  public JdbcPlayerRepository(Dao<RegisteredPlayer, String> playerDao, int threads, long loginDataFlushInterval, int loginDataBatchSize) {
+    super(playerDao, threads, loginDataFlushInterval, loginDataBatchSize);
+    this.connectionSource = playerDao.getConnectionSource();
+    this.tableName = playerDao.getTableName();
+    if (this.connectionSource instanceof MonitoredConnectionSource monitoredConnectionSource) {
+      // The connections retired by age are otherwise dropped only once another connection is opened
+      monitoredConnectionSource.addCloseListener(this::evict);
+    }
+
+    DatabaseType databaseType = this.connectionSource.getDatabaseType();
+    String allColumns = this.select(databaseType, COLUMNS);
+    this.findByNicknameQuery = allColumns + this.where(databaseType, RegisteredPlayer.LOWERCASE_NICKNAME_FIELD);
+    this.findByPremiumUuidQuery = allColumns + this.where(databaseType, RegisteredPlayer.PREMIUM_UUID_FIELD);
+    this.findByNicknameOrPremiumUuidQuery = this.findByNicknameQuery
+        + " OR " + this.escape(databaseType, RegisteredPlayer.PREMIUM_UUID_FIELD) + " = ?";
+    this.hashByNicknameQuery = this.select(databaseType, RegisteredPlayer.HASH_FIELD)
+        + this.where(databaseType, RegisteredPlayer.LOWERCASE_NICKNAME_FIELD);
+    this.premiumByPremiumUuidQuery = this.select(databaseType, RegisteredPlayer.LOWERCASE_NICKNAME_FIELD)
+        + this.where(databaseType, RegisteredPlayer.PREMIUM_UUID_FIELD) + " AND " + this.escape(databaseType, RegisteredPlayer.HASH_FIELD) + " = ''";
+    this.countByIpQuery = "SELECT COUNT(*) FROM " + this.escape(databaseType, this.tableName) + this.where(databaseType, RegisteredPlayer.IP_FIELD);
+    this.countByIpSinceQuery = this.countByIpQuery + " AND " + this.escape(databaseType, RegisteredPlayer.REG_DATE_FIELD) + " >= ?";
+    this.updateHashQuery = this.updateQuery(databaseType, RegisteredPlayer.HASH_FIELD);
+    this.updateTotpTokenQuery = this.updateQuery(databaseType, RegisteredPlayer.TOTP_TOKEN_FIELD);
+  }
+
+  private String escape(DatabaseType databaseType, String name) {
+    StringBuilder builder = new StringBuilder();
+    databaseType.appendEscapedEntityName(builder, name);
+    return builder.toString();
+  }
+
+  private String select(DatabaseType databaseType, String... columns) {
+    StringBuilder query = new StringBuilder("SELECT ");
+    for (int i = 0; i < columns.length; ++i) {
+      if (i != 0) {
+        query.append(", ");
+      }
+
+      databaseType.appendEscapedEntityName(query, columns[i]);
+    }
+
+    query.append(" FROM ");
+    databaseType.appendEscapedEntityName(query, this.tableName);
+    return query.toString();
+  }
+
+  private String where(DatabaseType databaseType, String column) {
+    return " WHERE " + this.escape(databaseType, column) + " = ?";
+  }
+
+  private String updateQuery(DatabaseType databaseType, String column) {
+    return "UPDATE " + this.escape(databaseType, this.tableName) + " SET " + this.escape(databaseType, column) + " = ?"
+        + this.where(databaseType, RegisteredPlayer.LOWERCASE_NICKNAME_FIELD);
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByNickname(String lowercaseNickname) {
+    return this.supply(() -> this.query(this.findByNicknameQuery, resultSet -> resultSet.next() ? this.map(resultSet) : null, lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByPremiumUuid(UUID premiumUuid) {
+    return this.supply(() -> this.query(this.findByPremiumUuidQuery, resultSet -> resultSet.next() ? this.map(resultSet) : null, premiumUuid.toString()));
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByNicknameOrPremiumUuid(String lowercaseNickname, UUID premiumUuid) {
+    return this.supply(() -> this.query(this.findByNicknameOrPremiumUuidQuery, resultSet -> {
+      List<RegisteredPlayer> players = new ArrayList<>(2);
+      while (resultSet.next()) {
+        players.add(this.map(resultSet));
+      }
+
+      return players;
+    }, lowercaseNickname, premiumUuid.toString()));
+  }
+
+  @Override
+  public CompletableFuture<Long> countByIp(String ip, long registeredAfter) {
+    ResultSetMapper<Long> mapper = resultSet -> resultSet.next() ? resultSet.getLong(1) : 0;
+    return this.supply(() -> registeredAfter > 0
+        ? this.query(this.countByIpSinceQuery, mapper, ip, registeredAfter)
+        : this.query(this.countByIpQuery, mapper, ip));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> exists(String lowercaseNickname) {
+    return this.getPremiumState(lowercaseNickname).thenApply(state -> state != PremiumState.UNKNOWN);
+  }
+
+  @Override
+  public CompletableFuture<PremiumState> getPremiumState(String lowercaseNickname) {
+    return this.supply(() -> this.query(this.hashByNicknameQuery, resultSet -> {
+      if (!resultSet.next()) {
+        return PremiumState.UNKNOWN;
+      }
+
+      String hash = resultSet.getString(1);
+      return hash == null || hash.isEmpty() ? PremiumState.PREMIUM : PremiumState.CRACKED;
+    }, lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> isPremiumUuid(UUID premiumUuid) {
+    return this.supply(() -> this.query(this.premiumByPremiumUuidQuery, ResultSet::next, premiumUuid.toString()));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateHash(String lowercaseNickname, String hash) {
+    return this.run(() -> this.update(this.updateHashQuery, hash, lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateTotpToken(String lowercaseNickname, String totpToken) {
+    return this.run(() -> this.update(this.updateTotpTokenQuery, totpToken, lowercaseNickname));
+  }
+
+  @SuppressWarnings("deprecation")
+  private RegisteredPlayer map(ResultSet resultSet) throws SQLException {
+    return new RegisteredPlayer(
+        resultSet.getString(1),
+        resultSet.getString(2),
+        resultSet.getString(3),
+        resultSet.getString(4),
+        resultSet.getString(5),
+        this.getLong(resultSet, 6),
+        resultSet.getString(7),
+        resultSet.getString(8),
+        resultSet.getString(9),
+        this.getLong(resultSet, 10)
+    ).setTokenIssuedAt(this.getLong(resultSet, 11));
+  }
+
+  private Long getLong(ResultSet resultSet, int column) throws SQLException {
+    long value = resultSet.getLong(column);
+    return resultSet.wasNull() ? null : value;
+  }
+
+  private <T> T query(String query, ResultSetMapper<T> mapper, Object... parameters) throws SQLException {
+    DatabaseConnection databaseConnection = this.connectionSource.getReadOnlyConnection(this.tableName);
+    try {
+      PreparedStatement statement = this.prepare(databaseConnection, query, parameters);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return mapper.map(resultSet);
+      }
+    } catch (SQLException e) {
+      this.evict(databaseConnection);
+      throw e;
+    } finally {
+      this.connectionSource.releaseConnection(databaseConnection);
+    }
+  }
+
+  private int update(String query, Object... parameters) throws SQLException {
+    DatabaseConnection databaseConnection = this.connectionSource.getReadWriteConnection(this.tableName);
+    try {
+      return this.prepare(databaseConnection, query, parameters).executeUpdate();
+    } catch (SQLException e) {
+      this.evict(databaseConnection);
+      throw e;
+    } finally {
+      this.connectionSource.releaseConnection(databaseConnection);
+    }
+  }
+
+  private PreparedStatement prepare(DatabaseConnection databaseConnection, String query, Object... parameters) throws SQLException {
+    Connection connection = databaseConnection.getUnderlyingConnection();
+    Map<String, PreparedStatement> connectionStatements;
+    synchronized (this.statements) {
+      connectionStatements = this.statements.get(connection);
+      if (connectionStatements == null) {
+        // The pool has closed some connections, their statements are dropped
+        this.statements.entrySet().removeIf(entry -> this.isClosed(entry.getKey()));
+        connectionStatements = new HashMap<>();
+        this.statements.put(connection, connectionStatements);
+      }
+    }
+
+    PreparedStatement statement = connectionStatements.get(query);
+    if (statement == null || statement.isClosed()) {
+      statement = connection.prepareStatement(query);
+      connectionStatements.put(query, statement);
+    }
+
+    for (int i = 0; i < parameters.length; ++i) {
+      statement.setObject(i + 1, parameters[i]);
+    }
+
+    return statement;
+  }
+
+  private void evict(DatabaseConnection databaseConnection) {
+    Map<String, PreparedStatement> connectionStatements;
+    synchronized (this.statements) {
+      connectionStatements = this.statements.remove(databaseConnection.getUnderlyingConnection());
+    }
+
+    if (connectionStatements != null) {
+      for (PreparedStatement statement : connectionStatements.values()) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          // The connection is probably broken, the statement will not be used anyway
+        }
+      }
+    }
+  }
+
+  private boolean isClosed(Connection connection) {
+    try {
+      return connection.isClosed();
+    } catch (SQLException e) {
+      return true;
+    }
+  }
+
+  @FunctionalInterface
+  private interface ResultSetMapper<T> {
+
+    T map(ResultSet resultSet) throws SQLException;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.storage;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.SQLRuntimeException;
+
+/**
+ * Coalesces the login IP and date updates and writes them in JDBC batches.
+ *
+ * <p>The batch is written when the flush interval passes since the first queued update, or when it reaches the max batch size.
+ * Only the latest update is written if the same player logs in several times within one batch.
+ */
+public class LoginDataBatcher {
+
+  private final Dao<RegisteredPlayer, String> playerDao;
+  private final Executor executor;
+  private final Executor delayedExecutor;
+  private final int maxBatchSize;
+  private final String query;
+
+  private Map<String, PendingUpdate> pending = new LinkedHashMap<>();
+
+  public LoginDataBatcher(Dao<RegisteredPlayer, String> playerDao, Executor executor, long flushInterval, int maxBatchSize) {
+    this.playerDao = playerDao;
+    this.executor = executor;
+    // The delayed flush submits the batch to the executor itself, so a rejection is handled by flush() instead of being lost in the delayer
+    this.delayedExecutor = CompletableFuture.delayedExecutor(flushInterval, TimeUnit.MILLISECONDS);
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+
+    DatabaseType databaseType = playerDao.getConnectionSource().getDatabaseType();
+    StringBuilder query = new StringBuilder("UPDATE ");
+    databaseType.appendEscapedEntityName(query, playerDao.getTableName());
+    query.append(" SET ");
+    databaseType.appendEscapedEntityName(query, RegisteredPlayer.LOGIN_IP_FIELD);
+    query.append(" = ?, ");
+    databaseType.appendEscapedEntityName(query, RegisteredPlayer.LOGIN_DATE_FIELD);
+    query.append(" = ? WHERE ");
+    databaseType.appendEscapedEntityName(query, RegisteredPlayer.LOWERCASE_NICKNAME_FIELD);
+    query.append(" = ?");
+    this.query = query.toString();
+  }
+
+  /**
+   * Queues the update, the future is completed when the batch containing it is written.
+   */
+  public CompletableFuture<Void> add(String lowercaseNickname, String loginIp, long loginDate) {
+    PendingUpdate update;
+    boolean first;
+    boolean full;
+    synchronized (this) {
+      first = this.pending.isEmpty();
+      update = this.pending.computeIfAbsent(lowercaseNickname, nickname -> new PendingUpdate());
+      update.loginIp = loginIp;
+      update.loginDate = loginDate;
+      full = this.pending.size() >= this.maxBatchSize;
+    }
+
+    if (full) {
+      this.flush();
+    } else if (first) {
+      CompletableFuture.runAsync(this::flush, this.delayedExecutor);
+    }
+
+    return update.future;
+  }
+
+  /**
+   * Writes all queued updates.
+   */
+  public CompletableFuture<Void> flush() {
+    Map<String, PendingUpdate> batch;
+    synchronized (this) {
+      if (this.pending.isEmpty()) {
+        return CompletableFuture.completedFuture(null);
+      }
+
+      batch = this.pending;
+      this.pending = new LinkedHashMap<>();
+    }
+
+    CompletableFuture<Void> future;
+    try {
+      future = CompletableFuture.runAsync(() -> this.write(batch), this.executor);
+    } catch (RejectedExecutionException e) {
+      // The executor is shut down, e.g. the database was reloaded, so the batch is written on this thread not to be lost
+      future = CompletableFuture.runAsync(() -> this.write(batch), Runnable::run);
+    }
+
+    return future.whenComplete((result, throwable) -> batch.values().forEach(update -> {
+      if (throwable == null) {
+        update.future.complete(null);
+      } else {
+        update.future.completeExceptionally(throwable);
+      }
+    }));
+  }
+
+  private void write(Map<String, PendingUpdate> batch) {
+    ConnectionSource connectionSource = this.playerDao.getConnectionSource();
+    try {
+      DatabaseConnection databaseConnection = connectionSource.getReadWriteConnection(this.playerDao.getTableName());
+      try {
+        Connection connection = databaseConnection.getUnderlyingConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(this.query)) {
+          for (Map.Entry<String, PendingUpdate> entry : batch.entrySet()) {
+            statement.setString(1, entry.getValue().loginIp);
+            statement.setLong(2, entry.getValue().loginDate);
+            statement.setString(3, entry.getKey());
+            statement.addBatch();
+          }
+
+          statement.executeBatch();
+          connection.commit();
+        } catch (SQLException e) {
+          connection.rollback();
+          throw e;
+        } finally {
+          connection.setAutoCommit(autoCommit);
+        }
+      } finally {
+        connectionSource.releaseConnection(databaseConnection);
+      }
+    } catch (SQLException e) {
+      throw new SQLRuntimeException(e);
+    }
+  }
+
+  private static class PendingUpdate {
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private String loginIp;
+    private long loginDate;
+  }
+}
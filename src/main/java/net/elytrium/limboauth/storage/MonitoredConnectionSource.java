@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.storage;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.concurrent.LatencyWindow;
+
+/**
+ * ORMLite connection pool with the max size, acquire timeout, idle connection validation and leak detection.
+ *
+ * <p>A connection that was idle for longer than the validation interval is pinged before it is handed out,
+ * so the connections dropped by a database failover are replaced instead of failing the queries.
+ */
+public class MonitoredConnectionSource extends JdbcPooledConnectionSource {
+
+  private static final int WAIT_TIMES_WINDOW = 256;
+
+  private final Map<DatabaseConnection, Lease> leases = new ConcurrentHashMap<>();
+  private final Map<DatabaseConnection, Long> releaseTimes = new ConcurrentHashMap<>();
+  private final LatencyWindow waitTimes = new LatencyWindow(WAIT_TIMES_WINDOW);
+  private final List<Consumer<DatabaseConnection>> closeListeners = new CopyOnWriteArrayList<>();
+  private final AtomicInteger peakActive = new AtomicInteger();
+  private final LongAdder timeouts = new LongAdder();
+  private final LongAdder failedValidations = new LongAdder();
+  private final LongAdder leaked = new LongAdder();
+  private final Semaphore permits;
+  private final int maxSize;
+  private final int minIdle;
+  private final long validationInterval;
+  private final long acquireTimeout;
+  private final long leakDetectionThreshold;
+  private final ScheduledExecutorService maintenanceExecutor;
+
+  public MonitoredConnectionSource(String url, String user, String password, DatabaseType databaseType, int maxSize, int minIdle, int maxIdle,
+      long maxLifetime, long validationInterval, long acquireTimeout, long leakDetectionThreshold) throws SQLException {
+    super(url, user, password, databaseType);
+    this.maxSize = Math.max(1, maxSize);
+    this.minIdle = Math.min(this.maxSize, Math.max(0, minIdle));
+    this.validationInterval = validationInterval;
+    this.acquireTimeout = acquireTimeout;
+    this.leakDetectionThreshold = leakDetectionThreshold;
+    this.permits = new Semaphore(this.maxSize, true);
+    this.setMaxConnectionsFree(Math.max(this.minIdle, Math.min(this.maxSize, maxIdle)));
+    if (maxLifetime > 0) {
+      this.setMaxConnectionAgeMillis(maxLifetime);
+    }
+
+    this.fillIdle();
+    if (this.minIdle > 0 || this.leakDetectionThreshold > 0) {
+      this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LimboAuth Connection Pool Maintenance");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.maintenanceExecutor.scheduleWithFixedDelay(this::maintain, 1, 1, TimeUnit.SECONDS);
+    } else {
+      this.maintenanceExecutor = null;
+    }
+  }
+
+  @Override
+  public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+    return this.getReadWriteConnection(tableName);
+  }
+
+  @Override
+  public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+    DatabaseConnection saved = this.getSavedConnection();
+    if (saved != null) {
+      // Nested call inside a transaction, the connection is already leased by this thread
+      Lease lease = this.leases.get(saved);
+      if (lease != null) {
+        ++lease.depth;
+      }
+
+      return saved;
+    }
+
+    long startTime = System.currentTimeMillis();
+    try {
+      if (!this.permits.tryAcquire(this.acquireTimeout, TimeUnit.MILLISECONDS)) {
+        this.timeouts.increment();
+        throw new SQLException("Timed out after " + this.acquireTimeout + " ms waiting for a database connection, "
+            + this.getActiveCount() + "/" + this.maxSize + " connections are in use");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a database connection", e);
+    }
+
+    DatabaseConnection connection;
+    try {
+      connection = this.getValidConnection(tableName);
+    } catch (SQLException | RuntimeException e) {
+      this.permits.release();
+      throw e;
+    }
+
+    this.waitTimes.record(System.currentTimeMillis() - startTime);
+    this.leases.put(connection, new Lease(Thread.currentThread(), this.leakDetectionThreshold > 0 ? new Exception("Connection was acquired here") : null));
+    this.peakActive.accumulateAndGet(this.getActiveCount(), Math::max);
+    return connection;
+  }
+
+  @Override
+  public void releaseConnection(DatabaseConnection connection) throws SQLException {
+    Lease lease = this.leases.get(connection);
+    if (lease != null && lease.depth > 0) {
+      --lease.depth;
+      super.releaseConnection(connection);
+      return;
+    }
+
+    try {
+      super.releaseConnection(connection);
+    } finally {
+      if (this.leases.remove(connection) != null) {
+        this.releaseTimes.put(connection, System.currentTimeMillis());
+        this.permits.release();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (this.maintenanceExecutor != null) {
+      this.maintenanceExecutor.shutdownNow();
+    }
+
+    super.close();
+  }
+
+  @Override
+  protected void closeConnection(DatabaseConnection connection) throws SQLException {
+    this.releaseTimes.remove(connection);
+    for (Consumer<DatabaseConnection> listener : this.closeListeners) {
+      try {
+        listener.accept(connection);
+      } catch (RuntimeException e) {
+        LimboAuth.getLogger().error("Unable to clean up the closed database connection.", e);
+      }
+    }
+
+    super.closeConnection(connection);
+  }
+
+  /**
+   * The listener is called before the pool closes the connection, e.g. once it has reached the max age or has failed the validation.
+   */
+  public void addCloseListener(Consumer<DatabaseConnection> listener) {
+    this.closeListeners.add(listener);
+  }
+
+  private DatabaseConnection getValidConnection(String tableName) throws SQLException {
+    while (true) {
+      DatabaseConnection connection = super.getReadWriteConnection(tableName);
+      Long releaseTime = this.releaseTimes.get(connection);
+      if (this.validationInterval <= 0 || releaseTime == null || System.currentTimeMillis() - releaseTime < this.validationInterval) {
+        return connection;
+      }
+
+      try {
+        connection.queryForLong(this.getDatabaseType().getPingStatement());
+        return connection;
+      } catch (SQLException e) {
+        this.failedValidations.increment();
+        this.closeConnection(connection);
+      }
+    }
+  }
+
+  private void maintain() {
+    if (this.leakDetectionThreshold > 0) {
+      long currentTime = System.currentTimeMillis();
+      this.leases.values().forEach(lease -> {
+        if (!lease.reported && currentTime - lease.since > this.leakDetectionThreshold) {
+          lease.reported = true;
+          this.leaked.increment();
+          LimboAuth.getLogger().warn("A database connection is held by {} for more than {} ms, it may be leaked or the database is unresponsive.",
+              lease.thread.getName(), this.leakDetectionThreshold, lease.trace);
+        }
+      });
+    }
+
+    this.fillIdle();
+  }
+
+  private void fillIdle() {
+    int missing = Math.min(this.minIdle - this.getCurrentConnectionsFree(), this.permits.availablePermits());
+    if (missing <= 0) {
+      return;
+    }
+
+    List<DatabaseConnection> connections = new ArrayList<>(missing);
+    try {
+      for (int i = 0; i < missing; ++i) {
+        connections.add(this.getReadWriteConnection(null));
+      }
+    } catch (SQLException e) {
+      LimboAuth.getLogger().error("Unable to open the idle database connections.", e);
+    } finally {
+      for (DatabaseConnection connection : connections) {
+        try {
+          this.releaseConnection(connection);
+        } catch (SQLException e) {
+          LimboAuth.getLogger().error("Unable to release the idle database connection.", e);
+        }
+      }
+    }
+  }
+
+  public int getActiveCount() {
+    return this.maxSize - this.permits.availablePermits();
+  }
+
+  public int getPeakActiveCount() {
+    return this.peakActive.get();
+  }
+
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
+  public LatencyWindow getWaitTimes() {
+    return this.waitTimes;
+  }
+
+  public long getTimeouts() {
+    return this.timeouts.sum();
+  }
+
+  public long getFailedValidations() {
+    return this.failedValidations.sum();
+  }
+
+  public long getLeaked() {
+    return this.leaked.sum();
+  }
+
+  private static class Lease {
+
+    private final Thread thread;
+    private final Exception trace;
+    private final long since = System.currentTimeMillis();
+    private volatile int depth;
+    private volatile boolean reported;
+
+    private Lease(Thread thread, Exception trace) {
+      this.thread = thread;
+      this.trace = trace;
+    }
+  }
+}
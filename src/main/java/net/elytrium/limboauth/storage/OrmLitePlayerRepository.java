@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.storage;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.stmt.Where;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.SQLRuntimeException;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+public class OrmLitePlayerRepository implements PlayerRepository {
+
+  private static final int CLEAR_IPS_BATCH_SIZE = 500;
+
+  private final Dao<RegisteredPlayer, String> playerDao;
+  private final ExecutorService executor;
+  @Nullable
+  private final LoginDataBatcher loginDataBatcher;
+
+  public OrmLitePlayerRepository(Dao<RegisteredPlayer, String> playerDao, int threads) {
+    this(playerDao, threads, 0, 0);
+  }
+
+  /**
+   * @param loginDataFlushInterval login data updates are batched for this amount of milliseconds, 0 disables batching
+   */
+  public OrmLitePlayerRepository(Dao<RegisteredPlayer, String> playerDao, int threads, long loginDataFlushInterval, int loginDataBatchSize) {
+    this.playerDao = playerDao;
+
+    int poolSize = Math.max(1, threads);
+    AtomicInteger threadCounter = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth Database #" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Auth sessions may outlive the plugin reload, so the previous repository is not shut down and its threads stop when idle.
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
+    this.loginDataBatcher = loginDataFlushInterval > 0 ? new LoginDataBatcher(playerDao, executor, loginDataFlushInterval, loginDataBatchSize) : null;
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByNickname(String lowercaseNickname) {
+    return this.supply(() -> this.first(this.playerDao.queryForEq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, lowercaseNickname)));
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByPremiumUuid(UUID premiumUuid) {
+    return this.supply(() -> this.first(this.playerDao.queryForEq(RegisteredPlayer.PREMIUM_UUID_FIELD, premiumUuid.toString())));
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByNicknameOrPremiumUuid(String lowercaseNickname, UUID premiumUuid) {
+    return this.supply(() -> {
+      QueryBuilder<RegisteredPlayer, String> queryBuilder = this.playerDao.queryBuilder();
+      queryBuilder.where()
+          .eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, lowercaseNickname)
+          .or()
+          .eq(RegisteredPlayer.PREMIUM_UUID_FIELD, premiumUuid.toString());
+
+      return queryBuilder.query();
+    });
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByIp(String ip) {
+    return this.supply(() -> this.playerDao.queryForEq(RegisteredPlayer.IP_FIELD, ip));
+  }
+
+  @Override
+  public CompletableFuture<Long> countByIp(String ip, long registeredAfter) {
+    return this.supply(() -> {
+      QueryBuilder<RegisteredPlayer, String> countQuery = this.playerDao.queryBuilder();
+      Where<RegisteredPlayer, String> where = countQuery.where().eq(RegisteredPlayer.IP_FIELD, ip);
+      if (registeredAfter > 0) {
+        where.and().ge(RegisteredPlayer.REG_DATE_FIELD, registeredAfter);
+      }
+
+      countQuery.setCountOf(true);
+      return this.playerDao.countOf(countQuery.prepare());
+    });
+  }
+
+  @Override
+  public CompletableFuture<Boolean> exists(String lowercaseNickname) {
+    return this.supply(() -> this.playerDao.idExists(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<PremiumState> getPremiumState(String lowercaseNickname) {
+    // One primary key lookup, only the hash is needed to tell the state
+    return this.supply(() -> RegisteredPlayer.getPremiumState(
+        this.playerDao.queryBuilder()
+            .selectColumns(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, RegisteredPlayer.HASH_FIELD)
+            .where()
+            .idEq(lowercaseNickname)
+            .queryForFirst()
+    ));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> isPremiumUuid(UUID premiumUuid) {
+    return this.supply(() -> {
+      QueryBuilder<RegisteredPlayer, String> premiumCountQuery = this.playerDao.queryBuilder();
+      premiumCountQuery.where()
+          .eq(RegisteredPlayer.PREMIUM_UUID_FIELD, premiumUuid.toString())
+          .and()
+          .eq(RegisteredPlayer.HASH_FIELD, "");
+      premiumCountQuery.setCountOf(true);
+
+      return this.playerDao.countOf(premiumCountQuery.prepare()) != 0;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Long> count() {
+    return this.supply(this.playerDao::countOf);
+  }
+
+  @Override
+  public CompletableFuture<Void> create(RegisteredPlayer player) {
+    return this.run(() -> this.playerDao.create(player));
+  }
+
+  @Override
+  public CompletableFuture<Void> update(RegisteredPlayer player) {
+    return this.run(() -> this.playerDao.update(player));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateHash(String lowercaseNickname, String hash) {
+    return this.run(() -> {
+      UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
+      updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, lowercaseNickname);
+      updateBuilder.updateColumnValue(RegisteredPlayer.HASH_FIELD, hash);
+      return updateBuilder.update();
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> updateTotpToken(String lowercaseNickname, String totpToken) {
+    return this.run(() -> {
+      UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
+      updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, lowercaseNickname);
+      updateBuilder.updateColumnValue(RegisteredPlayer.TOTP_TOKEN_FIELD, totpToken);
+      return updateBuilder.update();
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> updateLoginData(String lowercaseNickname, String loginIp, long loginDate) {
+    if (this.loginDataBatcher != null) {
+      return this.loginDataBatcher.add(lowercaseNickname, loginIp, loginDate);
+    }
+
+    return this.run(() -> {
+      UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
+      updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, lowercaseNickname);
+      updateBuilder.updateColumnValue(RegisteredPlayer.LOGIN_IP_FIELD, loginIp);
+      updateBuilder.updateColumnValue(RegisteredPlayer.LOGIN_DATE_FIELD, loginDate);
+      return updateBuilder.update();
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> delete(String lowercaseNickname) {
+    return this.run(() -> this.playerDao.deleteById(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Integer> clearRegistrationIps(long registeredBefore) {
+    return this.clearRegistrationIps(registeredBefore, 0);
+  }
+
+  /**
+   * Every batch is a separate task, so the other queries are not stuck behind the whole cleanup.
+   */
+  private CompletableFuture<Integer> clearRegistrationIps(long registeredBefore, int cleared) {
+    return this.supply(() -> {
+      List<String> nicknames = new ArrayList<>(CLEAR_IPS_BATCH_SIZE);
+      this.playerDao.queryBuilder()
+          .selectColumns(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD)
+          .limit((long) CLEAR_IPS_BATCH_SIZE)
+          .where()
+          .ne(RegisteredPlayer.IP_FIELD, "")
+          .and()
+          .lt(RegisteredPlayer.REG_DATE_FIELD, registeredBefore)
+          .query()
+          .forEach(player -> nicknames.add(player.getLowercaseNickname()));
+      if (nicknames.isEmpty()) {
+        return 0;
+      }
+
+      UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
+      updateBuilder.where().in(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nicknames);
+      updateBuilder.updateColumnValue(RegisteredPlayer.IP_FIELD, "");
+      updateBuilder.update();
+      return nicknames.size();
+    }).thenCompose(batch -> batch < CLEAR_IPS_BATCH_SIZE
+        ? CompletableFuture.completedFuture(cleared + batch)
+        : this.clearRegistrationIps(registeredBefore, cleared + batch));
+  }
+
+  @Override
+  public void invalidate(String lowercaseNickname) {
+    // Nothing is cached
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return this.loginDataBatcher == null ? CompletableFuture.completedFuture(null) : this.loginDataBatcher.flush();
+  }
+
+  @Override
+  public void shutdown() {
+    this.flush();
+    this.executor.shutdown();
+  }
+
+  private RegisteredPlayer first(List<RegisteredPlayer> playerList) {
+    return (playerList != null ? playerList.size() : 0) == 0 ? null : playerList.get(0);
+  }
+
+  protected <T> CompletableFuture<T> supply(SQLSupplier<T> query) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return query.get();
+      } catch (SQLException e) {
+        throw new SQLRuntimeException(e);
+      }
+    }, this.executor);
+  }
+
+  protected CompletableFuture<Void> run(SQLSupplier<?> query) {
+    return this.supply(query).thenApply(result -> null);
+  }
+
+  @FunctionalInterface
+  protected interface SQLSupplier<T> {
+
+    T get() throws SQLException;
+  }
+}
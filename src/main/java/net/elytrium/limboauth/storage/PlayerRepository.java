@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.storage;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Asynchronous access to the registered players, the futures are completed on the database threads.
+ * Database errors complete the futures exceptionally with {@link net.elytrium.limboauth.model.SQLRuntimeException}.
+ */
+public interface PlayerRepository {
+
+  /**
+   * @return the player, or null if the nickname is not registered
+   */
+  CompletableFuture<RegisteredPlayer> findByNickname(String lowercaseNickname);
+
+  /**
+   * @return the player, or null if there are no players with this premium uuid
+   */
+  CompletableFuture<RegisteredPlayer> findByPremiumUuid(UUID premiumUuid);
+
+  /**
+   * Fetches the players with this nickname or with this premium uuid using one query.
+   */
+  CompletableFuture<List<RegisteredPlayer>> findByNicknameOrPremiumUuid(String lowercaseNickname, UUID premiumUuid);
+
+  CompletableFuture<List<RegisteredPlayer>> findByIp(String ip);
+
+  /**
+   * Counts the players registered from this IP without fetching them, the (IP, REGDATE) index covers the query.
+   *
+   * @param registeredAfter only the players registered since this time are counted, 0 to count all of them
+   */
+  CompletableFuture<Long> countByIp(String ip, long registeredAfter);
+
+  CompletableFuture<Boolean> exists(String lowercaseNickname);
+
+  CompletableFuture<PremiumState> getPremiumState(String lowercaseNickname);
+
+  CompletableFuture<Boolean> isPremiumUuid(UUID premiumUuid);
+
+  CompletableFuture<Long> count();
+
+  CompletableFuture<Void> create(RegisteredPlayer player);
+
+  CompletableFuture<Void> update(RegisteredPlayer player);
+
+  CompletableFuture<Void> updateHash(String lowercaseNickname, String hash);
+
+  CompletableFuture<Void> updateTotpToken(String lowercaseNickname, String totpToken);
+
+  CompletableFuture<Void> updateLoginData(String lowercaseNickname, String loginIp, long loginDate);
+
+  CompletableFuture<Void> delete(String lowercaseNickname);
+
+  /**
+   * Blanks the registration IP of the players registered before this time in batches, so they are no longer counted for the IP limit.
+   *
+   * @return the amount of the updated players
+   */
+  CompletableFuture<Integer> clearRegistrationIps(long registeredBefore);
+
+  /**
+   * Drops the cached data of the player, if the repository caches it.
+   */
+  void invalidate(String lowercaseNickname);
+
+  /**
+   * Writes the batched updates that are not written yet.
+   */
+  CompletableFuture<Void> flush();
+
+  /**
+   * Stops accepting new queries, batched updates are flushed, already queued queries will be completed.
+   */
+  void shutdown();
+}
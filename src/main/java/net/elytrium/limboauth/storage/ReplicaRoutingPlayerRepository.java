@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.storage;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Sends the read-only queries to the replicas and the writes to the primary.
+ *
+ * <p>The replicas are checked on the creation and then lazily once the check interval passes, no reads are sent to a replica until its
+ * first check succeeds. The unreachable ones and the ones lagging for longer than the max lag are skipped. The players updated within
+ * the max lag and the check interval are read from the primary, so the player always reads their own writes. The lookups by the premium
+ * uuid or the IP can't be tracked per player, so they are sent to the primary after any write that may change their result.
+ * A failed replica query is retried on the primary.
+ */
+public class ReplicaRoutingPlayerRepository implements PlayerRepository {
+
+  private final PlayerRepository primary;
+  private final List<Replica> replicas;
+  private final long maxLag;
+  private final long checkInterval;
+  private final long stickiness;
+  private final List<String> lagQueries;
+  private final ThreadPoolExecutor checkExecutor;
+  private final Map<String, Long> recentWrites = new ConcurrentHashMap<>();
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  private final LongAdder primaryReads = new LongAdder();
+  private volatile long lastSecondaryWrite;
+
+  /**
+   * @param lagQueries queries that return the replica lag in seconds, each one is tried if the previous one has a syntax error,
+   *     empty to only check that the replicas are reachable
+   */
+  public ReplicaRoutingPlayerRepository(PlayerRepository primary, List<Replica> replicas, long maxLag, long checkInterval, List<String> lagQueries) {
+    this.primary = primary;
+    this.replicas = List.copyOf(replicas);
+    this.maxLag = maxLag;
+    this.checkInterval = checkInterval;
+    this.stickiness = maxLag + checkInterval;
+    this.lagQueries = List.copyOf(lagQueries);
+    this.checkExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth Replica Check");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.checkExecutor.allowCoreThreadTimeOut(true);
+    this.replicas.forEach(this::checkIfDue);
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByNickname(String lowercaseNickname) {
+    return this.read(lowercaseNickname, false, repository -> repository.findByNickname(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<RegisteredPlayer> findByPremiumUuid(UUID premiumUuid) {
+    return this.read(null, true, repository -> repository.findByPremiumUuid(premiumUuid));
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByNicknameOrPremiumUuid(String lowercaseNickname, UUID premiumUuid) {
+    return this.read(lowercaseNickname, true, repository -> repository.findByNicknameOrPremiumUuid(lowercaseNickname, premiumUuid));
+  }
+
+  @Override
+  public CompletableFuture<List<RegisteredPlayer>> findByIp(String ip) {
+    return this.read(null, false, repository -> repository.findByIp(ip));
+  }
+
+  @Override
+  public CompletableFuture<Long> countByIp(String ip, long registeredAfter) {
+    // The registrations made just now must be counted, otherwise the IP limit can be bypassed while the replicas lag
+    return this.read(null, true, repository -> repository.countByIp(ip, registeredAfter));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> exists(String lowercaseNickname) {
+    return this.read(lowercaseNickname, false, repository -> repository.exists(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<PremiumState> getPremiumState(String lowercaseNickname) {
+    return this.read(lowercaseNickname, false, repository -> repository.getPremiumState(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> isPremiumUuid(UUID premiumUuid) {
+    return this.read(null, true, repository -> repository.isPremiumUuid(premiumUuid));
+  }
+
+  @Override
+  public CompletableFuture<Long> count() {
+    return this.read(null, false, PlayerRepository::count);
+  }
+
+  @Override
+  public CompletableFuture<Void> create(RegisteredPlayer player) {
+    return this.write(player.getLowercaseNickname(), true, () -> this.primary.create(player));
+  }
+
+  @Override
+  public CompletableFuture<Void> update(RegisteredPlayer player) {
+    return this.write(player.getLowercaseNickname(), true, () -> this.primary.update(player));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateHash(String lowercaseNickname, String hash) {
+    // The empty hash makes the premium uuid lookups match the player
+    return this.write(lowercaseNickname, true, () -> this.primary.updateHash(lowercaseNickname, hash));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateTotpToken(String lowercaseNickname, String totpToken) {
+    return this.write(lowercaseNickname, false, () -> this.primary.updateTotpToken(lowercaseNickname, totpToken));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateLoginData(String lowercaseNickname, String loginIp, long loginDate) {
+    return this.write(lowercaseNickname, false, () -> this.primary.updateLoginData(lowercaseNickname, loginIp, loginDate));
+  }
+
+  @Override
+  public CompletableFuture<Void> delete(String lowercaseNickname) {
+    return this.write(lowercaseNickname, true, () -> this.primary.delete(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Integer> clearRegistrationIps(long registeredBefore) {
+    return this.primary.clearRegistrationIps(registeredBefore);
+  }
+
+  @Override
+  public void invalidate(String lowercaseNickname) {
+    this.primary.invalidate(lowercaseNickname);
+    this.replicas.forEach(replica -> replica.repository.invalidate(lowercaseNickname));
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return this.primary.flush();
+  }
+
+  @Override
+  public void shutdown() {
+    this.primary.shutdown();
+    this.replicas.forEach(replica -> replica.repository.shutdown());
+    this.checkExecutor.shutdown();
+  }
+
+  private <T> CompletableFuture<T> read(@Nullable String lowercaseNickname, boolean secondaryLookup,
+      Function<PlayerRepository, CompletableFuture<T>> query) {
+    Replica replica = this.isRecentlyWritten(lowercaseNickname, secondaryLookup) ? null : this.pickReplica();
+    if (replica == null) {
+      this.primaryReads.increment();
+      return query.apply(this.primary);
+    }
+
+    replica.reads.increment();
+    return query.apply(replica.repository).exceptionallyCompose(throwable -> {
+      replica.markUnavailable(throwable);
+      this.primaryReads.increment();
+      return query.apply(this.primary);
+    });
+  }
+
+  private CompletableFuture<Void> write(String lowercaseNickname, boolean secondaryWrite, WriteQuery query) {
+    // Marked once the write is queued and once it is committed, the replica may replay it until the stickiness passes
+    this.markWritten(lowercaseNickname, secondaryWrite);
+    return query.run().whenComplete((result, throwable) -> this.markWritten(lowercaseNickname, secondaryWrite));
+  }
+
+  private void markWritten(String lowercaseNickname, boolean secondaryWrite) {
+    long currentTime = System.currentTimeMillis();
+    this.recentWrites.put(lowercaseNickname, currentTime);
+    if (secondaryWrite) {
+      this.lastSecondaryWrite = currentTime;
+    }
+  }
+
+  private boolean isRecentlyWritten(@Nullable String lowercaseNickname, boolean secondaryLookup) {
+    long threshold = System.currentTimeMillis() - this.stickiness;
+    if (secondaryLookup && this.lastSecondaryWrite > threshold) {
+      return true;
+    }
+
+    if (lowercaseNickname == null) {
+      return false;
+    }
+
+    Long writeTime = this.recentWrites.get(lowercaseNickname);
+    return writeTime != null && writeTime > threshold;
+  }
+
+  @Nullable
+  private Replica pickReplica() {
+    this.replicas.forEach(this::checkIfDue);
+    int size = this.replicas.size();
+    int start = Math.floorMod(this.nextReplica.getAndIncrement(), size);
+    for (int i = 0; i < size; ++i) {
+      Replica replica = this.replicas.get((start + i) % size);
+      if (replica.checked && replica.available && replica.lag <= this.maxLag) {
+        return replica;
+      }
+    }
+
+    return null;
+  }
+
+  private void checkIfDue(Replica replica) {
+    if (System.currentTimeMillis() - replica.lastCheck < this.checkInterval || !replica.checking.compareAndSet(false, true)) {
+      return;
+    }
+
+    this.checkExecutor.execute(() -> {
+      try {
+        replica.check(this.lagQueries);
+        long threshold = System.currentTimeMillis() - this.stickiness;
+        this.recentWrites.values().removeIf(writeTime -> writeTime <= threshold);
+      } finally {
+        replica.lastCheck = System.currentTimeMillis();
+        replica.checking.set(false);
+      }
+    });
+  }
+
+  public List<Replica> getReplicas() {
+    return this.replicas;
+  }
+
+  public long getPrimaryReads() {
+    return this.primaryReads.sum();
+  }
+
+  @FunctionalInterface
+  private interface WriteQuery {
+
+    CompletableFuture<Void> run();
+  }
+
+  public static class Replica {
+
+    // MySQL and MariaDB error codes
+    private static final int ER_PARSE_ERROR = 1064;
+    private static final int ER_SPECIFIC_ACCESS_DENIED_ERROR = 1227;
+
+    private final String name;
+    private final ConnectionSource connectionSource;
+    private final PlayerRepository repository;
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private final LongAdder reads = new LongAdder();
+    private volatile boolean available;
+    private volatile boolean checked;
+    private volatile long lag;
+    private volatile long lastCheck;
+    private int lagQueryIndex;
+
+    public Replica(String name, ConnectionSource connectionSource, PlayerRepository repository) {
+      this.name = name;
+      this.connectionSource = connectionSource;
+      this.repository = repository;
+    }
+
+    private void check(List<String> lagQueries) {
+      DatabaseConnection databaseConnection = null;
+      try {
+        databaseConnection = this.connectionSource.getReadOnlyConnection(null);
+        if (lagQueries.isEmpty()) {
+          databaseConnection.queryForLong(this.connectionSource.getDatabaseType().getPingStatement());
+        } else {
+          this.lag = this.queryLag(databaseConnection.getUnderlyingConnection(), lagQueries);
+        }
+
+        if (!this.available) {
+          this.available = true;
+          if (this.checked) {
+            LimboAuth.getLogger().info("Database replica {} is available again.", this.name);
+          }
+        }
+      } catch (SQLException | RuntimeException e) {
+        this.markUnavailable(e);
+      } finally {
+        this.checked = true;
+        if (databaseConnection != null) {
+          try {
+            this.connectionSource.releaseConnection(databaseConnection);
+          } catch (SQLException e) {
+            LimboAuth.getLogger().error("Unable to release the database replica connection.", e);
+          }
+        }
+      }
+    }
+
+    private long queryLag(Connection connection, List<String> lagQueries) throws SQLException {
+      while (true) {
+        try {
+          return this.queryLag(connection, lagQueries.get(this.lagQueryIndex));
+        } catch (SQLException e) {
+          if (e.getErrorCode() == ER_PARSE_ERROR && this.lagQueryIndex + 1 < lagQueries.size()) {
+            ++this.lagQueryIndex;
+          } else if (e.getErrorCode() == ER_SPECIFIC_ACCESS_DENIED_ERROR) {
+            throw new SQLException("The lag of the database replica " + this.name + " can't be checked, grant the database user"
+                + " the REPLICATION CLIENT privilege (REPLICA MONITOR on MariaDB 10.5.9+)", e.getSQLState(), e.getErrorCode(), e);
+          } else {
+            throw e;
+          }
+        }
+      }
+    }
+
+    private long queryLag(Connection connection, String lagQuery) throws SQLException {
+      try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(lagQuery)) {
+        // Not replicating at all, there is nothing to lag behind
+        if (!resultSet.next()) {
+          return 0;
+        }
+
+        int column = 1;
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); ++i) {
+          String label = metaData.getColumnLabel(i);
+          if (label.equalsIgnoreCase("Seconds_Behind_Master") || label.equalsIgnoreCase("Seconds_Behind_Source")) {
+            column = i;
+            break;
+          }
+        }
+
+        double lagSeconds = resultSet.getDouble(column);
+        if (resultSet.wasNull()) {
+          throw new SQLException("Replication is stopped");
+        }
+
+        return (long) (lagSeconds * 1000);
+      }
+    }
+
+    private void markUnavailable(Throwable throwable) {
+      // The first check reports the failure even though the replica has never been available
+      if (this.available || !this.checked) {
+        this.available = false;
+        LimboAuth.getLogger().warn("Database replica {} is unavailable, its queries are sent to the primary.", this.name, throwable);
+      }
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public ConnectionSource getConnectionSource() {
+      return this.connectionSource;
+    }
+
+    public PlayerRepository getRepository() {
+      return this.repository;
+    }
+
+    public boolean isAvailable() {
+      return this.available;
+    }
+
+    public long getLag() {
+      return this.lag;
+    }
+
+    public long getReads() {
+      return this.reads.sum();
+    }
+  }
+}
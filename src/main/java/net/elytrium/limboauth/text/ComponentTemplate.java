@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.elytrium.limboauth.text;
+
+import java.text.Format;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.elytrium.commons.kyori.serialization.Serializer;
+import net.elytrium.limboauth.cache.ExpiringCache;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.TextReplacementConfig;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * {@link MessageFormat} message that is deserialized only once.
+ *
+ * <p>The placeholders are compiled into the slot markers on the creation, and the rendering only replaces the markers with the arguments
+ * in the deserialized component, without parsing the legacy or MiniMessage formatting again.
+ * The messages with the low amount of the possible arguments (e.g. seconds or attempts left) may also cache the rendered components.
+ */
+public final class ComponentTemplate {
+
+  // Private use characters, they are not present in the configured messages
+  private static final char SLOT_START = (char) 0xE000;
+  private static final char SLOT_END = (char) 0xE001;
+  private static final Pattern SLOT_PATTERN = Pattern.compile(SLOT_START + "(\\d+)" + SLOT_END);
+  private static final long RENDER_CACHE_TTL = 600000;
+
+  private final Serializer serializer;
+  private final String pattern;
+  private final int slots;
+  /**
+   * Null if the pattern contains the typed placeholders (e.g. {0,number,#}), or the placeholders not in the plain text (e.g. in the
+   * MiniMessage click or hover tag arguments), such messages are formatted and deserialized on each render.
+   */
+  @Nullable
+  private final Component component;
+  @Nullable
+  private final ExpiringCache<List<Object>, Component> renderCache;
+
+  private ComponentTemplate(Serializer serializer, String pattern, int renderCacheSize) {
+    this.serializer = serializer;
+    this.pattern = pattern;
+
+    Format[] formats = new MessageFormat(pattern).getFormatsByArgumentIndex();
+    this.slots = formats.length;
+    if (Arrays.stream(formats).allMatch(format -> format == null)) {
+      Object[] markers = new Object[this.slots];
+      for (int i = 0; i < this.slots; ++i) {
+        markers[i] = SLOT_START + String.valueOf(i) + SLOT_END;
+      }
+
+      String marked = MessageFormat.format(pattern, markers);
+      Component component = serializer.deserialize(marked);
+      // The markers are only replaced in the text content, the ones consumed by the formatting can't be rendered without parsing again
+      this.component = countSlots(component) == countSlots(marked) ? component : null;
+    } else {
+      this.component = null;
+    }
+
+    this.renderCache = renderCacheSize > 0 && this.slots > 0 ? new ExpiringCache<>(RENDER_CACHE_TTL, renderCacheSize) : null;
+  }
+
+  public static ComponentTemplate compile(Serializer serializer, String pattern) {
+    return new ComponentTemplate(serializer, pattern, 0);
+  }
+
+  /**
+   * Compiles the template that keeps up to renderCacheSize last rendered components.
+   */
+  public static ComponentTemplate compile(Serializer serializer, String pattern, int renderCacheSize) {
+    return new ComponentTemplate(serializer, pattern, renderCacheSize);
+  }
+
+  /**
+   * Renders the message with the same result as {@code serializer.deserialize(MessageFormat.format(pattern, arguments))},
+   * except that the arguments are inserted as the plain text.
+   */
+  public Component render(Object... arguments) {
+    if (this.slots == 0 && this.component != null) {
+      return this.component;
+    } else if (this.renderCache != null) {
+      return this.renderCache.computeIfAbsent(Arrays.asList(arguments), key -> this.renderNow(arguments));
+    } else {
+      return this.renderNow(arguments);
+    }
+  }
+
+  private Component renderNow(Object[] arguments) {
+    if (this.component == null) {
+      return this.serializer.deserialize(MessageFormat.format(this.pattern, arguments));
+    }
+
+    String[] values = new String[this.slots];
+    for (int i = 0; i < this.slots; ++i) {
+      values[i] = i < arguments.length ? formatArgument(arguments[i]) : "{" + i + "}";
+    }
+
+    return this.component.replaceText(TextReplacementConfig.builder()
+        .match(SLOT_PATTERN)
+        .replacement((result, builder) -> builder.content(values[Integer.parseInt(result.group(1))]))
+        .build());
+  }
+
+  private static int countSlots(Component component) {
+    int count = component instanceof TextComponent text ? countSlots(text.content()) : 0;
+    for (Component child : component.children()) {
+      count += countSlots(child);
+    }
+
+    return count;
+  }
+
+  private static int countSlots(String text) {
+    int count = 0;
+    Matcher matcher = SLOT_PATTERN.matcher(text);
+    while (matcher.find()) {
+      ++count;
+    }
+
+    return count;
+  }
+
+  private static String formatArgument(@Nullable Object argument) {
+    if (argument instanceof Number) {
+      // Same as the MessageFormat does for the untyped placeholders
+      return NumberFormat.getInstance(Locale.getDefault(Locale.Category.FORMAT)).format(argument);
+    } else {
+      return String.valueOf(argument);
+    }
+  }
+
+  public String getPattern() {
+    return this.pattern;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.elytrium.limboauth.text;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.Settings;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Messages of the configured client languages, each bundle is loaded and deserialized in the background on the first use.
+ *
+ * <p>The loaded bundles are kept in an immutable map keyed by the configured language tag, so the lookup is a single map read,
+ * the map is replaced as a whole when a bundle is loaded. Only the configured tags are stored, so the client locales can't grow it.
+ * The reload creates the new instance instead of clearing this one.
+ */
+public class LocaleBundles<T> {
+
+  private final Path langDirectory;
+  private final Set<String> locales;
+  private final Function<Settings.MAIN.STRINGS, T> factory;
+  private final Settings.MAIN.STRINGS defaultStrings;
+  private final Executor loader;
+  private final Set<String> loading = ConcurrentHashMap.newKeySet();
+
+  @Nullable
+  private volatile T defaultBundle;
+  private volatile Map<String, T> bundles = Map.of();
+
+  /**
+   * @param locales The lowercase language tags that have the bundle files, e.g. ru_ru or ru
+   * @param factory Creates the bundle from the messages, invoked once per language
+   * @param loader  Executor that reads and deserializes the bundle files
+   */
+  public LocaleBundles(Path langDirectory, Set<String> locales, Function<Settings.MAIN.STRINGS, T> factory,
+      Settings.MAIN.STRINGS defaultStrings, Executor loader) {
+    this.langDirectory = langDirectory;
+    this.locales = locales;
+    this.factory = factory;
+    this.defaultStrings = defaultStrings;
+    this.loader = loader;
+  }
+
+  /**
+   * Returns the bundle of the client locale, or the default one if the locale isn't configured or its bundle isn't loaded yet.
+   */
+  public T get(@Nullable Locale locale) {
+    if (locale == null || this.locales.isEmpty()) {
+      return this.getDefault();
+    }
+
+    String tag = this.findTag(locale);
+    if (tag == null) {
+      return this.getDefault();
+    }
+
+    T bundle = this.bundles.get(tag);
+    if (bundle == null) {
+      if (this.loading.add(tag)) {
+        this.loader.execute(() -> this.load(tag));
+      }
+
+      return this.getDefault();
+    }
+
+    return bundle;
+  }
+
+  public T getDefault() {
+    T bundle = this.defaultBundle;
+    if (bundle == null) {
+      synchronized (this) {
+        bundle = this.defaultBundle;
+        if (bundle == null) {
+          bundle = this.factory.apply(this.defaultStrings);
+          this.defaultBundle = bundle;
+        }
+      }
+    }
+
+    return bundle;
+  }
+
+  @Nullable
+  private String findTag(Locale locale) {
+    String language = locale.getLanguage().toLowerCase(Locale.ROOT);
+    if (!locale.getCountry().isEmpty()) {
+      String tag = language + "_" + locale.getCountry().toLowerCase(Locale.ROOT);
+      if (this.locales.contains(tag)) {
+        return tag;
+      }
+    }
+
+    return this.locales.contains(language) ? language : null;
+  }
+
+  private void load(String tag) {
+    T bundle;
+    try {
+      Settings.LOCALE_MESSAGES messages = new Settings.LOCALE_MESSAGES();
+      messages.reload(this.langDirectory.resolve(tag + ".yml").toFile(), Settings.IMP.PREFIX);
+      bundle = this.factory.apply(messages.STRINGS);
+    } catch (Throwable e) {
+      LimboAuth.getLogger().error("Unable to load the " + tag + " messages, the default ones are used instead.", e);
+      bundle = this.getDefault();
+    }
+
+    // At most one copy per configured tag
+    synchronized (this) {
+      Map<String, T> bundles = new HashMap<>(this.bundles);
+      bundles.put(tag, bundle);
+      this.bundles = Map.copyOf(bundles);
+    }
+  }
+}
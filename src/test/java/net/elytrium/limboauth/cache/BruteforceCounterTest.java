@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import org.junit.jupiter.api.Test;
+
+class BruteforceCounterTest {
+
+  private static final long WINDOW = 60000;
+
+  @Test
+  void ipv4MappedAddressSharesTheIpv4Key() throws UnknownHostException {
+    BruteforceCounter counter = new BruteforceCounter(WINDOW, 64, 64);
+    InetAddress ipv4 = InetAddress.getByName("192.0.2.1");
+    // InetAddress.getByName converts the mapped addresses to Inet4Address, the proxy may still get them as Inet6Address
+    InetAddress mapped = mapped(192, 0, 2, 1);
+
+    assertEquals(counter.getKey(ipv4), counter.getKey(mapped));
+    counter.increment(ipv4);
+    assertEquals(2, counter.increment(mapped));
+    assertEquals(2, counter.get(ipv4));
+  }
+
+  @Test
+  void ipv4MappedAddressesAreNotTruncatedToThePrefix() throws UnknownHostException {
+    BruteforceCounter counter = new BruteforceCounter(WINDOW, 64, 64);
+    InetAddress first = mapped(192, 0, 2, 1);
+    InetAddress second = mapped(198, 51, 100, 1);
+
+    assertNotEquals(counter.getKey(first), counter.getKey(second));
+    counter.increment(first);
+    assertEquals(0, counter.get(second));
+  }
+
+  @Test
+  void ipv6AddressesOfThePrefixShareTheCounter() throws UnknownHostException {
+    BruteforceCounter counter = new BruteforceCounter(WINDOW, 64, 64);
+    InetAddress first = InetAddress.getByName("2001:db8:1:2::1");
+    InetAddress second = InetAddress.getByName("2001:db8:1:2:ffff::2");
+
+    assertEquals(counter.getKey(first), counter.getKey(second));
+    counter.increment(first);
+    assertEquals(2, counter.increment(second));
+    assertEquals(0, counter.get(InetAddress.getByName("2001:db8:1:3::1")));
+  }
+
+  @Test
+  void liveCounterSurvivesOneRotation() throws UnknownHostException {
+    // Every generation holds maxSize / 2 = 4 addresses
+    BruteforceCounter counter = new BruteforceCounter(WINDOW, 8, 64);
+    InetAddress attacker = address(0);
+    counter.increment(attacker);
+    counter.increment(attacker);
+    for (int i = 1; i <= 4; ++i) {
+      counter.increment(address(i));
+    }
+
+    assertEquals(2, counter.get(attacker));
+    assertEquals(3, counter.increment(attacker));
+  }
+
+  @Test
+  void idleCounterIsDroppedAfterTwoRotations() throws UnknownHostException {
+    BruteforceCounter counter = new BruteforceCounter(WINDOW, 8, 64);
+    InetAddress attacker = address(0);
+    counter.increment(attacker);
+    counter.increment(attacker);
+    for (int i = 1; i <= 8; ++i) {
+      counter.increment(address(i));
+    }
+
+    assertEquals(0, counter.get(attacker));
+    assertEquals(1, counter.increment(attacker));
+  }
+
+  @Test
+  void clearResetsBothGenerations() throws UnknownHostException {
+    BruteforceCounter counter = new BruteforceCounter(WINDOW, 8, 64);
+    InetAddress attacker = address(0);
+    counter.increment(attacker);
+    for (int i = 1; i <= 4; ++i) {
+      counter.increment(address(i));
+    }
+
+    counter.clear(counter.getKey(attacker));
+    assertEquals(0, counter.get(attacker));
+    counter.increment(address(5));
+    counter.clear(address(5));
+    counter.clear(address(5));
+    assertEquals(0, counter.get(address(5)));
+  }
+
+  private static InetAddress mapped(int a, int b, int c, int d) throws UnknownHostException {
+    byte[] bytes = new byte[16];
+    bytes[10] = (byte) 0xFF;
+    bytes[11] = (byte) 0xFF;
+    bytes[12] = (byte) a;
+    bytes[13] = (byte) b;
+    bytes[14] = (byte) c;
+    bytes[15] = (byte) d;
+    return Inet6Address.getByAddress(null, bytes, -1);
+  }
+
+  private static InetAddress address(int index) throws UnknownHostException {
+    return InetAddress.getByAddress(new byte[] { 10, 0, (byte) (index >> 8), (byte) index });
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import net.elytrium.limboauth.cache.ClusterCounters.Kind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ClusterCountersTest {
+
+  private static final String CHANNEL = "limboauth:counters";
+  private static final long WINDOW = 60000;
+  private static final Map<Kind, Long> WINDOWS = Map.of(Kind.BRUTEFORCE, WINDOW, Kind.RATELIMIT, WINDOW);
+
+  private final SharedCache transport = new MemorySharedCache();
+  private final List<String> clearedKeys = new CopyOnWriteArrayList<>();
+  private final List<ClusterCounters> counters = new CopyOnWriteArrayList<>();
+
+  @AfterEach
+  void close() {
+    this.counters.forEach(ClusterCounters::close);
+  }
+
+  @Test
+  void duplicatedAndReorderedMessagesAreMergedOnce() {
+    // The gossip doesn't run during the test, the messages of the other proxies are published directly
+    ClusterCounters counters = this.create(3600000);
+    long start = System.currentTimeMillis() - 1000;
+    this.publish("node-a", "BRUTEFORCE|127.0.0.1|" + start + "|3");
+    this.publish("node-a", "BRUTEFORCE|127.0.0.1|" + start + "|3");
+    assertEquals(3, counters.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+
+    this.publish("node-a", "BRUTEFORCE|127.0.0.1|" + start + "|2");
+    assertEquals(3, counters.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+
+    this.publish("node-b", "BRUTEFORCE|127.0.0.1|" + start + "|2");
+    assertEquals(5, counters.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+
+    // The newer window replaces the counter of the same proxy
+    this.publish("node-a", "BRUTEFORCE|127.0.0.1|" + (start + 1) + "|1");
+    assertEquals(3, counters.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+  }
+
+  @Test
+  void expiredCountersAreIgnored() {
+    ClusterCounters counters = this.create(3600000);
+    this.publish("node-a", "BRUTEFORCE|127.0.0.1|" + (System.currentTimeMillis() - WINDOW - 1000) + "|3");
+    assertEquals(0, counters.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+  }
+
+  @Test
+  void clearIsIdempotent() {
+    final ClusterCounters counters = this.create(3600000);
+    long start = System.currentTimeMillis() - 1000;
+    this.publish("node-a", "BRUTEFORCE|127.0.0.1|" + start + "|3");
+
+    this.publish("node-b", "clear|BRUTEFORCE|127.0.0.1|" + (start + 10));
+    this.publish("node-b", "clear|BRUTEFORCE|127.0.0.1|" + (start + 10));
+    assertEquals(0, counters.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+    assertEquals(List.of("127.0.0.1", "127.0.0.1"), this.clearedKeys);
+
+    // The redelivered counter started before the clear, the tombstone drops it
+    this.publish("node-a", "BRUTEFORCE|127.0.0.1|" + start + "|3");
+    assertEquals(0, counters.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+
+    this.publish("node-a", "BRUTEFORCE|127.0.0.1|" + (start + 20) + "|1");
+    assertEquals(1, counters.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+  }
+
+  @Test
+  void countersAreGossipedToTheOtherProxies() throws InterruptedException {
+    ClusterCounters first = this.create(10);
+    ClusterCounters second = this.create(10);
+    first.increment(Kind.BRUTEFORCE, "127.0.0.1");
+    first.increment(Kind.BRUTEFORCE, "127.0.0.1");
+    await(() -> second.getRemote(Kind.BRUTEFORCE, "127.0.0.1") == 2);
+    assertEquals(0, first.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+
+    first.clear(Kind.BRUTEFORCE, "127.0.0.1");
+    await(() -> !this.clearedKeys.isEmpty());
+    assertEquals(0, second.getRemote(Kind.BRUTEFORCE, "127.0.0.1"));
+  }
+
+  private ClusterCounters create(long gossipInterval) {
+    ClusterCounters counters = new ClusterCounters(this.transport, CHANNEL, gossipInterval, WINDOWS, 1024, (kind, key) -> this.clearedKeys.add(key));
+    this.counters.add(counters);
+    return counters;
+  }
+
+  private void publish(String nodeId, String line) {
+    this.transport.publish(CHANNEL, nodeId + '\n' + line).join();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("Timed out waiting for the gossip");
+      }
+
+      Thread.sleep(10);
+    }
+  }
+}
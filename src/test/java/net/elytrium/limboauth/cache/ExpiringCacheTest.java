@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTest {
+
+  private static final long TTL = 3600000;
+
+  @Test
+  void entryExpiresExactlyAtTheTtl() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(TTL, 64);
+    long now = System.currentTimeMillis();
+    cache.put("expired", "value", now - TTL);
+    cache.put("alive", "value", now - TTL + 60000);
+
+    assertNull(cache.get("expired"));
+    assertEquals("value", cache.get("alive"));
+    assertEquals(1, cache.getExpirations());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  void expiredHeadIsRemovedOnAccess() {
+    ExpiringCache<Integer, String> cache = new ExpiringCache<>(TTL, 64);
+    long now = System.currentTimeMillis();
+    // The keys are in the same segment, the expired entries are at its head
+    cache.put(0, "value", now - TTL - 2);
+    cache.put(16, "value", now - TTL - 1);
+    cache.put(32, "value", now);
+
+    assertEquals("value", cache.get(32));
+    assertEquals(2, cache.getExpirations());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  void oldestEntryIsEvictedWhenTheSegmentIsFull() {
+    // 16 segments with a single entry each
+    ExpiringCache<Integer, String> cache = new ExpiringCache<>(TTL, 16);
+    cache.put(0, "first");
+    cache.put(16, "second");
+
+    assertNull(cache.get(0));
+    assertEquals("second", cache.get(16));
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  void putMovesTheEntryToTheTail() {
+    // 16 segments with two entries each
+    ExpiringCache<Integer, String> cache = new ExpiringCache<>(TTL, 32);
+    cache.put(0, "first");
+    cache.put(16, "second");
+    cache.put(0, "updated");
+    cache.put(32, "third");
+
+    assertEquals("updated", cache.get(0));
+    assertNull(cache.get(16));
+    assertEquals("third", cache.get(32));
+  }
+
+  @Test
+  void computeIfAbsentKeepsTheLiveValue() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(TTL, 64);
+    cache.put("key", "value", System.currentTimeMillis() - TTL);
+
+    assertEquals("computed", cache.computeIfAbsent("key", key -> "computed"));
+    assertEquals("computed", cache.computeIfAbsent("key", key -> "recomputed"));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+}
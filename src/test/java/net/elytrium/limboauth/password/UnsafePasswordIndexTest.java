@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2021 - 2024 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.password;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UnsafePasswordIndexTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void containsTheListedPasswordsOnly() throws IOException {
+    Path source = this.write(List.of("123456", "password", "qwerty", "password"), 1000);
+    UnsafePasswordIndex index = UnsafePasswordIndex.load(source, this.directory.resolve("unsafe_passwords.idx"));
+
+    assertEquals(3, index.size());
+    assertTrue(index.contains("123456"));
+    assertTrue(index.contains("password"));
+    assertTrue(index.contains("qwerty"));
+    for (int i = 0; i < 10000; ++i) {
+      assertFalse(index.contains("safe-" + i), "safe-" + i);
+    }
+  }
+
+  @Test
+  void rebuiltIndexDropsTheRemovedPasswords() throws IOException {
+    Path indexPath = this.directory.resolve("unsafe_passwords.idx");
+    Path source = this.write(List.of("123456", "password"), 1000);
+    UnsafePasswordIndex outdated = UnsafePasswordIndex.load(source, indexPath);
+    assertTrue(outdated.isUpToDate(source));
+
+    this.write(List.of("123456", "letmein"), 2000);
+    assertFalse(outdated.isUpToDate(source));
+
+    UnsafePasswordIndex rebuilt = UnsafePasswordIndex.load(source, indexPath);
+    assertTrue(rebuilt.isUpToDate(source));
+    assertTrue(rebuilt.contains("123456"));
+    assertTrue(rebuilt.contains("letmein"));
+    assertFalse(rebuilt.contains("password"));
+  }
+
+  @Test
+  void corruptedIndexIsRebuilt() throws IOException {
+    Path indexPath = this.directory.resolve("unsafe_passwords.idx");
+    Files.write(indexPath, new byte[] { 1, 2, 3 });
+    Path source = this.write(List.of("123456"), 1000);
+
+    UnsafePasswordIndex index = UnsafePasswordIndex.load(source, indexPath);
+    assertTrue(index.contains("123456"));
+  }
+
+  @Test
+  void setViewUsesTheIndex() throws IOException {
+    Path source = this.write(List.of("123456", "password", "123456"), 1000);
+    Set<String> set = UnsafePasswordIndex.load(source, this.directory.resolve("unsafe_passwords.idx")).asSet();
+
+    assertEquals(2, set.size());
+    assertTrue(set.contains("password"));
+    assertFalse(set.contains("letmein"));
+    assertFalse(set.contains(123456));
+    assertEquals(Set.of("123456", "password"), Set.copyOf(set));
+  }
+
+  private Path write(List<String> passwords, long lastModified) throws IOException {
+    Path source = this.directory.resolve("unsafe_passwords.txt");
+    Files.write(source, passwords, StandardCharsets.UTF_8);
+    // The index is validated by the size and the modification time, make the latter deterministic
+    Files.setLastModifiedTime(source, FileTime.fromMillis(lastModified));
+    return source;
+  }
+}